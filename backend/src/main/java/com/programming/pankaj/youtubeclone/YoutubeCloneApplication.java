@@ -2,12 +2,20 @@ package com.programming.pankaj.youtubeclone;
 
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.scheduling.annotation.EnableScheduling;
 
 @SpringBootApplication
+@EnableScheduling
 public class YoutubeCloneApplication {
 
 	public static void main(String[] args) {
-		SpringApplication.run(YoutubeCloneApplication.class, args);
+		ConfigurableApplicationContext context = SpringApplication.run(YoutubeCloneApplication.class, args);
+
+		// The startup profile starts the app once to record an AppCDS archive, then shuts it down
+		if (Boolean.getBoolean("startup.training-run")) {
+			System.exit(SpringApplication.exit(context));
+		}
 	}
 
 }
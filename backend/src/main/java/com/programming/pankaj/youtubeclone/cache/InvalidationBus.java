@@ -0,0 +1,68 @@
+package com.programming.pankaj.youtubeclone.cache;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+
+/**
+ * Fans invalidation events from the change feed out to every {@link InvalidationListener}.
+ * Events are collected in a set and dispatched on a short interval, so a burst of writes to
+ * one document reaches the caches once.
+ */
+@Component
+@Slf4j
+public class InvalidationBus {
+
+    public static final Set<String> WATCHED_COLLECTIONS = Set.of("Video", "User");
+    // Counters updated on every read or refreshed in the background; caches show them with a bounded delay,
+    // so changes to them alone are not published
+    public static final Map<String, Set<String>> UNWATCHED_FIELDS = Map.of("Video", Set.of("viewCount", "uniqueViewerCount"));
+
+    private final List<InvalidationListener> listeners;
+    private final Set<InvalidationEvent> pendingEvents = ConcurrentHashMap.newKeySet();
+
+    public InvalidationBus(List<InvalidationListener> listeners) {
+        this.listeners = listeners;
+    }
+
+    public void publish(InvalidationEvent event) {
+        pendingEvents.add(event);
+    }
+
+    @Scheduled(fixedDelayString = "${cache.invalidation.coalesce-interval-ms:100}")
+    public void dispatch() {
+        if (pendingEvents.isEmpty()) {
+            return;
+        }
+        List<InvalidationEvent> batch = new ArrayList<>();
+        for (Iterator<InvalidationEvent> iterator = pendingEvents.iterator(); iterator.hasNext(); ) {
+            batch.add(iterator.next());
+            iterator.remove();
+        }
+
+        // A collection-wide event already covers every single-document event of that collection
+        Set<String> clearedCollections = batch.stream()
+                .filter(InvalidationEvent::isCollectionWide)
+                .map(InvalidationEvent::collection)
+                .collect(Collectors.toSet());
+        batch.removeIf(event -> !event.isCollectionWide() && clearedCollections.contains(event.collection()));
+
+        for (InvalidationEvent event : batch) {
+            for (InvalidationListener listener : listeners) {
+                try {
+                    listener.onInvalidation(event);
+                } catch (RuntimeException exception) {
+                    log.warn("Invalidation listener {} failed for {}", listener.getClass().getSimpleName(), event, exception);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,16 @@
+package com.programming.pankaj.youtubeclone.cache;
+
+/**
+ * Tells caches that a document changed. A null id means every document of the collection,
+ * e.g. after a drop or when the change feed lost its place.
+ */
+public record InvalidationEvent(String collection, String id) {
+
+    public static InvalidationEvent allOf(String collection) {
+        return new InvalidationEvent(collection, null);
+    }
+
+    public boolean isCollectionWide() {
+        return id == null;
+    }
+}
@@ -0,0 +1,6 @@
+package com.programming.pankaj.youtubeclone.cache;
+
+// Implemented by in-process caches that must drop entries when another node changes a document
+public interface InvalidationListener {
+    void onInvalidation(InvalidationEvent event);
+}
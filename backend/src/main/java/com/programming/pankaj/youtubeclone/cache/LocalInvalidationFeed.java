@@ -0,0 +1,47 @@
+package com.programming.pankaj.youtubeclone.cache;
+
+import lombok.RequiredArgsConstructor;
+import org.bson.Document;
+import org.bson.types.ObjectId;
+import org.springframework.data.mongodb.core.mapping.event.AbstractMongoEventListener;
+import org.springframework.data.mongodb.core.mapping.event.AfterDeleteEvent;
+import org.springframework.data.mongodb.core.mapping.event.AfterSaveEvent;
+import org.springframework.stereotype.Component;
+
+/**
+ * Publishes the saves and deletes made through this node's repositories. It is always on: alone
+ * it serves a single node, a standalone Mongo and tests, and next to {@link MongoChangeStreamFeed}
+ * it invalidates local writes without waiting for the change stream. The bus coalesces the
+ * duplicates.
+ */
+@Component
+@RequiredArgsConstructor
+public class LocalInvalidationFeed extends AbstractMongoEventListener<Object> {
+
+    private final InvalidationBus invalidationBus;
+
+    @Override
+    public void onAfterSave(AfterSaveEvent<Object> event) {
+        publish(event.getCollectionName(), event.getDocument());
+    }
+
+    @Override
+    public void onAfterDelete(AfterDeleteEvent<Object> event) {
+        publish(event.getCollectionName(), event.getSource());
+    }
+
+    private void publish(String collection, Document document) {
+        if (!InvalidationBus.WATCHED_COLLECTIONS.contains(collection)) {
+            return;
+        }
+        Object id = document == null ? null : document.get("_id");
+        if (id instanceof ObjectId objectId) {
+            invalidationBus.publish(new InvalidationEvent(collection, objectId.toHexString()));
+        } else if (id instanceof String stringId) {
+            invalidationBus.publish(new InvalidationEvent(collection, stringId));
+        } else {
+            // Deletes by criteria carry no single id
+            invalidationBus.publish(InvalidationEvent.allOf(collection));
+        }
+    }
+}
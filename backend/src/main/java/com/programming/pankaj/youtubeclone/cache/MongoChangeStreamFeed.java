@@ -0,0 +1,225 @@
+package com.programming.pankaj.youtubeclone.cache;
+
+import com.mongodb.MongoServerException;
+import com.mongodb.client.MongoChangeStreamCursor;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.model.Aggregates;
+import com.mongodb.client.model.Filters;
+import com.mongodb.client.model.Projections;
+import com.mongodb.client.model.ReplaceOptions;
+import com.mongodb.client.model.changestream.ChangeStreamDocument;
+import com.mongodb.client.model.changestream.OperationType;
+import com.mongodb.client.model.changestream.UpdateDescription;
+import lombok.extern.slf4j.Slf4j;
+import org.bson.BsonDocument;
+import org.bson.BsonString;
+import org.bson.BsonValue;
+import org.bson.Document;
+import org.bson.conversions.Bson;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tails a Mongo change stream on the watched collections and publishes every change to the
+ * {@link InvalidationBus}. Only the document key and update description are requested, so events stay small. The resume
+ * token is stored per node, so a restarted node continues where it stopped instead of
+ * missing writes. Updates that only touch {@link InvalidationBus#UNWATCHED_FIELDS} are skipped.
+ * Enable it with {@code cache.invalidation.feed=mongo}. Change streams need a replica set or a
+ * sharded cluster; against a standalone server it logs one warning and stays off, leaving
+ * {@link LocalInvalidationFeed} to cover this node's writes.
+ */
+@Component
+@ConditionalOnProperty(name = "cache.invalidation.feed", havingValue = "mongo")
+@Slf4j
+public class MongoChangeStreamFeed implements SmartLifecycle {
+
+    private static final String RESUME_TOKEN_COLLECTION = "InvalidationResumeToken";
+    private static final int CHANGE_STREAM_HISTORY_LOST = 286;
+    private static final long TOKEN_SAVE_INTERVAL_MILLIS = 1000;
+    private static final long RETRY_DELAY_MILLIS = 5000;
+    private static final long STOP_TIMEOUT_MILLIS = 5000;
+
+    private final MongoTemplate mongoTemplate;
+    private final InvalidationBus invalidationBus;
+    private final String nodeId;
+
+    private volatile boolean running;
+    private Thread feedThread;
+    private long lastTokenSave;
+
+    public MongoChangeStreamFeed(MongoTemplate mongoTemplate, InvalidationBus invalidationBus,
+                                 @Value("${cache.invalidation.node-id:${HOSTNAME:local}}") String nodeId) {
+        this.mongoTemplate = mongoTemplate;
+        this.invalidationBus = invalidationBus;
+        this.nodeId = nodeId;
+    }
+
+    @Override
+    public void start() {
+        if (isStandalone()) {
+            log.warn("MongoDB is a standalone server without change streams; only this node's writes invalidate caches");
+            return;
+        }
+        running = true;
+        feedThread = new Thread(this::tail, "invalidation-change-stream");
+        feedThread.setDaemon(true);
+        feedThread.start();
+    }
+
+    @Override
+    public void stop() {
+        running = false;
+        if (feedThread == null) {
+            return;
+        }
+        // The loop notices within one await and stores its last position; only a stuck one is interrupted
+        try {
+            feedThread.join(STOP_TIMEOUT_MILLIS);
+        } catch (InterruptedException exception) {
+            Thread.currentThread().interrupt();
+        }
+        if (feedThread.isAlive()) {
+            feedThread.interrupt();
+        }
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    private boolean isStandalone() {
+        try {
+            Document hello = mongoTemplate.getDb().runCommand(new Document("hello", 1));
+            return !hello.containsKey("setName") && !"isdbgrid".equals(hello.getString("msg"));
+        } catch (RuntimeException exception) {
+            // Unreachable for now; the tail loop keeps retrying until it is up
+            return false;
+        }
+    }
+
+    private void tail() {
+        while (running) {
+            try {
+                watch();
+            } catch (MongoServerException exception) {
+                if (exception.getCode() == CHANGE_STREAM_HISTORY_LOST) {
+                    // The oplog moved past our token: anything may have changed, so drop everything
+                    log.warn("Change stream history lost, invalidating all cached documents");
+                    InvalidationBus.WATCHED_COLLECTIONS.forEach(collection ->
+                            invalidationBus.publish(InvalidationEvent.allOf(collection)));
+                    resumeTokens().deleteOne(Filters.eq("_id", nodeId));
+                } else {
+                    retryLater(exception);
+                }
+            } catch (RuntimeException exception) {
+                retryLater(exception);
+            }
+        }
+    }
+
+    private void watch() {
+        List<Bson> pipeline = List.of(
+                Aggregates.match(Filters.in("ns.coll", InvalidationBus.WATCHED_COLLECTIONS)),
+                Aggregates.project(Projections.include("ns", "documentKey", "operationType",
+                        "updateDescription.updatedFields", "updateDescription.removedFields")));
+
+        var changeStream = mongoTemplate.getDb().watch(pipeline).maxAwaitTime(1, TimeUnit.SECONDS);
+        BsonDocument resumeToken = loadResumeToken();
+        if (resumeToken != null) {
+            changeStream = changeStream.resumeAfter(resumeToken);
+        }
+
+        try (MongoChangeStreamCursor<ChangeStreamDocument<Document>> cursor = changeStream.cursor()) {
+            while (running) {
+                ChangeStreamDocument<Document> change = cursor.tryNext();
+                if (change != null) {
+                    publish(change);
+                }
+                saveResumeToken(cursor.getResumeToken());
+            }
+            // A restart continues after the last change this node published, not up to a second before it
+            storeResumeToken(cursor.getResumeToken());
+        }
+    }
+
+    private void publish(ChangeStreamDocument<Document> change) {
+        if (change.getNamespace() == null) {
+            return;
+        }
+        String collection = change.getNamespace().getCollectionName();
+        OperationType operationType = change.getOperationType();
+        if (operationType == OperationType.DROP || operationType == OperationType.RENAME
+                || operationType == OperationType.INVALIDATE || change.getDocumentKey() == null) {
+            invalidationBus.publish(InvalidationEvent.allOf(collection));
+            return;
+        }
+        if (operationType == OperationType.UPDATE && onlyUnwatchedFields(collection, change.getUpdateDescription())) {
+            return;
+        }
+        invalidationBus.publish(new InvalidationEvent(collection, idOf(change.getDocumentKey().get("_id"))));
+    }
+
+    private static boolean onlyUnwatchedFields(String collection, UpdateDescription updateDescription) {
+        Set<String> unwatchedFields = InvalidationBus.UNWATCHED_FIELDS.getOrDefault(collection, Set.of());
+        if (updateDescription == null || updateDescription.getUpdatedFields() == null || unwatchedFields.isEmpty()) {
+            return false;
+        }
+        List<String> removedFields = updateDescription.getRemovedFields();
+        return (removedFields == null || removedFields.isEmpty())
+                && unwatchedFields.containsAll(updateDescription.getUpdatedFields().keySet());
+    }
+
+    private static String idOf(BsonValue id) {
+        if (id.isObjectId()) {
+            return id.asObjectId().getValue().toHexString();
+        }
+        return id.isString() ? id.asString().getValue() : id.toString();
+    }
+
+    private BsonDocument loadResumeToken() {
+        BsonDocument stored = resumeTokens().find(Filters.eq("_id", nodeId)).first();
+        return stored == null ? null : stored.getDocument("token", null);
+    }
+
+    private void saveResumeToken(BsonDocument resumeToken) {
+        long now = System.currentTimeMillis();
+        if (resumeToken == null || now - lastTokenSave < TOKEN_SAVE_INTERVAL_MILLIS) {
+            return;
+        }
+        lastTokenSave = now;
+        storeResumeToken(resumeToken);
+    }
+
+    private void storeResumeToken(BsonDocument resumeToken) {
+        if (resumeToken == null) {
+            return;
+        }
+        resumeTokens().replaceOne(Filters.eq("_id", nodeId),
+                new BsonDocument("_id", new BsonString(nodeId)).append("token", resumeToken),
+                new ReplaceOptions().upsert(true));
+    }
+
+    private MongoCollection<BsonDocument> resumeTokens() {
+        return mongoTemplate.getDb().getCollection(RESUME_TOKEN_COLLECTION, BsonDocument.class);
+    }
+
+    private void retryLater(RuntimeException exception) {
+        if (!running) {
+            return;
+        }
+        log.warn("Change stream interrupted, retrying in {} ms", RETRY_DELAY_MILLIS, exception);
+        try {
+            Thread.sleep(RETRY_DELAY_MILLIS);
+        } catch (InterruptedException interruptedException) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,60 @@
+package com.programming.pankaj.youtubeclone.config;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.event.ContextRefreshedEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.mapping.context.MappingContext;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.index.IndexOperations;
+import org.springframework.data.mongodb.core.index.IndexResolver;
+import org.springframework.data.mongodb.core.index.MongoPersistentEntityIndexResolver;
+import org.springframework.data.mongodb.core.mapping.Document;
+import org.springframework.data.mongodb.core.mapping.MongoPersistentEntity;
+import org.springframework.data.mongodb.core.mapping.MongoPersistentProperty;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Creates the indexes declared with {@code @Indexed} and {@code @CompoundIndex} on every document
+ * class once the context is up. Existing indexes are left alone, so this is safe on every start.
+ * Startup fails if an index cannot be created, e.g. duplicates blocking a unique index, since
+ * queries and uniqueness checks rely on them.
+ */
+@Configuration
+@RequiredArgsConstructor
+@Slf4j
+public class MongoIndexConfig {
+
+    private final MongoTemplate mongoTemplate;
+
+    @EventListener(ContextRefreshedEvent.class)
+    public void ensureIndexes() {
+        MappingContext<? extends MongoPersistentEntity<?>, MongoPersistentProperty> mappingContext =
+                mongoTemplate.getConverter().getMappingContext();
+        IndexResolver indexResolver = new MongoPersistentEntityIndexResolver(mappingContext);
+        List<String> failures = new ArrayList<>();
+
+        for (MongoPersistentEntity<?> entity : mappingContext.getPersistentEntities()) {
+            if (!entity.isAnnotationPresent(Document.class)) {
+                continue;
+            }
+            IndexOperations indexOperations = mongoTemplate.indexOps(entity.getType());
+            indexResolver.resolveIndexFor(entity.getType()).forEach(index -> {
+                try {
+                    indexOperations.ensureIndex(index);
+                } catch (RuntimeException exception) {
+                    // Try the remaining indexes first so one start reports every problem
+                    log.error("Could not create index {} on {}", index.getIndexKeys(), entity.getCollection(), exception);
+                    failures.add(entity.getCollection() + " " + index.getIndexKeys().toJson());
+                }
+            });
+        }
+
+        if (!failures.isEmpty()) {
+            throw new IllegalStateException("Could not create indexes: " + String.join(", ", failures));
+        }
+    }
+}
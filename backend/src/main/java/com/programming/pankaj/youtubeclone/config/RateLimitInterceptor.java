@@ -0,0 +1,129 @@
+package com.programming.pankaj.youtubeclone.config;
+
+import com.programming.pankaj.youtubeclone.util.TokenBucket;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.security.oauth2.jwt.Jwt;
+import org.springframework.stereotype.Component;
+import org.springframework.web.method.HandlerMethod;
+import org.springframework.web.servlet.HandlerInterceptor;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Applies per-user token buckets to controller methods annotated with {@link RateLimited}.
+ * Buckets are keyed by the JWT subject and endpoint class and answered with 429 and Retry-After
+ * when empty. Refilled buckets are evicted, so memory stays proportional to recently active users.
+ * Once the bucket limit is reached, new users are hashed onto a fixed set of shared overflow
+ * buckets, so one flooding user only slows down the newcomers that share its bucket.
+ */
+@Component
+public class RateLimitInterceptor implements HandlerInterceptor {
+
+    private static final String OVERFLOW_USER = "*";
+    private static final int OVERFLOW_BUCKETS = 64;
+    private static final long OVERFLOW_SWEEP_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    private final RateLimitProperties rateLimitProperties;
+    private final MeterRegistry meterRegistry;
+    private final Map<String, TokenBucket> buckets = new ConcurrentHashMap<>();
+    private final Map<String, Counter> rejectionCounters = new ConcurrentHashMap<>();
+    private final AtomicLong lastOverflowSweep = new AtomicLong(System.nanoTime());
+
+    public RateLimitInterceptor(RateLimitProperties rateLimitProperties, MeterRegistry meterRegistry) {
+        this.rateLimitProperties = rateLimitProperties;
+        this.meterRegistry = meterRegistry;
+        meterRegistry.gaugeMapSize("ratelimit.buckets", Tags.empty(), buckets);
+    }
+
+    @Override
+    public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) {
+        if (!(handler instanceof HandlerMethod handlerMethod)) {
+            return true;
+        }
+        RateLimited rateLimited = handlerMethod.getMethodAnnotation(RateLimited.class);
+        if (rateLimited == null) {
+            return true;
+        }
+
+        String endpointClass = rateLimited.value();
+        String user = currentUser(request);
+        long now = System.nanoTime();
+        long waitNanos;
+        do {
+            // A bucket retired by eviction after we looked it up is replaced by a fresh one
+            waitNanos = bucketFor(user, endpointClass, now).tryConsume(now);
+        } while (waitNanos == TokenBucket.RETIRED);
+        if (waitNanos == 0) {
+            return true;
+        }
+
+        rejectionCounter(endpointClass).increment();
+        response.setStatus(HttpStatus.TOO_MANY_REQUESTS.value());
+        response.setHeader(HttpHeaders.RETRY_AFTER, String.valueOf(Math.max(1, TimeUnit.NANOSECONDS.toSeconds(waitNanos + 999_999_999L))));
+        return false;
+    }
+
+    private TokenBucket bucketFor(String user, String endpointClass, long now) {
+        String key = endpointClass + ":" + user;
+        TokenBucket bucket = buckets.get(key);
+        if (bucket != null && !bucket.isRetired()) {
+            return bucket;
+        }
+
+        if (bucket == null && buckets.size() >= rateLimitProperties.getMaxBuckets()) {
+            // Sweep at most once a second so a flood of new users cannot turn every request into a scan
+            long lastSweep = lastOverflowSweep.get();
+            if (now - lastSweep > OVERFLOW_SWEEP_INTERVAL_NANOS && lastOverflowSweep.compareAndSet(lastSweep, now)) {
+                evictIdleBuckets(now, 0);
+            }
+            if (buckets.size() >= rateLimitProperties.getMaxBuckets()) {
+                // Still full of active users: newcomers share a few buckets rather than growing the map
+                key = endpointClass + ":" + OVERFLOW_USER + Math.floorMod(user.hashCode(), OVERFLOW_BUCKETS);
+            }
+        }
+
+        RateLimitProperties.Limit limit = rateLimitProperties.getLimits()
+                .getOrDefault(endpointClass, new RateLimitProperties.Limit());
+        return buckets.compute(key, (k, existing) -> existing == null || existing.isRetired()
+                ? new TokenBucket(limit.getCapacity(), limit.getRefillPerSecond(), now)
+                : existing);
+    }
+
+    @Scheduled(fixedDelayString = "${ratelimit.eviction-interval-ms:60000}")
+    public void evictIdleBuckets() {
+        evictIdleBuckets(System.nanoTime(), rateLimitProperties.getIdleTimeout().toNanos());
+    }
+
+    private void evictIdleBuckets(long now, long idleNanos) {
+        // Only refilled buckets are dropped, and they are retired first so a request still holding
+        // one gets a fresh bucket instead of a token from the dropped one
+        buckets.entrySet().removeIf(entry -> entry.getValue().retireIfIdle(now, idleNanos));
+    }
+
+    private String currentUser(HttpServletRequest request) {
+        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+        if (authentication != null && authentication.getPrincipal() instanceof Jwt jwt) {
+            return jwt.getClaim("sub");
+        }
+        return request.getRemoteAddr();
+    }
+
+    private Counter rejectionCounter(String endpointClass) {
+        return rejectionCounters.computeIfAbsent(endpointClass, k -> Counter.builder("ratelimit.rejections")
+                .description("Requests rejected with 429 by the per-user rate limiter")
+                .tag("endpoint", endpointClass)
+                .register(meterRegistry));
+    }
+}
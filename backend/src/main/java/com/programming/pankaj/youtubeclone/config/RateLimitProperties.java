@@ -0,0 +1,26 @@
+package com.programming.pankaj.youtubeclone.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+
+@Component
+@ConfigurationProperties(prefix = "ratelimit")
+@Data
+public class RateLimitProperties {
+
+    // Upper bound on tracked buckets; users beyond it share a few overflow buckets per endpoint class
+    private int maxBuckets = 100_000;
+    private Duration idleTimeout = Duration.ofMinutes(10);
+    private Map<String, Limit> limits = new HashMap<>();
+
+    @Data
+    public static class Limit {
+        private int capacity = 10;
+        private double refillPerSecond = 1;
+    }
+}
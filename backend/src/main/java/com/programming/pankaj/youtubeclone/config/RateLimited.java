@@ -0,0 +1,16 @@
+package com.programming.pankaj.youtubeclone.config;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Marks a controller method as rate limited per user. The value names the endpoint class whose
+ * limit is configured under {@code ratelimit.limits.<value>}; methods sharing a class share a bucket.
+ */
+@Target(ElementType.METHOD)
+@Retention(RetentionPolicy.RUNTIME)
+public @interface RateLimited {
+    String value();
+}
@@ -0,0 +1,35 @@
+package com.programming.pankaj.youtubeclone.config;
+
+import com.amazonaws.auth.AWSStaticCredentialsProvider;
+import com.amazonaws.auth.BasicAWSCredentials;
+import com.amazonaws.client.builder.AwsClientBuilder;
+import com.amazonaws.services.s3.AmazonS3Client;
+import com.amazonaws.services.s3.AmazonS3ClientBuilder;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+
+/**
+ * Points the S3 client at an S3-compatible endpoint such as LocalStack or MinIO when
+ * {@code storage.s3.endpoint} is set. Without it the client configured by Spring Cloud AWS is used.
+ */
+@Configuration
+@ConditionalOnProperty("storage.s3.endpoint")
+public class S3Config {
+
+    @Bean
+    @Primary
+    public AmazonS3Client amazonS3(@Value("${storage.s3.endpoint}") String endpoint,
+                                   @Value("${cloud.aws.region.static}") String region,
+                                   @Value("${storage.s3.access-key}") String accessKey,
+                                   @Value("${storage.s3.secret-key}") String secretKey) {
+        return (AmazonS3Client) AmazonS3ClientBuilder.standard()
+                .withEndpointConfiguration(new AwsClientBuilder.EndpointConfiguration(endpoint, region))
+                .withCredentials(new AWSStaticCredentialsProvider(new BasicAWSCredentials(accessKey, secretKey)))
+                // Local stand-ins do not resolve bucket subdomains
+                .withPathStyleAccessEnabled(true)
+                .build();
+    }
+}
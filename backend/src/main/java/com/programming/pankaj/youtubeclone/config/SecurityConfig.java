@@ -1,8 +1,11 @@
 package com.programming.pankaj.youtubeclone.config;
 
+import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.context.event.EventListener;
 import org.springframework.security.config.Customizer;
 import org.springframework.security.config.annotation.web.builders.HttpSecurity;
 import org.springframework.security.config.annotation.web.configuration.EnableWebSecurity;
@@ -14,10 +17,13 @@ import org.springframework.security.web.DefaultSecurityFilterChain;
 import org.springframework.security.web.SecurityFilterChain;
 import org.springframework.web.cors.CorsConfiguration;
 
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+
 
 @Configuration
 @EnableWebSecurity
-
+@Slf4j
 
 public class SecurityConfig {
     @Value("${spring.security.oauth2.resourceserver.jwt.issuer-uri}")
@@ -26,6 +32,9 @@ public class SecurityConfig {
     @Value("${auth0.audience}")
     private String audience;
 
+    @Value("${security.issuer-discovery.retry-delay:30s}")
+    private Duration discoveryRetryDelay;
+
     @Bean
     public SecurityFilterChain securityFilterChain(HttpSecurity httpSecurity) throws Exception {
         httpSecurity
@@ -48,7 +57,50 @@ public class SecurityConfig {
     }
 
 
+    // Issuer discovery is a network round trip, so it runs once the app is ready instead of during startup
+    private volatile JwtDecoder issuerJwtDecoder;
+    // A failed discovery is remembered until the retry delay passes, so while the issuer is unreachable
+    // requests fail fast instead of each waiting on another round trip
+    private RuntimeException discoveryFailure;
+    private long discoveryRetryAt;
+
     JwtDecoder jwtDecoder() {
+        return token -> obtainIssuerJwtDecoder().decode(token);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void discoverIssuerInBackground() {
+        // Warm the decoder off the startup path; if this fails a request retries it after the retry delay
+        CompletableFuture.runAsync(this::obtainIssuerJwtDecoder).exceptionally(exception -> {
+            log.warn("Issuer discovery for {} failed, retrying in {}", issuer, discoveryRetryDelay, exception);
+            return null;
+        });
+    }
+
+    private JwtDecoder obtainIssuerJwtDecoder() {
+        JwtDecoder decoder = issuerJwtDecoder;
+        if (decoder != null) {
+            return decoder;
+        }
+        synchronized (this) {
+            if (issuerJwtDecoder == null) {
+                if (discoveryFailure != null && System.nanoTime() - discoveryRetryAt < 0) {
+                    throw new JwtException("Issuer discovery for " + issuer + " failed recently", discoveryFailure);
+                }
+                try {
+                    issuerJwtDecoder = createJwtDecoder();
+                    discoveryFailure = null;
+                } catch (RuntimeException exception) {
+                    discoveryFailure = exception;
+                    discoveryRetryAt = System.nanoTime() + discoveryRetryDelay.toNanos();
+                    throw new JwtException("Issuer discovery for " + issuer + " failed", exception);
+                }
+            }
+            return issuerJwtDecoder;
+        }
+    }
+
+    private JwtDecoder createJwtDecoder() {
         NimbusJwtDecoder jwtDecoder = JwtDecoders.fromOidcIssuerLocation(issuer);
 
         OAuth2TokenValidator<Jwt> audienceValidator = new AudienceValidator(audience);
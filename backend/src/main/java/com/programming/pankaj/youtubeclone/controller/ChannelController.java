@@ -0,0 +1,23 @@
+package com.programming.pankaj.youtubeclone.controller;
+
+import com.programming.pankaj.youtubeclone.dto.ChannelDto;
+import com.programming.pankaj.youtubeclone.service.VideoService;
+import lombok.RequiredArgsConstructor;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.*;
+
+@RestController
+@RequestMapping("/api/channels")
+@RequiredArgsConstructor
+public class ChannelController {
+
+    private final VideoService videoService;
+
+    @GetMapping("/{userId}")
+    @ResponseStatus(HttpStatus.OK)
+    public ChannelDto getChannel(@PathVariable String userId,
+                                 @RequestParam(required = false) String cursor,
+                                 @RequestParam(defaultValue = "20") int size) {
+        return videoService.getChannel(userId, cursor, size);
+    }
+}
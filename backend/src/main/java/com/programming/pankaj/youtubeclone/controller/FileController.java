@@ -0,0 +1,26 @@
+package com.programming.pankaj.youtubeclone.controller;
+
+import com.programming.pankaj.youtubeclone.dto.StoredFileDto;
+import com.programming.pankaj.youtubeclone.service.FileService;
+import com.programming.pankaj.youtubeclone.service.UserService;
+import lombok.RequiredArgsConstructor;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.server.ResponseStatusException;
+
+@RestController
+@RequestMapping("/api/files")
+@RequiredArgsConstructor
+public class FileController {
+
+    private final FileService fileService;
+    private final UserService userService;
+
+    // Lets a client check whether content it uploaded before is still stored, before sending it again
+    @GetMapping("/{sha256}")
+    @ResponseStatus(HttpStatus.OK)
+    public StoredFileDto findFile(@PathVariable String sha256) {
+        return fileService.findFile(sha256, userService.getCurrentUserSub())
+                .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND, "Cannot find file by hash - " + sha256));
+    }
+}
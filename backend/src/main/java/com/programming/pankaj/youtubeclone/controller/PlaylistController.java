@@ -0,0 +1,57 @@
+package com.programming.pankaj.youtubeclone.controller;
+
+import com.programming.pankaj.youtubeclone.dto.PlaylistDto;
+import com.programming.pankaj.youtubeclone.dto.PlaylistItemDto;
+import com.programming.pankaj.youtubeclone.dto.PlaylistItemPageDto;
+import com.programming.pankaj.youtubeclone.service.PlaylistService;
+import lombok.RequiredArgsConstructor;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.*;
+
+@RestController
+@RequestMapping("/api/playlists")
+@RequiredArgsConstructor
+public class PlaylistController {
+
+    private final PlaylistService playlistService;
+
+    @PostMapping
+    @ResponseStatus(HttpStatus.CREATED)
+    public PlaylistDto createPlaylist(@RequestBody PlaylistDto playlistDto) {
+        return playlistService.createPlaylist(playlistDto);
+    }
+
+    @GetMapping("/{playlistId}")
+    @ResponseStatus(HttpStatus.OK)
+    public PlaylistDto getPlaylist(@PathVariable String playlistId) {
+        return playlistService.getPlaylist(playlistId);
+    }
+
+    @GetMapping("/{playlistId}/items")
+    @ResponseStatus(HttpStatus.OK)
+    public PlaylistItemPageDto getItems(@PathVariable String playlistId,
+                                        @RequestParam(required = false) String cursor,
+                                        @RequestParam(defaultValue = "50") int size) {
+        return playlistService.getItems(playlistId, cursor, size);
+    }
+
+    @PostMapping("/{playlistId}/items")
+    @ResponseStatus(HttpStatus.CREATED)
+    public PlaylistItemDto addItem(@PathVariable String playlistId, @RequestBody PlaylistItemDto playlistItemDto) {
+        return playlistService.addItem(playlistId, playlistItemDto);
+    }
+
+    // Only afterItemId and beforeItemId of the body are used
+    @PutMapping("/{playlistId}/items/{itemId}/position")
+    @ResponseStatus(HttpStatus.OK)
+    public PlaylistItemDto moveItem(@PathVariable String playlistId, @PathVariable String itemId,
+                                    @RequestBody PlaylistItemDto playlistItemDto) {
+        return playlistService.moveItem(playlistId, itemId, playlistItemDto);
+    }
+
+    @DeleteMapping("/{playlistId}/items/{itemId}")
+    @ResponseStatus(HttpStatus.NO_CONTENT)
+    public void removeItem(@PathVariable String playlistId, @PathVariable String itemId) {
+        playlistService.removeItem(playlistId, itemId);
+    }
+}
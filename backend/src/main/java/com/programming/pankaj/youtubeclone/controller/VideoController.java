@@ -1,11 +1,18 @@
 package com.programming.pankaj.youtubeclone.controller; // Package declaration
 
+import com.programming.pankaj.youtubeclone.config.RateLimited;
 import com.programming.pankaj.youtubeclone.dto.CommentDto;
+import com.programming.pankaj.youtubeclone.dto.CommentPageDto;
 import com.programming.pankaj.youtubeclone.dto.UploadVideoResponse;
 import com.programming.pankaj.youtubeclone.dto.VideoDto;
+import com.programming.pankaj.youtubeclone.model.Reaction;
+import com.programming.pankaj.youtubeclone.service.CommentService;
+import com.programming.pankaj.youtubeclone.service.VideoFragmentCache;
 import com.programming.pankaj.youtubeclone.service.VideoService;
 import lombok.RequiredArgsConstructor;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.multipart.MultipartFile;
 import java.util.List;
@@ -16,6 +23,7 @@ import java.util.List;
 public class VideoController {
 
     private final VideoService videoService; // VideoService dependency injected through constructor
+    private final CommentService commentService; // CommentService dependency injected through constructor
 
     @PostMapping // Handles HTTP POST requests to the base path ("/api/videos")
     @ResponseStatus(HttpStatus.CREATED) // Sets the HTTP response status to 201 (Created)
@@ -24,6 +32,20 @@ public class VideoController {
         return videoService.uploadVideo(file); // Delegate the task to the VideoService and return the response
     }
 
+    @PostMapping("/byHash/{sha256}") // Handles HTTP POST requests to "/api/videos/byHash/{sha256}"
+    @ResponseStatus(HttpStatus.CREATED) // Sets the HTTP response status to 201 (Created)
+    public UploadVideoResponse uploadVideoByHash(@PathVariable String sha256) {
+        // Method for creating a video from an already stored file, takes the SHA-256 of its content as input
+        return videoService.uploadVideoByHash(sha256); // Delegate the task to the VideoService and return the response
+    }
+
+    @PostMapping("/thumbnail/byHash") // Handles HTTP POST requests to "/api/videos/thumbnail/byHash"
+    @ResponseStatus(HttpStatus.CREATED) // Sets the HTTP response status to 201 (Created)
+    public String uploadThumbnailByHash(@RequestParam("sha256") String sha256, @RequestParam("videoId") String videoId) {
+        // Method for setting a video thumbnail from an already stored file, takes the SHA-256 of its content and a videoId as input
+        return videoService.uploadThumbnailByHash(sha256, videoId); // Delegate the task to the VideoService and return the response
+    }
+
     @PostMapping("/thumbnail") // Handles HTTP POST requests to "/api/videos/thumbnail"
     @ResponseStatus(HttpStatus.CREATED) // Sets the HTTP response status to 201 (Created)
     public String uploadThumbnail(@RequestParam("file") MultipartFile file, @RequestParam("videoId") String videoId) {
@@ -45,7 +67,15 @@ public class VideoController {
         return videoService.getVideoDetails(videoId); // Delegate the task to the VideoService and return the video details
     }
 
+    @GetMapping("/{videoId}/uniqueViewers") // Handles HTTP GET requests to "/api/videos/{videoId}/uniqueViewers"
+    @ResponseStatus(HttpStatus.OK) // Sets the HTTP response status to 200 (OK)
+    public long getUniqueViewers(@PathVariable String videoId, @RequestParam(defaultValue = "1") int days) {
+        // Method for retrieving the approximate unique viewers of a video over the last given number of days
+        return videoService.getUniqueViewers(videoId, days); // Delegate the task to the VideoService and return the estimate
+    }
+
     @PostMapping("/{videoId}/like") // Handles HTTP POST requests to "/api/videos/{videoId}/like"
+    @RateLimited("reaction") // Shares the per-user reaction budget with disLike
     @ResponseStatus(HttpStatus.OK) // Sets the HTTP response status to 200 (OK)
     public VideoDto likeVideo(@PathVariable String videoId) {
         // Method for liking a video, takes a videoId as input from the path variable
@@ -53,6 +83,7 @@ public class VideoController {
     }
 
     @PostMapping("/{videoId}/disLike") // Handles HTTP POST requests to "/api/videos/{videoId}/disLike"
+    @RateLimited("reaction") // Shares the per-user reaction budget with like
     @ResponseStatus(HttpStatus.OK) // Sets the HTTP response status to 200 (OK)
     public VideoDto disLikeVideo(@PathVariable String videoId) {
         // Method for disliking a video, takes a videoId as input from the path variable
@@ -60,10 +91,12 @@ public class VideoController {
     }
 
     @PostMapping("/{videoId}/comment") // Handles HTTP POST requests to "/api/videos/{videoId}/comment"
+    @RateLimited("comment") // Limits how fast a user can post comments
     @ResponseStatus(HttpStatus.OK) // Sets the HTTP response status to 200 (OK)
-    public void addComment(@PathVariable String videoId, @RequestBody CommentDto commentDto) {
+    public CommentDto addComment(@PathVariable String videoId, @RequestBody CommentDto commentDto) {
         // Method for adding a comment to a video, takes a videoId from the path variable and a CommentDto object from the request body
-        videoService.addComment(videoId, commentDto); // Delegate the task to the VideoService to add the comment
+        // Setting parentId in the body posts a reply to that comment instead
+        return videoService.addComment(videoId, commentDto); // Delegate the task to the VideoService and return the stored comment
     }
 
     @GetMapping("/{videoId}/comment") // Handles HTTP GET requests to "/api/videos/{videoId}/comment"
@@ -73,10 +106,46 @@ public class VideoController {
         return videoService.getAllComments(videoId); // Delegate the task to the VideoService and return the list of comments
     }
 
-    @GetMapping // Handles HTTP GET requests to the base path ("/api/videos")
+    @GetMapping("/{videoId}/comment/top") // Handles HTTP GET requests to "/api/videos/{videoId}/comment/top"
+    @ResponseStatus(HttpStatus.OK) // Sets the HTTP response status to 200 (OK)
+    public CommentPageDto getTopComments(@PathVariable String videoId,
+                                         @RequestParam(required = false) String cursor,
+                                         @RequestParam(defaultValue = "20") int size) {
+        // Method for retrieving one page of the highest scored comments, pass the returned nextCursor to get the next page
+        return commentService.getTopComments(videoId, cursor, size); // Delegate the task to the CommentService and return the page
+    }
+
+    @GetMapping("/{videoId}/comment/{commentId}/replies") // Handles HTTP GET requests to "/api/videos/{videoId}/comment/{commentId}/replies"
+    @ResponseStatus(HttpStatus.OK) // Sets the HTTP response status to 200 (OK)
+    public CommentPageDto getReplies(@PathVariable String videoId, @PathVariable String commentId,
+                                     @RequestParam(required = false) String cursor,
+                                     @RequestParam(defaultValue = "20") int size) {
+        // Method for loading the replies to a comment on demand, oldest first
+        return commentService.getReplies(videoId, commentId, cursor, size); // Delegate the task to the CommentService and return the page
+    }
+
+    @PostMapping("/{videoId}/comment/{commentId}/like") // Handles HTTP POST requests to "/api/videos/{videoId}/comment/{commentId}/like"
+    @RateLimited("reaction") // Shares the per-user reaction budget with video likes
     @ResponseStatus(HttpStatus.OK) // Sets the HTTP response status to 200 (OK)
-    public List<VideoDto> getAllVideos() {
-        // Method for retrieving all videos
-        return videoService.getAllVideos(); // Delegate the task to the VideoService and return the list of videos
+    public CommentDto likeComment(@PathVariable String videoId, @PathVariable String commentId) {
+        // Method for liking a comment, liking it again takes the like back
+        return commentService.reactToComment(videoId, commentId, Reaction.LIKE); // Delegate the task to the CommentService and return the updated comment
+    }
+
+    @PostMapping("/{videoId}/comment/{commentId}/disLike") // Handles HTTP POST requests to "/api/videos/{videoId}/comment/{commentId}/disLike"
+    @RateLimited("reaction") // Shares the per-user reaction budget with video likes
+    @ResponseStatus(HttpStatus.OK) // Sets the HTTP response status to 200 (OK)
+    public CommentDto disLikeComment(@PathVariable String videoId, @PathVariable String commentId) {
+        // Method for disliking a comment, disliking it again takes the dislike back
+        return commentService.reactToComment(videoId, commentId, Reaction.DISLIKE); // Delegate the task to the CommentService and return the updated comment
+    }
+
+    @GetMapping // Handles HTTP GET requests to the base path ("/api/videos")
+    public ResponseEntity<byte[]> getAllVideos(@RequestHeader(value = HttpHeaders.ACCEPT, required = false) String accept) {
+        // Method for retrieving all videos, as JSON or in the binary Smile encoding depending on the Accept header
+        VideoFragmentCache.Encoding encoding = VideoFragmentCache.Encoding.negotiate(accept); // Pick the encoding the client prefers
+        return ResponseEntity.ok()
+                .contentType(encoding.getMediaType())
+                .body(videoService.getAllVideos(encoding)); // Send the pre-serialized list of videos as-is
     }
 }
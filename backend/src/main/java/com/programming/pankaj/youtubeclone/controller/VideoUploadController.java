@@ -0,0 +1,74 @@
+package com.programming.pankaj.youtubeclone.controller;
+
+import com.programming.pankaj.youtubeclone.dto.CreateUploadRequest;
+import com.programming.pankaj.youtubeclone.dto.DirectUploadDto;
+import com.programming.pankaj.youtubeclone.dto.UploadSessionDto;
+import com.programming.pankaj.youtubeclone.dto.UploadVideoResponse;
+import com.programming.pankaj.youtubeclone.service.VideoUploadService;
+import jakarta.servlet.http.HttpServletRequest;
+import lombok.RequiredArgsConstructor;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.io.IOException;
+
+@RestController
+@RequestMapping("/api/videos/uploads")
+@RequiredArgsConstructor
+public class VideoUploadController {
+
+    private final VideoUploadService videoUploadService;
+
+    @PostMapping
+    @ResponseStatus(HttpStatus.CREATED)
+    public UploadSessionDto createUpload(@RequestBody CreateUploadRequest createUploadRequest) {
+        return videoUploadService.createSession(createUploadRequest);
+    }
+
+    // The client uploads the file itself through the returned presigned URLs
+    @PostMapping("/direct")
+    @ResponseStatus(HttpStatus.CREATED)
+    public DirectUploadDto createDirectUpload(@RequestBody CreateUploadRequest createUploadRequest) {
+        return videoUploadService.createDirectSession(createUploadRequest);
+    }
+
+    // Fresh presigned URLs for a direct upload that takes longer than the first ones are valid
+    @PostMapping("/{sessionId}/urls")
+    @ResponseStatus(HttpStatus.OK)
+    public DirectUploadDto renewDirectUpload(@PathVariable String sessionId) {
+        return videoUploadService.renewDirectSession(sessionId);
+    }
+
+    // The raw request body is the chunk; it is read as a stream so chunks never sit on the heap
+    @PutMapping("/{sessionId}")
+    @ResponseStatus(HttpStatus.OK)
+    public UploadSessionDto uploadChunk(@PathVariable String sessionId,
+                                        @RequestParam long offset,
+                                        @RequestHeader("Content-MD5") String contentMd5,
+                                        HttpServletRequest request) throws IOException {
+        long size = request.getContentLengthLong();
+        if (size < 0) {
+            throw new ResponseStatusException(HttpStatus.LENGTH_REQUIRED, "Chunks need a Content-Length");
+        }
+        return videoUploadService.uploadChunk(sessionId, offset, size, contentMd5, request.getInputStream());
+    }
+
+    @GetMapping("/{sessionId}")
+    @ResponseStatus(HttpStatus.OK)
+    public UploadSessionDto getUpload(@PathVariable String sessionId) {
+        return videoUploadService.getSession(sessionId);
+    }
+
+    @PostMapping("/{sessionId}/complete")
+    @ResponseStatus(HttpStatus.CREATED)
+    public UploadVideoResponse completeUpload(@PathVariable String sessionId) {
+        return videoUploadService.completeSession(sessionId);
+    }
+
+    @DeleteMapping("/{sessionId}")
+    @ResponseStatus(HttpStatus.NO_CONTENT)
+    public void abortUpload(@PathVariable String sessionId) {
+        videoUploadService.abortSession(sessionId);
+    }
+}
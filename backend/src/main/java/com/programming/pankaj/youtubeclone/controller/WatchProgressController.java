@@ -0,0 +1,28 @@
+package com.programming.pankaj.youtubeclone.controller;
+
+import com.programming.pankaj.youtubeclone.dto.WatchProgressDto;
+import com.programming.pankaj.youtubeclone.service.WatchProgressService;
+import lombok.RequiredArgsConstructor;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.*;
+
+@RestController
+@RequestMapping("/api/videos/{videoId}/progress")
+@RequiredArgsConstructor
+public class WatchProgressController {
+
+    private final WatchProgressService watchProgressService;
+
+    // Player heartbeat, sent every few seconds while the video plays
+    @PutMapping
+    @ResponseStatus(HttpStatus.NO_CONTENT)
+    public void recordProgress(@PathVariable String videoId, @RequestBody WatchProgressDto watchProgressDto) {
+        watchProgressService.recordProgress(videoId, watchProgressDto);
+    }
+
+    @GetMapping
+    @ResponseStatus(HttpStatus.OK)
+    public WatchProgressDto getProgress(@PathVariable String videoId) {
+        return watchProgressService.getProgress(videoId);
+    }
+}
@@ -0,0 +1,22 @@
+package com.programming.pankaj.youtubeclone.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class ChannelDto {
+    private String userId;
+    private long videoCount;
+    private long totalViews;
+    private long likeCount;
+    private long subscriberCount;
+    // Newest uploads first
+    private List<VideoDto> videos;
+    // Pass back as "cursor" to get the next page, null on the last page
+    private String nextCursor;
+}
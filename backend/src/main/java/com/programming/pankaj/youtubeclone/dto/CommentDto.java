@@ -12,4 +12,10 @@ import lombok.Setter;
 public class CommentDto {
     private String commentText;
     private String authorId;
+    private String id;
+    // Set when posting a reply
+    private String parentId;
+    private Integer likeCount;
+    private Integer disLikeCount;
+    private Integer replyCount;
 }
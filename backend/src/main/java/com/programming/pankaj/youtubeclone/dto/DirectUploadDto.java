@@ -0,0 +1,22 @@
+package com.programming.pankaj.youtubeclone.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.Instant;
+import java.util.List;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class DirectUploadDto {
+    private String sessionId;
+    private String videoId;
+    // Set for small files: PUT the whole file here with the announced Content-Type
+    private String uploadUrl;
+    // Set for large files: PUT chunk n (chunkSize bytes, the last one shorter) to the n-th URL
+    private List<String> partUrls;
+    private Long chunkSize;
+    private Instant expiresAt;
+}
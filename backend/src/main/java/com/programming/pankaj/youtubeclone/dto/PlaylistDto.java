@@ -0,0 +1,14 @@
+package com.programming.pankaj.youtubeclone.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class PlaylistDto {
+    private String id;
+    private String title;
+    private Long itemCount;
+}
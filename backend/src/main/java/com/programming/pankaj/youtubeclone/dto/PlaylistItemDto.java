@@ -0,0 +1,16 @@
+package com.programming.pankaj.youtubeclone.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class PlaylistItemDto {
+    private String id;
+    private String videoId;
+    // Where to put the item: right after afterItemId and/or right before beforeItemId, at the end if neither is set
+    private String afterItemId;
+    private String beforeItemId;
+}
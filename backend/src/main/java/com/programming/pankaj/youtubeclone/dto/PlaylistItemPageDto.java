@@ -0,0 +1,16 @@
+package com.programming.pankaj.youtubeclone.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class PlaylistItemPageDto {
+    private List<PlaylistItemDto> items;
+    // Pass back as "cursor" to get the next page, null on the last page
+    private String nextCursor;
+}
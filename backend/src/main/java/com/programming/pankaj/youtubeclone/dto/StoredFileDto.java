@@ -0,0 +1,15 @@
+package com.programming.pankaj.youtubeclone.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class StoredFileDto {
+    private String sha256;
+    private String url;
+    private Long size;
+    private String contentType;
+}
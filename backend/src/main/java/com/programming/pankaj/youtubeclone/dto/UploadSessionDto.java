@@ -0,0 +1,22 @@
+package com.programming.pankaj.youtubeclone.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.Instant;
+import java.util.List;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class UploadSessionDto {
+    private String sessionId;
+    private Long chunkSize;
+    private Long totalSize;
+    // Bytes stored without gaps from the start of the file; a client resumes from here
+    private Long committedOffset;
+    // Offsets of every stored chunk, including ones past a gap
+    private List<Long> receivedOffsets;
+    private Instant expiresAt;
+}
@@ -0,0 +1,17 @@
+package com.programming.pankaj.youtubeclone.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.Instant;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class WatchProgressDto {
+    private String videoId;
+    private Double positionSeconds;
+    // Set by the server, ignored in heartbeats
+    private Instant updatedAt;
+}
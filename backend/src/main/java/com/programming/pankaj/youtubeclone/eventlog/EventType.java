@@ -0,0 +1,43 @@
+package com.programming.pankaj.youtubeclone.eventlog;
+
+import java.util.Arrays;
+
+/**
+ * Kinds of interaction recorded in the {@link InteractionEventLog}. Reactions are recorded as the
+ * change they made, so replaying the log in order reproduces the counters. The codes are written to
+ * disk: never renumber or reuse one.
+ */
+public enum EventType {
+    VIEW(1),
+    LIKE_ADDED(2),
+    LIKE_REMOVED(3),
+    DISLIKE_ADDED(4),
+    DISLIKE_REMOVED(5),
+    COMMENT_ADDED(6),
+    SUBSCRIBED(7),
+    UNSUBSCRIBED(8);
+
+    private static final EventType[] BY_CODE = new EventType[256];
+
+    static {
+        Arrays.stream(values()).forEach(type -> BY_CODE[type.code] = type);
+    }
+
+    private final int code;
+
+    EventType(int code) {
+        this.code = code;
+    }
+
+    public byte getCode() {
+        return (byte) code;
+    }
+
+    public static EventType fromCode(byte code) {
+        EventType type = BY_CODE[code & 0xFF];
+        if (type == null) {
+            throw new IllegalArgumentException("Unknown event type code - " + code);
+        }
+        return type;
+    }
+}
@@ -0,0 +1,13 @@
+package com.programming.pankaj.youtubeclone.eventlog;
+
+import java.time.Instant;
+
+/**
+ * One user interaction: who (the user's sub) did what to which video or channel, and when.
+ */
+public record InteractionEvent(EventType type, Instant timestamp, String actorId, String targetId) {
+
+    public static InteractionEvent now(EventType type, String actorId, String targetId) {
+        return new InteractionEvent(type, Instant.now(), actorId, targetId);
+    }
+}
@@ -0,0 +1,477 @@
+package com.programming.pankaj.youtubeclone.eventlog;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.ObjLongConsumer;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * Local append-only log of {@link InteractionEvent}s, kept next to the primary database so counters
+ * and derived views can be rebuilt, and analytics can run, by streaming it instead of querying Mongo.
+ * <p>
+ * Records are appended to memory-mapped segment files of a fixed size. A new segment is started
+ * when a record does not fit, so the log rolls without ever rewriting old data. Each record is
+ * <pre>
+ *   int   payload length
+ *   int   CRC32 of the payload
+ *   byte  event type code
+ *   long  timestamp, epoch millis
+ *   short actor length, actor (UTF-8)
+ *   short target length, target (UTF-8)
+ * </pre>
+ * A record's position is its byte offset in the whole log: segment files are named after the
+ * position of their first record. Unused segment space stays zero, and a zero length marks the end.
+ * <p>
+ * Appends only copy into the mapping. A single committer thread forces the mapping to disk, which
+ * is a group commit: one force covers every record appended since the last one. By default it runs
+ * every commit interval. With {@code eventlog.sync-on-append} each append waits for the force
+ * covering it, and waiting appenders wake the committer right away. On startup the tail of the last
+ * segment is scanned, and a record torn by a crash is cut off at the first bad length or checksum.
+ * <p>
+ * Old segments are removed whole, never the active one: {@link #truncateBefore} drops what a
+ * consumer no longer needs, and with {@code eventlog.retention} a periodic check drops segments
+ * whose records are all older than that.
+ */
+@Component
+@Slf4j
+public class InteractionEventLog implements SmartLifecycle {
+
+    private static final String SEGMENT_PREFIX = "events-";
+    private static final String SEGMENT_SUFFIX = ".log";
+    private static final int HEADER_SIZE = 8;
+    private static final int MAX_ID_BYTES = 1024;
+    static final int MAX_RECORD_SIZE = HEADER_SIZE + 1 + 8 + 2 * (2 + MAX_ID_BYTES);
+
+    private final Path directory;
+    private final int segmentSize;
+    private final long commitIntervalNanos;
+    private final boolean syncOnAppend;
+    private final Duration retention;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition commitRequested = lock.newCondition();
+    private final Condition committed = lock.newCondition();
+    // Segment files by the position of their first record
+    private final NavigableMap<Long, Path> segments = new ConcurrentSkipListMap<>();
+
+    // Guarded by lock
+    private MappedByteBuffer activeBuffer;
+    private long activeBase;
+    private int waitingAppenders;
+
+    private volatile long writePosition;
+    private volatile long durablePosition;
+    private volatile boolean running;
+    private Thread commitThread;
+
+    public InteractionEventLog(@Value("${eventlog.directory:data/event-log}") String directory,
+                               @Value("${eventlog.segment-size:64MB}") DataSize segmentSize,
+                               @Value("${eventlog.commit-interval:10ms}") Duration commitInterval,
+                               @Value("${eventlog.sync-on-append:false}") boolean syncOnAppend,
+                               @Value("${eventlog.retention:0}") Duration retention) throws IOException {
+        if (segmentSize.toBytes() < MAX_RECORD_SIZE || segmentSize.toBytes() > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Event log segment size must be between " + MAX_RECORD_SIZE
+                    + " bytes and 2GB - " + segmentSize);
+        }
+        this.directory = Path.of(directory);
+        this.segmentSize = (int) segmentSize.toBytes();
+        this.commitIntervalNanos = commitInterval.toNanos();
+        this.syncOnAppend = syncOnAppend;
+        this.retention = retention;
+
+        Files.createDirectories(this.directory);
+        try (Stream<Path> files = Files.list(this.directory)) {
+            files.filter(file -> file.getFileName().toString().startsWith(SEGMENT_PREFIX)
+                            && file.getFileName().toString().endsWith(SEGMENT_SUFFIX))
+                    .forEach(file -> segments.put(segmentBase(file), file));
+        }
+        if (segments.isEmpty()) {
+            openSegment(0);
+        } else {
+            recover(segments.lastEntry());
+        }
+    }
+
+    /**
+     * Appends an event and returns its position. The event is visible to {@link #replay} right
+     * away and on disk after the next commit, or before returning with sync-on-append. Returns -1
+     * when the event had to be dropped because a new segment could not be created.
+     */
+    public long append(InteractionEvent event) {
+        byte[] record = encode(event);
+
+        lock.lock();
+        try {
+            if (writePosition - activeBase + record.length > segmentSize) {
+                try {
+                    roll();
+                } catch (IOException exception) {
+                    log.error("Dropping {} event, could not start a new event log segment", event.type(), exception);
+                    return -1;
+                }
+            }
+            long position = writePosition;
+            activeBuffer.put((int) (position - activeBase), record);
+            writePosition = position + record.length;
+
+            if (syncOnAppend) {
+                awaitDurable(writePosition);
+            }
+            return position;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Streams every record from the given position, oldest first, to the consumer together with
+     * its position, and returns the position to continue from. Records appended while replaying
+     * are not included. Replay does not block appends.
+     */
+    public long replay(long fromPosition, ObjLongConsumer<InteractionEvent> consumer) {
+        long end = writePosition;
+        long position = Math.max(fromPosition, segments.firstKey());
+
+        while (position < end) {
+            Map.Entry<Long, Path> segment = segments.floorEntry(position);
+            long base = segment.getKey();
+            ByteBuffer buffer = readView(base, segment.getValue());
+
+            int offset = (int) (position - base);
+            while (base + offset < end && offset + HEADER_SIZE <= segmentSize) {
+                int length = buffer.getInt(offset);
+                if (length == 0) {
+                    break;
+                }
+                InteractionEvent event = decode(buffer, offset, length);
+                if (event == null) {
+                    throw new IllegalStateException("Corrupt event log record at position " + (base + offset));
+                }
+                consumer.accept(event, base + offset);
+                offset += HEADER_SIZE + length;
+            }
+            position = base + offset;
+
+            // The next segment starts exactly where the records of this one end
+            Long nextBase = segments.higherKey(base);
+            if (nextBase == null || position != nextBase) {
+                break;
+            }
+        }
+        return position;
+    }
+
+    /**
+     * Deletes the segments that hold only records before the given position, once every consumer
+     * has processed the log up to there. Only whole segments go and the active one is kept, so the
+     * log may still start before the position. Returns the position the log starts at now. A
+     * replay still reading a deleted segment fails.
+     */
+    public long truncateBefore(long position) {
+        while (true) {
+            Map.Entry<Long, Path> first = segments.firstEntry();
+            // A segment's records end where the next segment starts
+            Long nextBase = segments.higherKey(first.getKey());
+            if (nextBase == null || nextBase > position) {
+                return first.getKey();
+            }
+            deleteSegment(first);
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${eventlog.retention-check-interval-ms:3600000}")
+    public void deleteExpiredSegments() {
+        if (retention.isZero() || retention.isNegative()) {
+            return;
+        }
+        Instant cutoff = Instant.now().minus(retention);
+        while (true) {
+            Map.Entry<Long, Path> first = segments.firstEntry();
+            // Every record of a segment was appended before the first record of the next one
+            Long nextBase = segments.higherKey(first.getKey());
+            if (nextBase == null) {
+                return;
+            }
+            ByteBuffer next = readView(nextBase, segments.get(nextBase));
+            InteractionEvent newer = decode(next, 0, next.getInt(0));
+            if (newer == null || !newer.timestamp().isBefore(cutoff)) {
+                return;
+            }
+            deleteSegment(first);
+        }
+    }
+
+    public long getWritePosition() {
+        return writePosition;
+    }
+
+    public long getDurablePosition() {
+        return durablePosition;
+    }
+
+    @Override
+    public void start() {
+        running = true;
+        commitThread = new Thread(this::commitLoop, "event-log-commit");
+        commitThread.setDaemon(true);
+        commitThread.start();
+    }
+
+    @Override
+    public void stop() {
+        running = false;
+        lock.lock();
+        try {
+            commitRequested.signal();
+        } finally {
+            lock.unlock();
+        }
+        if (commitThread != null) {
+            try {
+                commitThread.join(TimeUnit.SECONDS.toMillis(5));
+            } catch (InterruptedException exception) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        // Appends arriving after this are still forced inline, see awaitDurable
+        lock.lock();
+        try {
+            commitNow();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    @Override
+    public int getPhase() {
+        // Start before and stop after the web server, so requests never find the log closed
+        return 0;
+    }
+
+    private void commitLoop() {
+        while (running) {
+            MappedByteBuffer buffer;
+            long target;
+            lock.lock();
+            try {
+                // Sleep for the commit interval unless an appender is waiting for its record to be durable
+                long remaining = commitIntervalNanos;
+                while (running && waitingAppenders == 0 && remaining > 0) {
+                    remaining = commitRequested.awaitNanos(remaining);
+                }
+                if (writePosition == durablePosition) {
+                    continue;
+                }
+                buffer = activeBuffer;
+                target = writePosition;
+            } catch (InterruptedException exception) {
+                Thread.currentThread().interrupt();
+                return;
+            } finally {
+                lock.unlock();
+            }
+
+            // Force outside the lock so appends keep going; they are picked up by the next commit
+            buffer.force();
+
+            lock.lock();
+            try {
+                durablePosition = Math.max(durablePosition, target);
+                committed.signalAll();
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    // Called with the lock held
+    private void awaitDurable(long position) {
+        if (!running) {
+            commitNow();
+            return;
+        }
+        waitingAppenders++;
+        try {
+            commitRequested.signal();
+            while (durablePosition < position) {
+                if (!running) {
+                    commitNow();
+                    break;
+                }
+                committed.awaitUninterruptibly();
+            }
+        } finally {
+            waitingAppenders--;
+        }
+    }
+
+    // Called with the lock held
+    private void commitNow() {
+        activeBuffer.force();
+        durablePosition = writePosition;
+        committed.signalAll();
+    }
+
+    // Called with the lock held
+    private void roll() throws IOException {
+        // Seal the full segment: everything in it is durable before the next one starts
+        activeBuffer.force();
+        durablePosition = writePosition;
+        committed.signalAll();
+        openSegment(writePosition);
+    }
+
+    private void openSegment(long base) throws IOException {
+        Path file = directory.resolve(String.format("%s%020d%s", SEGMENT_PREFIX, base, SEGMENT_SUFFIX));
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE)) {
+            // The mapping stays valid after the channel is closed
+            activeBuffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, segmentSize);
+        }
+        activeBase = base;
+        segments.put(base, file);
+        writePosition = base;
+        durablePosition = base;
+    }
+
+    private void recover(Map.Entry<Long, Path> lastSegment) throws IOException {
+        long base = lastSegment.getKey();
+        try (FileChannel channel = FileChannel.open(lastSegment.getValue(), StandardOpenOption.READ,
+                StandardOpenOption.WRITE)) {
+            activeBuffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, segmentSize);
+        }
+        activeBase = base;
+
+        int offset = 0;
+        while (offset + HEADER_SIZE <= segmentSize) {
+            int length = activeBuffer.getInt(offset);
+            if (length <= 0 || offset + HEADER_SIZE + length > segmentSize || decode(activeBuffer, offset, length) == null) {
+                break;
+            }
+            offset += HEADER_SIZE + length;
+        }
+
+        // Clear what a torn record may have left behind, so the end marker is zero again
+        int tornEnd = Math.min(offset + MAX_RECORD_SIZE, segmentSize);
+        if (offset < segmentSize && activeBuffer.getInt(offset) != 0) {
+            log.warn("Cutting off a torn event log record at position {}", base + offset);
+        }
+        activeBuffer.put(offset, new byte[tornEnd - offset]);
+        activeBuffer.force();
+
+        writePosition = base + offset;
+        durablePosition = writePosition;
+    }
+
+    private void deleteSegment(Map.Entry<Long, Path> segment) {
+        // Out of the map first, so new replays start after it
+        segments.remove(segment.getKey());
+        try {
+            Files.deleteIfExists(segment.getValue());
+        } catch (IOException exception) {
+            throw new UncheckedIOException(exception);
+        }
+        log.info("Deleted event log segment {}", segment.getValue().getFileName());
+    }
+
+    private ByteBuffer readView(long base, Path file) {
+        lock.lock();
+        try {
+            if (base == activeBase) {
+                return activeBuffer.duplicate();
+            }
+        } finally {
+            lock.unlock();
+        }
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, segmentSize);
+        } catch (IOException exception) {
+            throw new UncheckedIOException(exception);
+        }
+    }
+
+    private static byte[] encode(InteractionEvent event) {
+        byte[] actor = idBytes(event.actorId());
+        byte[] target = idBytes(event.targetId());
+        int payloadLength = 1 + 8 + 2 + actor.length + 2 + target.length;
+
+        ByteBuffer record = ByteBuffer.allocate(HEADER_SIZE + payloadLength);
+        record.position(HEADER_SIZE);
+        record.put(event.type().getCode());
+        record.putLong(event.timestamp().toEpochMilli());
+        record.putShort((short) actor.length).put(actor);
+        record.putShort((short) target.length).put(target);
+
+        CRC32 crc = new CRC32();
+        crc.update(record.array(), HEADER_SIZE, payloadLength);
+        record.putInt(0, payloadLength).putInt(4, (int) crc.getValue());
+        return record.array();
+    }
+
+    // Returns null when the record at the offset is incomplete or fails its checksum
+    private static InteractionEvent decode(ByteBuffer buffer, int offset, int length) {
+        if (length < 1 + 8 + 2 + 2 || length > MAX_RECORD_SIZE - HEADER_SIZE || offset + HEADER_SIZE + length > buffer.capacity()) {
+            return null;
+        }
+        ByteBuffer payload = buffer.slice(offset + HEADER_SIZE, length);
+        CRC32 crc = new CRC32();
+        crc.update(payload.duplicate());
+        if ((int) crc.getValue() != buffer.getInt(offset + 4)) {
+            return null;
+        }
+
+        EventType type = EventType.fromCode(payload.get());
+        Instant timestamp = Instant.ofEpochMilli(payload.getLong());
+        String actor = readId(payload);
+        String target = readId(payload);
+        return new InteractionEvent(type, timestamp, actor, target);
+    }
+
+    private static byte[] idBytes(String id) {
+        byte[] bytes = id == null ? new byte[0] : id.getBytes(StandardCharsets.UTF_8);
+        if (bytes.length > MAX_ID_BYTES) {
+            throw new IllegalArgumentException("Event log ids are limited to " + MAX_ID_BYTES + " bytes - " + id);
+        }
+        return bytes;
+    }
+
+    private static String readId(ByteBuffer payload) {
+        byte[] bytes = new byte[payload.getShort()];
+        payload.get(bytes);
+        return bytes.length == 0 ? null : new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static long segmentBase(Path file) {
+        String name = file.getFileName().toString();
+        return Long.parseLong(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+    }
+}
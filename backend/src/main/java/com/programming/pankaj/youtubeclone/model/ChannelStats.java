@@ -0,0 +1,23 @@
+package com.programming.pankaj.youtubeclone.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+// Per-channel totals, kept up to date by $inc from the upload, view, reaction and subscription paths
+@Document(value = "ChannelStats")
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ChannelStats {
+
+    // Id of the User who owns the channel
+    @Id
+    private String userId;
+    private long videoCount;
+    private long totalViews;
+    private long likeCount;
+    private long subscriberCount;
+}
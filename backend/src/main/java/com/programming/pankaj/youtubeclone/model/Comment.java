@@ -4,7 +4,19 @@ import lombok.AllArgsConstructor;
 import lombok.Data;
 import lombok.NoArgsConstructor;
 import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.CompoundIndex;
+import org.springframework.data.mongodb.core.index.CompoundIndexes;
+import org.springframework.data.mongodb.core.mapping.Document;
 
+import java.time.Instant;
+
+// Comments live in their own collection; older ones may still be embedded in Video.commentList
+@Document(value = "Comment")
+@CompoundIndexes({
+        @CompoundIndex(name = "videoId_parentId_score", def = "{'videoId': 1, 'parentId': 1, 'score': -1, '_id': -1}"),
+        @CompoundIndex(name = "videoId_parentId_id", def = "{'videoId': 1, 'parentId': 1, '_id': 1}"),
+        @CompoundIndex(name = "parentId_id", def = "{'parentId': 1, '_id': 1}")
+})
 @Data
 @NoArgsConstructor
 @AllArgsConstructor
@@ -14,6 +26,13 @@ public class Comment {
     private String id;
     private String text;
     private String authorId;
-    private Integer likeCount;
-    private Integer disLikeCount;
+    private Integer likeCount = 0;
+    private Integer disLikeCount = 0;
+    private String videoId;
+    // Comment this one replies to, null for top-level comments
+    private String parentId;
+    // likeCount - disLikeCount, kept in step by the reaction updates so ranking is an index walk
+    private Long score = 0L;
+    private Integer replyCount = 0;
+    private Instant createdAt;
 }
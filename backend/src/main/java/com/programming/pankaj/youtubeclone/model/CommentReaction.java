@@ -0,0 +1,19 @@
+package com.programming.pankaj.youtubeclone.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+// A user's reaction to a comment, keyed by "<commentId>:<user sub>" so each user has at most one
+@Document(value = "CommentReaction")
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class CommentReaction {
+
+    @Id
+    private String id;
+    private Reaction reaction;
+}
@@ -0,0 +1,34 @@
+package com.programming.pankaj.youtubeclone.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.Indexed;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.time.Instant;
+
+// Items are stored as separate PlaylistItem documents, so changing the list never rewrites this one
+@Document(value = "Playlist")
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class Playlist {
+
+    @Id
+    private String id;
+    private String title;
+    private String ownerSub;
+    private long itemCount;
+    private Instant createdAt;
+    // Set only while the item keys have grown long enough to be rewritten
+    @Indexed(sparse = true)
+    private Boolean rebalanceRequested;
+    // Held by a rebalance while it writes the staged keys; item changes are refused until then
+    private Instant rebalanceLeaseUntil;
+    // Number of completed rebalances; its parity says whether items are ordered by rank or altRank
+    private long rankVersion;
+    // Raised by every rebalance; item writes only apply to items still carrying the epoch they read
+    private long writeEpoch;
+}
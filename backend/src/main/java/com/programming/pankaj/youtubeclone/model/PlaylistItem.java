@@ -0,0 +1,36 @@
+package com.programming.pankaj.youtubeclone.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.CompoundIndex;
+import org.springframework.data.mongodb.core.index.CompoundIndexes;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.time.Instant;
+
+@Document(value = "PlaylistItem")
+// altRank's index is partial because items written before it existed do not have the field
+@CompoundIndexes({
+        @CompoundIndex(name = "playlistId_rank", def = "{'playlistId': 1, 'rank': 1}", unique = true),
+        @CompoundIndex(name = "playlistId_altRank", def = "{'playlistId': 1, 'altRank': 1}", unique = true,
+                partialFilter = "{'altRank': {'$exists': true}}")
+})
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class PlaylistItem {
+
+    @Id
+    private String id;
+    private String playlistId;
+    private String videoId;
+    // FractionalKeys giving the item's place in the playlist. The playlist's rankVersion says which
+    // one is in use; the other holds a placeholder or the keys a rebalance is staging
+    private String rank;
+    private String altRank;
+    // Playlist writeEpoch this item was last written under
+    private long writeEpoch;
+    private Instant addedAt;
+}
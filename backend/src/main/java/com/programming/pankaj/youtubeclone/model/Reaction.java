@@ -0,0 +1,5 @@
+package com.programming.pankaj.youtubeclone.model;
+
+public enum Reaction {
+    LIKE, DISLIKE
+}
@@ -0,0 +1,31 @@
+package com.programming.pankaj.youtubeclone.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.Indexed;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.time.Instant;
+import java.util.Set;
+
+// One stored file, addressed by the SHA-256 of its content and shared by every record that uses it
+@Document(value = "StoredObject")
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class StoredObject {
+
+    @Id
+    private String sha256;
+    private String key;
+    @Indexed
+    private String url;
+    private long size;
+    private String contentType;
+    private long referenceCount;
+    private Instant createdAt;
+    // Users who uploaded these bytes themselves; only they may find or reuse the object by hash
+    private Set<String> uploaderSubs;
+}
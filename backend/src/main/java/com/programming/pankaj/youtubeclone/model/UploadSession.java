@@ -0,0 +1,41 @@
+package com.programming.pankaj.youtubeclone.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.Indexed;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.Map;
+
+@Document(value = "UploadSession")
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class UploadSession {
+
+    @Id
+    private String id;
+    private String ownerSub;
+    private String fileKey;
+    private String contentType;
+    // Id of the multipart upload in the storage backend
+    private String storageUploadId;
+    private long chunkSize;
+    private long totalSize;
+    // Storage ETag of every received chunk, keyed by its 1-based part number
+    private Map<String, String> partETags = new HashMap<>();
+    @Indexed
+    private Instant expiresAt;
+    // Pending video of a direct (presigned) upload, null for uploads proxied through the backend
+    private String videoId;
+    // Set while a complete request holds the session; other completes, aborts and expiry wait until then
+    private Instant completingUntil;
+
+    public int getChunkCount() {
+        return (int) ((totalSize + chunkSize - 1) / chunkSize);
+    }
+}
@@ -0,0 +1,5 @@
+package com.programming.pankaj.youtubeclone.model;
+
+public enum UploadState {
+    PENDING, READY
+}
@@ -4,14 +4,22 @@ import lombok.AllArgsConstructor;
 import lombok.Data;
 import lombok.NoArgsConstructor;
 import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.CompoundIndex;
+import org.springframework.data.mongodb.core.index.CompoundIndexes;
+import org.springframework.data.mongodb.core.index.Indexed;
 import org.springframework.data.mongodb.core.mapping.Document;
 
+import java.time.Instant;
 import java.util.List;
 import java.util.Set;
 import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.atomic.AtomicInteger;
 
 @Document(value = "Video")
+@CompoundIndexes({
+        @CompoundIndex(name = "videoStatus_createdAt", def = "{'videoStatus': 1, 'createdAt': -1}"),
+        @CompoundIndex(name = "userId_createdAt_id", def = "{'userId': 1, 'createdAt': -1, '_id': -1}")
+})
 @Data
 @NoArgsConstructor
 @AllArgsConstructor
@@ -21,15 +29,23 @@ public class Video {
     private String id;
     private String title;
     private String description;
+    // Id of the User who uploaded the video, null for videos uploaded before it was recorded
     private String userId;
     private AtomicInteger likes = new AtomicInteger(0);
     private AtomicInteger disLikes = new AtomicInteger(0);
+    @Indexed
     private Set<String> tags;
     private String videoUrl;
     private VideoStatus videoStatus;
     private AtomicInteger viewCount = new AtomicInteger(0);
+    private Long uniqueViewerCount = 0L;
     private String thumbnailUrl;
     private List<Comment> commentList = new CopyOnWriteArrayList<>();
+    private Instant createdAt;
+    // PENDING while the file is still being uploaded directly to storage, null for older videos.
+    // Indexed for the listing of every video that is not PENDING, which otherwise scans the collection
+    @Indexed
+    private UploadState uploadState;
 
     public void incrementLikes() {
         likes.incrementAndGet();
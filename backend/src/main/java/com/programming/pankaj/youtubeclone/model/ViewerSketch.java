@@ -0,0 +1,33 @@
+package com.programming.pankaj.youtubeclone.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.annotation.Version;
+import org.springframework.data.mongodb.core.index.CompoundIndex;
+import org.springframework.data.mongodb.core.index.Indexed;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.time.Instant;
+
+@Document(value = "ViewerSketch")
+@CompoundIndex(name = "videoId_day", def = "{'videoId': 1, 'day': 1}")
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ViewerSketch {
+
+    @Id
+    private String id;
+    private String videoId;
+    // ISO date (yyyy-MM-dd, UTC) of a daily sketch, null for the all-time sketch
+    private String day;
+    // Once a daily sketch is older than any window that can be queried, Mongo deletes it.
+    // Null for the all-time sketch, which is kept
+    @Indexed(expireAfterSeconds = 0)
+    private Instant expiresAt;
+    private byte[] registers;
+    @Version
+    private Long version;
+}
@@ -0,0 +1,25 @@
+package com.programming.pankaj.youtubeclone.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.time.Instant;
+
+// Where a user last was in a video; written in bulk from the in-memory heartbeat buffer
+@Document(value = "WatchProgress")
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class WatchProgress {
+
+    // "<user sub>:<videoId>"
+    @Id
+    private String id;
+    private String userSub;
+    private String videoId;
+    private double positionSeconds;
+    private Instant updatedAt;
+}
@@ -0,0 +1,25 @@
+package com.programming.pankaj.youtubeclone.repository;
+
+import com.programming.pankaj.youtubeclone.model.Comment;
+import org.bson.types.ObjectId;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.mongodb.repository.MongoRepository;
+import org.springframework.data.mongodb.repository.Query;
+
+import java.util.List;
+
+public interface CommentRepository extends MongoRepository<Comment, String> {
+    List<Comment> findByVideoIdAndParentIdIsNullOrderByIdAsc(String videoId);
+
+    List<Comment> findByVideoIdAndParentIdIsNullOrderByScoreDescIdDesc(String videoId, Pageable pageable);
+
+    // Keyset page of top comments ranked after (score, id)
+    @Query(value = "{ 'videoId': ?0, 'parentId': null, $or: [ { 'score': { $lt: ?1 } }, { 'score': ?1, '_id': { $lt: ?2 } } ] }",
+            sort = "{ 'score': -1, '_id': -1 }")
+    List<Comment> findTopCommentsAfter(String videoId, long score, ObjectId id, Pageable pageable);
+
+    List<Comment> findByParentIdOrderByIdAsc(String parentId, Pageable pageable);
+
+    @Query(value = "{ 'parentId': ?0, '_id': { $gt: ?1 } }", sort = "{ '_id': 1 }")
+    List<Comment> findRepliesAfter(String parentId, ObjectId id, Pageable pageable);
+}
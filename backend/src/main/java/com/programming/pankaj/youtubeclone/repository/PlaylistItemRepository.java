@@ -0,0 +1,8 @@
+package com.programming.pankaj.youtubeclone.repository;
+
+import com.programming.pankaj.youtubeclone.model.PlaylistItem;
+import org.springframework.data.mongodb.repository.MongoRepository;
+
+// Items are read through MongoTemplate, since the field they are ordered by depends on their playlist
+public interface PlaylistItemRepository extends MongoRepository<PlaylistItem, String> {
+}
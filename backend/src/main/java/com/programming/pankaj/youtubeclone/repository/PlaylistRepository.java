@@ -0,0 +1,10 @@
+package com.programming.pankaj.youtubeclone.repository;
+
+import com.programming.pankaj.youtubeclone.model.Playlist;
+import org.springframework.data.mongodb.repository.MongoRepository;
+
+import java.util.List;
+
+public interface PlaylistRepository extends MongoRepository<Playlist, String> {
+    List<Playlist> findByRebalanceRequestedTrue();
+}
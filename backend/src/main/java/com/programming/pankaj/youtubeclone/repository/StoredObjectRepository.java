@@ -0,0 +1,10 @@
+package com.programming.pankaj.youtubeclone.repository;
+
+import com.programming.pankaj.youtubeclone.model.StoredObject;
+import org.springframework.data.mongodb.repository.MongoRepository;
+
+import java.util.Optional;
+
+public interface StoredObjectRepository extends MongoRepository<StoredObject, String> {
+    Optional<StoredObject> findByUrl(String url);
+}
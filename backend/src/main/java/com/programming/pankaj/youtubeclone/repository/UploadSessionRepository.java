@@ -0,0 +1,7 @@
+package com.programming.pankaj.youtubeclone.repository;
+
+import com.programming.pankaj.youtubeclone.model.UploadSession;
+import org.springframework.data.mongodb.repository.MongoRepository;
+
+public interface UploadSessionRepository extends MongoRepository<UploadSession, String> {
+}
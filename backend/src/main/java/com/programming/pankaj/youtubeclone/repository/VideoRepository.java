@@ -1,8 +1,26 @@
 package com.programming.pankaj.youtubeclone.repository;
 
 import com.programming.pankaj.youtubeclone.model.Video;
+import org.bson.types.ObjectId;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.mongodb.repository.MongoRepository;
+import org.springframework.data.mongodb.repository.Query;
+
+import java.time.Instant;
+import java.util.List;
 
 public interface VideoRepository extends MongoRepository<Video, String> {
-}
 
+    // Every video except direct uploads that have not finished
+    @Query("{ 'uploadState': { $ne: 'PENDING' } }")
+    List<Video> findListedVideos();
+
+    // Newest uploads of a channel, skipping direct uploads that have not finished
+    @Query(value = "{ 'userId': ?0, 'uploadState': { $ne: 'PENDING' } }", sort = "{ 'createdAt': -1, '_id': -1 }")
+    List<Video> findChannelVideos(String userId, Pageable pageable);
+
+    // Keyset page of a channel's uploads after (createdAt, id)
+    @Query(value = "{ 'userId': ?0, 'uploadState': { $ne: 'PENDING' }, $or: [ { 'createdAt': { $lt: ?1 } }, { 'createdAt': ?1, '_id': { $lt: ?2 } } ] }",
+            sort = "{ 'createdAt': -1, '_id': -1 }")
+    List<Video> findChannelVideosAfter(String userId, Instant createdAt, ObjectId id, Pageable pageable);
+}
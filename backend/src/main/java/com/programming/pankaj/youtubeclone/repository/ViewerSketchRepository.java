@@ -0,0 +1,11 @@
+package com.programming.pankaj.youtubeclone.repository;
+
+import com.programming.pankaj.youtubeclone.model.ViewerSketch;
+import org.springframework.data.mongodb.repository.MongoRepository;
+
+import java.util.Collection;
+import java.util.List;
+
+public interface ViewerSketchRepository extends MongoRepository<ViewerSketch, String> {
+    List<ViewerSketch> findByVideoIdAndDayIn(String videoId, Collection<String> days);
+}
@@ -0,0 +1,52 @@
+package com.programming.pankaj.youtubeclone.service;
+
+import com.programming.pankaj.youtubeclone.model.ChannelStats;
+import lombok.RequiredArgsConstructor;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Service;
+
+import static org.springframework.data.mongodb.core.query.Criteria.where;
+import static org.springframework.data.mongodb.core.query.Query.query;
+
+/**
+ * Maintains the {@link ChannelStats} read model. Every change is a single upserting $inc on the
+ * channel's document, so concurrent writers never lose updates and reading a channel's totals is
+ * one lookup by id instead of scanning its videos and subscribers.
+ */
+@Service
+@RequiredArgsConstructor
+public class ChannelStatsService {
+
+    private final MongoTemplate mongoTemplate;
+
+    public void recordUpload(String userId) {
+        increment(userId, "videoCount", 1);
+    }
+
+    public void recordView(String userId) {
+        increment(userId, "totalViews", 1);
+    }
+
+    public void recordLikes(String userId, int delta) {
+        increment(userId, "likeCount", delta);
+    }
+
+    public void recordSubscribers(String userId, int delta) {
+        increment(userId, "subscriberCount", delta);
+    }
+
+    public ChannelStats getChannelStats(String userId) {
+        ChannelStats channelStats = mongoTemplate.findById(userId, ChannelStats.class);
+        return channelStats != null ? channelStats : new ChannelStats(userId, 0, 0, 0, 0);
+    }
+
+    private void increment(String userId, String counter, long delta) {
+        // Videos uploaded before uploaders were recorded have no channel to count towards
+        if (userId == null || delta == 0) {
+            return;
+        }
+        mongoTemplate.upsert(query(where("_id").is(userId)), new Update().inc(counter, delta), ChannelStats.class);
+    }
+}
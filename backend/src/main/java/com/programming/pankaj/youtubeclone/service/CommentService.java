@@ -0,0 +1,181 @@
+package com.programming.pankaj.youtubeclone.service;
+
+import com.programming.pankaj.youtubeclone.dto.CommentDto;
+import com.programming.pankaj.youtubeclone.dto.CommentPageDto;
+import com.programming.pankaj.youtubeclone.eventlog.EventType;
+import com.programming.pankaj.youtubeclone.eventlog.InteractionEvent;
+import com.programming.pankaj.youtubeclone.eventlog.InteractionEventLog;
+import com.programming.pankaj.youtubeclone.model.Comment;
+import com.programming.pankaj.youtubeclone.model.CommentReaction;
+import com.programming.pankaj.youtubeclone.model.Reaction;
+import com.programming.pankaj.youtubeclone.repository.CommentRepository;
+import lombok.RequiredArgsConstructor;
+import org.bson.types.ObjectId;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Service;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.time.Instant;
+import java.util.List;
+
+import static org.springframework.data.mongodb.core.query.Criteria.where;
+import static org.springframework.data.mongodb.core.query.Query.query;
+
+/**
+ * Comments stored one document each. Reactions update the counters and the ranking score with
+ * a single atomic increment, and the (videoId, parentId, score, _id) index serves the top
+ * comments page by page without sorting or loading the rest.
+ */
+@Service
+@RequiredArgsConstructor
+public class CommentService {
+
+    private static final int MAX_PAGE_SIZE = 100;
+
+    private final CommentRepository commentRepository;
+    private final MongoTemplate mongoTemplate;
+    private final UserService userService;
+    private final InteractionEventLog interactionEventLog;
+
+    // Method to add a comment or, when parentId is set, a reply
+    public CommentDto addComment(String videoId, CommentDto commentDto) {
+        // Create a new Comment object with the comment text and author ID
+        Comment comment = new Comment();
+        comment.setText(commentDto.getCommentText());
+        comment.setAuthorId(commentDto.getAuthorId());
+        comment.setVideoId(videoId);
+        comment.setCreatedAt(Instant.now());
+
+        if (commentDto.getParentId() != null) {
+            // The parent must belong to the same video
+            if (!mongoTemplate.exists(query(where("_id").is(commentDto.getParentId()).and("videoId").is(videoId)), Comment.class)) {
+                throw new ResponseStatusException(HttpStatus.NOT_FOUND, "Cannot find comment - " + commentDto.getParentId());
+            }
+            comment.setParentId(commentDto.getParentId());
+        }
+
+        Comment savedComment = commentRepository.save(comment);
+        if (savedComment.getParentId() != null) {
+            // Count the reply only once it is stored, so a failed insert never leaves the count too high
+            mongoTemplate.updateFirst(query(where("_id").is(savedComment.getParentId())),
+                    new Update().inc("replyCount", 1), Comment.class);
+        }
+        interactionEventLog.append(InteractionEvent.now(EventType.COMMENT_ADDED, userService.getCurrentUserSub(), videoId));
+        return mapToCommentDto(savedComment);
+    }
+
+    // Method to get every top-level comment of a video in the order they were posted
+    public List<CommentDto> getComments(String videoId) {
+        return commentRepository.findByVideoIdAndParentIdIsNullOrderByIdAsc(videoId).stream()
+                .map(this::mapToCommentDto)
+                .toList();
+    }
+
+    // Method to get a page of the highest scored top-level comments
+    public CommentPageDto getTopComments(String videoId, String cursor, int size) {
+        PageRequest page = PageRequest.of(0, pageSize(size));
+        List<Comment> comments;
+        if (cursor == null) {
+            comments = commentRepository.findByVideoIdAndParentIdIsNullOrderByScoreDescIdDesc(videoId, page);
+        } else {
+            // The cursor is "<score>:<id>" of the last comment of the previous page
+            String[] position = cursor.split(":", 2);
+            try {
+                comments = commentRepository.findTopCommentsAfter(videoId, Long.parseLong(position[0]),
+                        new ObjectId(position[1]), page);
+            } catch (IllegalArgumentException | ArrayIndexOutOfBoundsException exception) {
+                throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Invalid cursor - " + cursor);
+            }
+        }
+
+        String nextCursor = null;
+        if (comments.size() == page.getPageSize()) {
+            Comment last = comments.get(comments.size() - 1);
+            nextCursor = last.getScore() + ":" + last.getId();
+        }
+        return new CommentPageDto(comments.stream().map(this::mapToCommentDto).toList(), nextCursor);
+    }
+
+    // Method to get a page of replies to a comment, oldest first
+    public CommentPageDto getReplies(String videoId, String commentId, String cursor, int size) {
+        // The parent must belong to the video of the request
+        if (!mongoTemplate.exists(query(where("_id").is(commentId).and("videoId").is(videoId)), Comment.class)) {
+            throw new ResponseStatusException(HttpStatus.NOT_FOUND, "Cannot find comment - " + commentId);
+        }
+
+        PageRequest page = PageRequest.of(0, pageSize(size));
+        List<Comment> replies;
+        if (cursor == null) {
+            replies = commentRepository.findByParentIdOrderByIdAsc(commentId, page);
+        } else {
+            // The cursor is the id of the last reply of the previous page
+            try {
+                replies = commentRepository.findRepliesAfter(commentId, new ObjectId(cursor), page);
+            } catch (IllegalArgumentException exception) {
+                throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Invalid cursor - " + cursor);
+            }
+        }
+
+        String nextCursor = replies.size() == page.getPageSize() ? replies.get(replies.size() - 1).getId() : null;
+        return new CommentPageDto(replies.stream().map(this::mapToCommentDto).toList(), nextCursor);
+    }
+
+    // Method to like or dislike a comment; repeating the same reaction takes it back
+    public CommentDto reactToComment(String videoId, String commentId, Reaction reaction) {
+        if (!mongoTemplate.exists(query(where("_id").is(commentId).and("videoId").is(videoId)), Comment.class)) {
+            throw new ResponseStatusException(HttpStatus.NOT_FOUND, "Cannot find comment - " + commentId);
+        }
+
+        // Swap in the new reaction and read the previous one in one step
+        String reactionId = commentId + ":" + userService.getCurrentUserSub();
+        CommentReaction previous = mongoTemplate.findAndModify(query(where("_id").is(reactionId)),
+                new Update().set("reaction", reaction),
+                FindAndModifyOptions.options().upsert(true).returnNew(false), CommentReaction.class);
+
+        int likeDelta = 0;
+        int disLikeDelta = 0;
+        if (previous != null && previous.getReaction() == reaction) {
+            // Same reaction again: take it back, unless a concurrent request already removed or changed it
+            // and counted that change itself
+            long deleted = mongoTemplate.remove(query(where("_id").is(reactionId).and("reaction").is(reaction)),
+                    CommentReaction.class).getDeletedCount();
+            if (deleted == 1) {
+                likeDelta = reaction == Reaction.LIKE ? -1 : 0;
+                disLikeDelta = reaction == Reaction.DISLIKE ? -1 : 0;
+            }
+        } else {
+            likeDelta = reaction == Reaction.LIKE ? 1 : (previous != null ? -1 : 0);
+            disLikeDelta = reaction == Reaction.DISLIKE ? 1 : (previous != null ? -1 : 0);
+        }
+
+        // Counters and score move together, so the ranking index never sees a half-applied reaction
+        Update counters = new Update()
+                .inc("likeCount", likeDelta)
+                .inc("disLikeCount", disLikeDelta)
+                .inc("score", (long) likeDelta - disLikeDelta);
+        Comment updated = mongoTemplate.findAndModify(query(where("_id").is(commentId)), counters,
+                FindAndModifyOptions.options().returnNew(true), Comment.class);
+        return mapToCommentDto(updated);
+    }
+
+    private static int pageSize(int size) {
+        return Math.max(1, Math.min(size, MAX_PAGE_SIZE));
+    }
+
+    // Helper method to map a Comment object to CommentDto
+    public CommentDto mapToCommentDto(Comment comment) {
+        CommentDto commentDto = new CommentDto();
+        commentDto.setId(comment.getId());
+        commentDto.setCommentText(comment.getText());
+        commentDto.setAuthorId(comment.getAuthorId());
+        commentDto.setParentId(comment.getParentId());
+        commentDto.setLikeCount(comment.getLikeCount());
+        commentDto.setDisLikeCount(comment.getDisLikeCount());
+        commentDto.setReplyCount(comment.getReplyCount());
+        return commentDto;
+    }
+}
@@ -1,9 +1,43 @@
 package com.programming.pankaj.youtubeclone.service;
 
 
+import com.programming.pankaj.youtubeclone.dto.StoredFileDto;
 import org.springframework.web.multipart.MultipartFile;
 
+import java.io.InputStream;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
 public interface FileService {
-    String uploadFile(MultipartFile file);
-}
+    String uploadFile(MultipartFile file, String uploaderSub);
+
+    // Content-addressed reuse: files are identified by the SHA-256 of their bytes, and only
+    // users who uploaded those bytes themselves can look them up or reuse them
+    Optional<StoredFileDto> findFile(String sha256, String uploaderSub);
+
+    Optional<String> reuseFile(String sha256, String uploaderSub);
+
+    void releaseFile(String url);
+
+    // Multipart uploads: parts are streamed one by one and stitched together on completion
+    String startUpload(String key, String contentType);
+
+    String uploadPart(String key, String uploadId, int partNumber, InputStream inputStream, long size, String md5Digest);
 
+    String completeUpload(String key, String uploadId, Map<Integer, String> partETags);
+
+    void abortUpload(String key, String uploadId);
+
+    void deleteFile(String key);
+
+    // Direct uploads: the client sends the bytes to storage through presigned URLs
+    String presignUpload(String key, String contentType, Duration validity);
+
+    List<String> presignUploadParts(String key, String uploadId, int partCount, Duration validity);
+
+    // Fails with 400 after deleting a stored file that is not expectedSize bytes long; the upload
+    // cannot be completed after that
+    String completeDirectUpload(String key, String uploadId, long expectedSize);
+}
@@ -0,0 +1,393 @@
+package com.programming.pankaj.youtubeclone.service;
+
+import com.programming.pankaj.youtubeclone.dto.PlaylistDto;
+import com.programming.pankaj.youtubeclone.dto.PlaylistItemDto;
+import com.programming.pankaj.youtubeclone.dto.PlaylistItemPageDto;
+import com.programming.pankaj.youtubeclone.model.Playlist;
+import com.programming.pankaj.youtubeclone.model.PlaylistItem;
+import com.programming.pankaj.youtubeclone.repository.PlaylistItemRepository;
+import com.programming.pankaj.youtubeclone.repository.PlaylistRepository;
+import com.programming.pankaj.youtubeclone.util.FractionalKey;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.bson.types.ObjectId;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.http.HttpStatus;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.function.IntFunction;
+
+import static org.springframework.data.mongodb.core.query.Criteria.where;
+import static org.springframework.data.mongodb.core.query.Query.query;
+
+/**
+ * Playlists whose items are separate documents ordered by a {@link FractionalKey}. Adding,
+ * moving or removing an item writes only that item, whatever the playlist's size, and pages are
+ * read by walking the (playlistId, rank) index from the previous page's last key.
+ * <p>
+ * Every item has two key fields, rank and altRank, and the playlist's rankVersion says which one
+ * it is ordered by. Repeated inserts into the same spot make keys longer; once a key passes a
+ * length limit the playlist is queued for a rebalance. The rebalance writes short keys into the
+ * other field and then switches the playlist over to them in one update, so readers never see a
+ * half-written order, and one that fails part way leaves the order as it was.
+ * <p>
+ * Before reading the items the rebalance raises the playlist's writeEpoch and stamps it on every
+ * item. Item writes are conditional on the epoch the request read, so a change that raced the
+ * rebalance fails with 409 instead of being lost when the playlist switches over.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class PlaylistService {
+
+    private static final int MAX_PAGE_SIZE = 100;
+    private static final int MAX_KEY_ATTEMPTS = 5;
+    private static final int MAX_STAGING_ROUNDS = 5;
+    private static final int REBALANCE_KEY_LENGTH = 24;
+    private static final int BULK_SIZE = 1000;
+    private static final Duration REBALANCE_LEASE = Duration.ofMinutes(1);
+    // Starts the placeholder kept in the key field not in use; it sorts after every key
+    private static final String PLACEHOLDER_PREFIX = "~";
+
+    private final PlaylistRepository playlistRepository;
+    private final PlaylistItemRepository playlistItemRepository;
+    private final MongoTemplate mongoTemplate;
+    private final UserService userService;
+
+    // Method to create an empty playlist owned by the current user
+    public PlaylistDto createPlaylist(PlaylistDto playlistDto) {
+        var playlist = new Playlist();
+        playlist.setTitle(playlistDto.getTitle());
+        playlist.setOwnerSub(userService.getCurrentUserSub());
+        playlist.setCreatedAt(Instant.now());
+        return mapToPlaylistDto(playlistRepository.save(playlist));
+    }
+
+    public PlaylistDto getPlaylist(String playlistId) {
+        return mapToPlaylistDto(getPlaylistById(playlistId));
+    }
+
+    // Method to get a page of a playlist's items in order
+    public PlaylistItemPageDto getItems(String playlistId, String cursor, int size) {
+        Playlist playlist = getPlaylistById(playlistId);
+        int pageSize = Math.max(1, Math.min(size, MAX_PAGE_SIZE));
+
+        Criteria criteria = byRank(playlist);
+        if (cursor != null) {
+            // The cursor is "<rankVersion>:<key>" of the last item of the previous page, so it stays
+            // valid when that item is moved or removed
+            String[] position = cursor.split(":", 2);
+            try {
+                if (Long.parseLong(position[0]) != playlist.getRankVersion()) {
+                    throw new ResponseStatusException(HttpStatus.CONFLICT,
+                            "Playlist was reorganized, start again from the first page - " + playlistId);
+                }
+                criteria.gt(position[1]);
+            } catch (NumberFormatException | ArrayIndexOutOfBoundsException exception) {
+                throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Invalid cursor - " + cursor);
+            }
+        }
+        List<PlaylistItem> items = mongoTemplate.find(query(criteria).with(Sort.by(rankField(playlist))).limit(pageSize),
+                PlaylistItem.class);
+
+        String nextCursor = null;
+        if (items.size() == pageSize) {
+            nextCursor = playlist.getRankVersion() + ":" + rankOf(items.get(items.size() - 1), playlist);
+        }
+        return new PlaylistItemPageDto(items.stream().map(this::mapToPlaylistItemDto).toList(), nextCursor);
+    }
+
+    // Method to add a video to a playlist, at the end unless a neighbouring item is given
+    public PlaylistItemDto addItem(String playlistId, PlaylistItemDto playlistItemDto) {
+        Playlist playlist = getWritablePlaylist(playlistId);
+        if (playlistItemDto.getVideoId() == null) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "videoId is required");
+        }
+
+        var playlistItem = new PlaylistItem();
+        playlistItem.setId(new ObjectId().toHexString());
+        playlistItem.setPlaylistId(playlistId);
+        playlistItem.setVideoId(playlistItemDto.getVideoId());
+        playlistItem.setWriteEpoch(playlist.getWriteEpoch());
+        playlistItem.setAddedAt(Instant.now());
+
+        String rank;
+        for (int attempt = 1; ; attempt++) {
+            rank = rankFor(playlist, playlistItemDto.getAfterItemId(), playlistItemDto.getBeforeItemId());
+            setRank(playlistItem, playlist, rank);
+            try {
+                mongoTemplate.insert(playlistItem);
+                break;
+            } catch (DuplicateKeyException exception) {
+                // Another change took the same key between the same neighbours; pick again
+                retryOrGiveUp(attempt, exception);
+            }
+        }
+
+        // A rebalance that started meanwhile keeps the item only if it stamped it before reading the items
+        Playlist current = getPlaylistById(playlistId);
+        if (current.getWriteEpoch() != playlist.getWriteEpoch()) {
+            long withdrawn = mongoTemplate.remove(query(where("_id").is(playlistItem.getId())
+                    .and("writeEpoch").is(playlist.getWriteEpoch())), PlaylistItem.class).getDeletedCount();
+            if (withdrawn == 1) {
+                throw reorganizing(playlistId);
+            }
+        }
+
+        mongoTemplate.updateFirst(query(where("_id").is(playlistId)), new Update().inc("itemCount", 1), Playlist.class);
+        requestRebalanceIfLong(playlist, rank);
+        return mapToPlaylistItemDto(playlistItem);
+    }
+
+    // Method to move an item next to another one, or to the end
+    public PlaylistItemDto moveItem(String playlistId, String itemId, PlaylistItemDto playlistItemDto) {
+        Playlist playlist = getWritablePlaylist(playlistId);
+        if (itemId.equals(playlistItemDto.getAfterItemId()) || itemId.equals(playlistItemDto.getBeforeItemId())) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "An item cannot be placed next to itself");
+        }
+
+        for (int attempt = 1; ; attempt++) {
+            String rank = rankFor(playlist, playlistItemDto.getAfterItemId(), playlistItemDto.getBeforeItemId());
+            try {
+                // Only applies if no rebalance has stamped the item since the playlist was read
+                PlaylistItem moved = mongoTemplate.findAndModify(query(where("_id").is(itemId).and("playlistId").is(playlistId)
+                                .and("writeEpoch").not().gt(playlist.getWriteEpoch())),
+                        new Update().set(rankField(playlist), rank), FindAndModifyOptions.options().returnNew(true),
+                        PlaylistItem.class);
+                if (moved == null) {
+                    getItem(playlistId, itemId);
+                    throw reorganizing(playlistId);
+                }
+                requestRebalanceIfLong(playlist, rank);
+                return mapToPlaylistItemDto(moved);
+            } catch (DuplicateKeyException exception) {
+                retryOrGiveUp(attempt, exception);
+            }
+        }
+    }
+
+    // Method to remove an item from a playlist
+    public void removeItem(String playlistId, String itemId) {
+        getWritablePlaylist(playlistId);
+        long deleted = mongoTemplate.remove(query(where("_id").is(itemId).and("playlistId").is(playlistId)), PlaylistItem.class)
+                .getDeletedCount();
+        if (deleted == 0) {
+            throw new ResponseStatusException(HttpStatus.NOT_FOUND, "Cannot find playlist item - " + itemId);
+        }
+        mongoTemplate.updateFirst(query(where("_id").is(playlistId)), new Update().inc("itemCount", -1), Playlist.class);
+    }
+
+    @Scheduled(fixedDelayString = "${playlists.rebalance-interval-ms:60000}")
+    public void rebalanceQueuedPlaylists() {
+        for (Playlist playlist : playlistRepository.findByRebalanceRequestedTrue()) {
+            try {
+                rebalance(playlist.getId());
+            } catch (RuntimeException exception) {
+                log.warn("Could not rebalance playlist {}", playlist.getId(), exception);
+            }
+        }
+    }
+
+    /**
+     * Gives all items of a playlist short keys in their current order. Returns false when another
+     * node holds the lease or the items kept changing, and throws when a write fails; either way
+     * the playlist stays ordered by its current keys.
+     */
+    public boolean rebalance(String playlistId) {
+        Instant now = Instant.now();
+        Criteria leaseFree = new Criteria().orOperator(where("rebalanceLeaseUntil").is(null), where("rebalanceLeaseUntil").lt(now));
+        Playlist leased = mongoTemplate.findAndModify(query(where("_id").is(playlistId).andOperator(leaseFree)),
+                new Update().set("rebalanceLeaseUntil", now.plus(REBALANCE_LEASE)).inc("writeEpoch", 1),
+                FindAndModifyOptions.options().returnNew(true), Playlist.class);
+        if (leased == null) {
+            return false;
+        }
+
+        long epoch = leased.getWriteEpoch();
+        boolean switched = false;
+        try {
+            for (int round = 1; ; round++) {
+                // Stamp the epoch on every item, so writes of requests that read the playlist before
+                // the lease now fail. Items stamped here were inserted or moved since the last round
+                long stamped = mongoTemplate.updateMulti(query(where("playlistId").is(playlistId).and("writeEpoch").not().gte(epoch)),
+                        new Update().set("writeEpoch", epoch), PlaylistItem.class).getModifiedCount();
+                if (round > 1 && stamped == 0) {
+                    break;
+                }
+                if (round > MAX_STAGING_ROUNDS) {
+                    log.warn("Playlist {} kept changing while it was rebalanced", playlistId);
+                    return false;
+                }
+                stageRanks(leased, epoch);
+            }
+
+            // Switch to the staged keys in one update, unless the lease ran out and writes resumed
+            switched = mongoTemplate.updateFirst(query(where("_id").is(playlistId).and("writeEpoch").is(epoch)
+                            .and("rebalanceLeaseUntil").gt(Instant.now())),
+                    new Update().inc("rankVersion", 1).unset("rebalanceLeaseUntil").unset("rebalanceRequested"),
+                    Playlist.class).getModifiedCount() == 1;
+            return switched;
+        } finally {
+            if (!switched) {
+                mongoTemplate.updateFirst(query(where("_id").is(playlistId).and("writeEpoch").is(epoch)),
+                        new Update().unset("rebalanceLeaseUntil"), Playlist.class);
+            }
+        }
+    }
+
+    // Helper method to write consecutive keys into the field not in use, in the current order. The
+    // field is reset to placeholders first, so no new key can collide with one left from before
+    private void stageRanks(Playlist playlist, long epoch) {
+        String stagingField = rankField(playlist).equals("rank") ? "altRank" : "rank";
+        List<PlaylistItem> items = mongoTemplate.find(query(where("playlistId").is(playlist.getId()))
+                .with(Sort.by(rankField(playlist))), PlaylistItem.class);
+        List<String> ranks = FractionalKey.sequence(items.size());
+
+        updateInBulk(items, epoch, i -> new Update().set(stagingField, placeholder(items.get(i).getId())));
+        updateInBulk(items, epoch, i -> new Update().set(stagingField, ranks.get(i)));
+    }
+
+    private void updateInBulk(List<PlaylistItem> items, long epoch, IntFunction<Update> update) {
+        for (int from = 0; from < items.size(); from += BULK_SIZE) {
+            BulkOperations bulkOperations = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, PlaylistItem.class);
+            for (int i = from; i < Math.min(from + BULK_SIZE, items.size()); i++) {
+                // Items a later rebalance has stamped belong to that one
+                bulkOperations.updateOne(query(where("_id").is(items.get(i).getId()).and("writeEpoch").is(epoch)), update.apply(i));
+            }
+            bulkOperations.execute();
+        }
+    }
+
+    // Helper method to pick a key between the requested neighbours
+    private String rankFor(Playlist playlist, String afterItemId, String beforeItemId) {
+        String lower = null;
+        String upper = null;
+        if (afterItemId != null) {
+            lower = rankOf(getItem(playlist.getId(), afterItemId), playlist);
+            // The item after it now, so a retry lands before whatever a concurrent change put there
+            upper = neighbourRank(playlist, byRank(playlist).gt(lower), Sort.Direction.ASC);
+            if (beforeItemId != null && rankOf(getItem(playlist.getId(), beforeItemId), playlist).compareTo(lower) <= 0) {
+                throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "afterItemId must come before beforeItemId");
+            }
+        } else if (beforeItemId != null) {
+            upper = rankOf(getItem(playlist.getId(), beforeItemId), playlist);
+            lower = neighbourRank(playlist, byRank(playlist).lt(upper), Sort.Direction.DESC);
+        } else {
+            lower = neighbourRank(playlist, byRank(playlist), Sort.Direction.DESC);
+        }
+
+        // Keys written in an older format, or a placeholder left by an insert that lost to a rebalance
+        if ((lower != null && !FractionalKey.isValid(lower)) || (upper != null && !FractionalKey.isValid(upper))) {
+            requestRebalance(playlist);
+            try {
+                rebalance(playlist.getId());
+            } catch (RuntimeException exception) {
+                log.warn("Could not rebalance playlist {}", playlist.getId(), exception);
+            }
+            throw reorganizing(playlist.getId());
+        }
+        try {
+            return FractionalKey.between(lower, upper);
+        } catch (IllegalArgumentException exception) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "afterItemId must come before beforeItemId");
+        }
+    }
+
+    private String neighbourRank(Playlist playlist, Criteria criteria, Sort.Direction direction) {
+        PlaylistItem item = mongoTemplate.findOne(query(criteria).with(Sort.by(direction, rankField(playlist))), PlaylistItem.class);
+        return item == null ? null : rankOf(item, playlist);
+    }
+
+    private void requestRebalanceIfLong(Playlist playlist, String rank) {
+        if (rank.length() > REBALANCE_KEY_LENGTH) {
+            requestRebalance(playlist);
+        }
+    }
+
+    private void requestRebalance(Playlist playlist) {
+        if (playlist.getRebalanceRequested() == null) {
+            mongoTemplate.updateFirst(query(where("_id").is(playlist.getId())),
+                    new Update().set("rebalanceRequested", true), Playlist.class);
+            playlist.setRebalanceRequested(true);
+        }
+    }
+
+    private static void retryOrGiveUp(int attempt, DuplicateKeyException exception) {
+        if (attempt == MAX_KEY_ATTEMPTS) {
+            throw new ResponseStatusException(HttpStatus.CONFLICT, "Playlist is changing too fast, retry", exception);
+        }
+    }
+
+    private static ResponseStatusException reorganizing(String playlistId) {
+        return new ResponseStatusException(HttpStatus.CONFLICT, "Playlist is being reorganized, retry shortly - " + playlistId);
+    }
+
+    // The key field a playlist is ordered by flips with every completed rebalance
+    private static String rankField(Playlist playlist) {
+        return playlist.getRankVersion() % 2 == 0 ? "rank" : "altRank";
+    }
+
+    private static String rankOf(PlaylistItem playlistItem, Playlist playlist) {
+        return playlist.getRankVersion() % 2 == 0 ? playlistItem.getRank() : playlistItem.getAltRank();
+    }
+
+    private static void setRank(PlaylistItem playlistItem, Playlist playlist, String rank) {
+        boolean usesRank = playlist.getRankVersion() % 2 == 0;
+        playlistItem.setRank(usesRank ? rank : placeholder(playlistItem.getId()));
+        playlistItem.setAltRank(usesRank ? placeholder(playlistItem.getId()) : rank);
+    }
+
+    // Unique per item, so the unique indexes on both key fields hold while a field is not in use
+    private static String placeholder(String itemId) {
+        return PLACEHOLDER_PREFIX + itemId;
+    }
+
+    // Helper method to match a playlist's items on their key field; naming $exists lets Mongo use the
+    // partial index on altRank
+    private static Criteria byRank(Playlist playlist) {
+        return where("playlistId").is(playlist.getId()).and(rankField(playlist)).exists(true);
+    }
+
+    private Playlist getPlaylistById(String playlistId) {
+        return playlistRepository.findById(playlistId)
+                .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND, "Cannot find playlist - " + playlistId));
+    }
+
+    private Playlist getWritablePlaylist(String playlistId) {
+        Playlist playlist = playlistRepository.findById(playlistId)
+                .filter(found -> found.getOwnerSub().equals(userService.getCurrentUserSub()))
+                .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND, "Cannot find playlist - " + playlistId));
+        if (playlist.getRebalanceLeaseUntil() != null && playlist.getRebalanceLeaseUntil().isAfter(Instant.now())) {
+            throw reorganizing(playlistId);
+        }
+        return playlist;
+    }
+
+    private PlaylistItem getItem(String playlistId, String itemId) {
+        return playlistItemRepository.findById(itemId)
+                .filter(item -> item.getPlaylistId().equals(playlistId))
+                .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND, "Cannot find playlist item - " + itemId));
+    }
+
+    private PlaylistDto mapToPlaylistDto(Playlist playlist) {
+        return new PlaylistDto(playlist.getId(), playlist.getTitle(), playlist.getItemCount());
+    }
+
+    private PlaylistItemDto mapToPlaylistItemDto(PlaylistItem playlistItem) {
+        var playlistItemDto = new PlaylistItemDto();
+        playlistItemDto.setId(playlistItem.getId());
+        playlistItemDto.setVideoId(playlistItem.getVideoId());
+        return playlistItemDto;
+    }
+}
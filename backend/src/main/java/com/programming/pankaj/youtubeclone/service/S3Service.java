@@ -1,8 +1,20 @@
 package com.programming.pankaj.youtubeclone.service;  // Package declaration for the service class
 
+import com.amazonaws.HttpMethod;  // Importing the HttpMethod enum of the AWS SDK
 import com.amazonaws.services.s3.AmazonS3Client;  // Importing the Amazon S3 client class
+import com.amazonaws.services.s3.model.AbortMultipartUploadRequest;  // Importing the AbortMultipartUploadRequest class from S3
+import com.amazonaws.services.s3.model.AmazonS3Exception;  // Importing the AmazonS3Exception class from S3
 import com.amazonaws.services.s3.model.CannedAccessControlList;  // Importing the CannedAccessControlList class from S3
+import com.amazonaws.services.s3.model.CompleteMultipartUploadRequest;  // Importing the CompleteMultipartUploadRequest class from S3
+import com.amazonaws.services.s3.model.GeneratePresignedUrlRequest;  // Importing the GeneratePresignedUrlRequest class from S3
+import com.amazonaws.services.s3.model.InitiateMultipartUploadRequest;  // Importing the InitiateMultipartUploadRequest class from S3
+import com.amazonaws.services.s3.model.ListPartsRequest;  // Importing the ListPartsRequest class from S3
 import com.amazonaws.services.s3.model.ObjectMetadata;  // Importing the ObjectMetadata class from S3
+import com.amazonaws.services.s3.model.PartETag;  // Importing the PartETag class from S3
+import com.amazonaws.services.s3.model.PartListing;  // Importing the PartListing class from S3
+import com.amazonaws.services.s3.model.UploadPartRequest;  // Importing the UploadPartRequest class from S3
+import com.programming.pankaj.youtubeclone.dto.StoredFileDto;  // Importing the StoredFileDto class
+import com.programming.pankaj.youtubeclone.model.StoredObject;  // Importing the StoredObject class
 import lombok.RequiredArgsConstructor;  // Importing Lombok annotation for constructor injection
 import org.springframework.http.HttpStatus;  // Importing HttpStatus class from Spring framework
 import org.springframework.stereotype.Service;  // Importing Service annotation from Spring framework
@@ -11,6 +23,18 @@ import org.springframework.web.multipart.MultipartFile;  // Importing MultipartF
 import org.springframework.web.server.ResponseStatusException;  // Importing ResponseStatusException class from Spring framework
 
 import java.io.IOException;  // Importing IOException class from Java IO
+import java.io.InputStream;  // Importing InputStream class from Java IO
+import java.security.DigestInputStream;  // Importing DigestInputStream class from Java Security
+import java.security.MessageDigest;  // Importing MessageDigest class from Java Security
+import java.security.NoSuchAlgorithmException;  // Importing NoSuchAlgorithmException class from Java Security
+import java.time.Duration;  // Importing Duration class from Java Time
+import java.time.Instant;  // Importing Instant class from Java Time
+import java.util.ArrayList;  // Importing ArrayList class from Java Util
+import java.util.Date;  // Importing Date class from Java Util
+import java.util.HexFormat;  // Importing HexFormat class from Java Util
+import java.util.List;  // Importing List interface from Java Util
+import java.util.Map;  // Importing Map interface from Java Util
+import java.util.Optional;  // Importing Optional class from Java Util
 import java.util.UUID;  // Importing UUID class from Java Util
 
 @Service  // Indicates that this class is a service component
@@ -19,10 +43,11 @@ public class S3Service implements FileService {  // Class declaration, implement
 
     public static final String BUCKET_NAME = "pankajspring";  // Static variable for the bucket name
     private final AmazonS3Client awsS3Client;  // Instance variable for the Amazon S3 client
+    private final StoredObjectIndex storedObjectIndex;  // Instance variable for the content hash index
 
     // Method to upload a file to Amazon S3
     @Override
-    public String uploadFile(MultipartFile file) {
+    public String uploadFile(MultipartFile file, String uploaderSub) {
         // Get the file extension
         var filenameExtension = StringUtils.getFilenameExtension(file.getOriginalFilename());
 
@@ -34,9 +59,17 @@ public class S3Service implements FileService {  // Class declaration, implement
         metadata.setContentLength(file.getSize());
         metadata.setContentType(file.getContentType());
 
-        try {
+        // Hash the bytes on their way to S3 so the content is identified without a second pass
+        MessageDigest digest = sha256Digest();
+        try (var inputStream = new DigestInputStream(file.getInputStream(), digest) {
+            // Without mark support the SDK replays retries from its own buffer, so no byte is hashed twice
+            @Override
+            public boolean markSupported() {
+                return false;
+            }
+        }) {
             // Upload the file to the specified bucket in Amazon S3
-            awsS3Client.putObject(BUCKET_NAME, key, file.getInputStream(), metadata);
+            awsS3Client.putObject(BUCKET_NAME, key, inputStream, metadata);
         } catch (IOException ioException) {
             // If an exception occurs during the file upload, throw a response status exception
             throw new ResponseStatusException(HttpStatus.INTERNAL_SERVER_ERROR,
@@ -46,6 +79,178 @@ public class S3Service implements FileService {  // Class declaration, implement
         // Set the access control list for the uploaded file to public read
         awsS3Client.setObjectAcl(BUCKET_NAME, key, CannedAccessControlList.PublicRead);
 
+        // Register the content; if the same bytes are already stored, share that object and drop this copy
+        var sha256 = HexFormat.of().formatHex(digest.digest());
+        StoredObject storedObject = storedObjectIndex.register(sha256, key, awsS3Client.getResourceUrl(BUCKET_NAME, key),
+                file.getSize(), file.getContentType(), uploaderSub);
+        if (!storedObject.getKey().equals(key)) {
+            awsS3Client.deleteObject(BUCKET_NAME, key);
+        }
+
+        // Return the URL of the stored file
+        return storedObject.getUrl();
+    }
+
+    // Method to look up a file the user uploaded before by the SHA-256 of its content
+    @Override
+    public Optional<StoredFileDto> findFile(String sha256, String uploaderSub) {
+        return storedObjectIndex.find(sha256.toLowerCase(), uploaderSub)
+                .map(storedObject -> new StoredFileDto(storedObject.getSha256(), storedObject.getUrl(),
+                        storedObject.getSize(), storedObject.getContentType()));
+    }
+
+    // Method to reference a file the user uploaded before by content hash instead of uploading it again
+    @Override
+    public Optional<String> reuseFile(String sha256, String uploaderSub) {
+        return storedObjectIndex.acquire(sha256.toLowerCase(), uploaderSub).map(StoredObject::getUrl);
+    }
+
+    // Method to drop a reference to a file and delete it from Amazon S3 once it is unused
+    @Override
+    public void releaseFile(String url) {
+        storedObjectIndex.release(url)
+                .ifPresent(storedObject -> awsS3Client.deleteObject(BUCKET_NAME, storedObject.getKey()));
+    }
+
+    // Helper method to create a SHA-256 message digest
+    private static MessageDigest sha256Digest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException exception) {
+            throw new IllegalStateException("SHA-256 is not available", exception);
+        }
+    }
+
+    // Method to start a multipart upload and get its upload ID
+    @Override
+    public String startUpload(String key, String contentType) {
+        // Create metadata for the file, the size is not known until all parts are in
+        var metadata = new ObjectMetadata();
+        metadata.setContentType(contentType);
+
+        // Start the multipart upload with public read access for the finished file
+        var request = new InitiateMultipartUploadRequest(BUCKET_NAME, key, metadata)
+                .withCannedACL(CannedAccessControlList.PublicRead);
+        return awsS3Client.initiateMultipartUpload(request).getUploadId();
+    }
+
+    // Method to stream one part of a multipart upload to Amazon S3 and get its ETag
+    @Override
+    public String uploadPart(String key, String uploadId, int partNumber, InputStream inputStream, long size, String md5Digest) {
+        // S3 checks the part against the base64 MD5 digest and rejects it on mismatch
+        var request = new UploadPartRequest()
+                .withBucketName(BUCKET_NAME)
+                .withKey(key)
+                .withUploadId(uploadId)
+                .withPartNumber(partNumber)
+                .withInputStream(inputStream)
+                .withPartSize(size)
+                .withMD5Digest(md5Digest);
+
+        try {
+            return awsS3Client.uploadPart(request).getPartETag().getETag();
+        } catch (AmazonS3Exception s3Exception) {
+            // A bad digest or an incomplete body is the client's fault, anything else is ours
+            if (s3Exception.getStatusCode() == HttpStatus.BAD_REQUEST.value()) {
+                throw new ResponseStatusException(HttpStatus.BAD_REQUEST,
+                        "The chunk was rejected by storage - " + s3Exception.getErrorCode());
+            }
+            throw new ResponseStatusException(HttpStatus.INTERNAL_SERVER_ERROR,
+                    "An Exception occurred while uploading the chunk");
+        }
+    }
+
+    // Method to stitch the uploaded parts together and get the URL of the file
+    @Override
+    public String completeUpload(String key, String uploadId, Map<Integer, String> partETags) {
+        // Parts must be listed in ascending part number order
+        List<PartETag> parts = new ArrayList<>();
+        partETags.entrySet().stream()
+                .sorted(Map.Entry.comparingByKey())
+                .forEach(part -> parts.add(new PartETag(part.getKey(), part.getValue())));
+
+        awsS3Client.completeMultipartUpload(new CompleteMultipartUploadRequest(BUCKET_NAME, key, uploadId, parts));
+        return awsS3Client.getResourceUrl(BUCKET_NAME, key);
+    }
+
+    // Method to abort a multipart upload and free its stored parts
+    @Override
+    public void abortUpload(String key, String uploadId) {
+        awsS3Client.abortMultipartUpload(new AbortMultipartUploadRequest(BUCKET_NAME, key, uploadId));
+    }
+
+    // Method to delete a file by key
+    @Override
+    public void deleteFile(String key) {
+        awsS3Client.deleteObject(BUCKET_NAME, key);
+    }
+
+    // Method to create a presigned URL the client can PUT a whole file to
+    @Override
+    public String presignUpload(String key, String contentType, Duration validity) {
+        // The client has to send the same Content-Type, it is part of the signature
+        var request = new GeneratePresignedUrlRequest(BUCKET_NAME, key, HttpMethod.PUT)
+                .withContentType(contentType)
+                .withExpiration(Date.from(Instant.now().plus(validity)));
+        return awsS3Client.generatePresignedUrl(request).toString();
+    }
+
+    // Method to create one presigned PUT URL per part of a multipart upload
+    @Override
+    public List<String> presignUploadParts(String key, String uploadId, int partCount, Duration validity) {
+        List<String> partUrls = new ArrayList<>();
+        for (int partNumber = 1; partNumber <= partCount; partNumber++) {
+            var request = new GeneratePresignedUrlRequest(BUCKET_NAME, key, HttpMethod.PUT)
+                    .withExpiration(Date.from(Instant.now().plus(validity)));
+            request.addRequestParameter("uploadId", uploadId);
+            request.addRequestParameter("partNumber", String.valueOf(partNumber));
+            partUrls.add(awsS3Client.generatePresignedUrl(request).toString());
+        }
+        return partUrls;
+    }
+
+    // Method to check a file the client uploaded directly, make it public and get its URL
+    @Override
+    public String completeDirectUpload(String key, String uploadId, long expectedSize) {
+        if (uploadId != null) {
+            // Collect the parts S3 actually received instead of trusting the client's list
+            List<PartETag> parts = new ArrayList<>();
+            var listPartsRequest = new ListPartsRequest(BUCKET_NAME, key, uploadId);
+            PartListing partListing;
+            do {
+                partListing = awsS3Client.listParts(listPartsRequest);
+                partListing.getParts().forEach(part -> parts.add(new PartETag(part.getPartNumber(), part.getETag())));
+                listPartsRequest.setPartNumberMarker(partListing.getNextPartNumberMarker());
+            } while (partListing.isTruncated());
+
+            try {
+                awsS3Client.completeMultipartUpload(new CompleteMultipartUploadRequest(BUCKET_NAME, key, uploadId, parts));
+            } catch (AmazonS3Exception s3Exception) {
+                // Missing or undersized parts
+                throw new ResponseStatusException(HttpStatus.CONFLICT,
+                        "The upload is incomplete - " + s3Exception.getErrorCode());
+            }
+        }
+
+        // Verify that the stored object is the file that was announced
+        ObjectMetadata metadata;
+        try {
+            metadata = awsS3Client.getObjectMetadata(BUCKET_NAME, key);
+        } catch (AmazonS3Exception s3Exception) {
+            if (s3Exception.getStatusCode() == HttpStatus.NOT_FOUND.value()) {
+                throw new ResponseStatusException(HttpStatus.CONFLICT, "The file has not been uploaded yet");
+            }
+            throw s3Exception;
+        }
+        if (metadata.getContentLength() != expectedSize) {
+            awsS3Client.deleteObject(BUCKET_NAME, key);
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Uploaded file has " + metadata.getContentLength()
+                    + " bytes but " + expectedSize + " were announced");
+        }
+
+        // Set the access control list for the uploaded file to public read
+        awsS3Client.setObjectAcl(BUCKET_NAME, key, CannedAccessControlList.PublicRead);
+
         // Return the URL of the uploaded file
         return awsS3Client.getResourceUrl(BUCKET_NAME, key);
     }
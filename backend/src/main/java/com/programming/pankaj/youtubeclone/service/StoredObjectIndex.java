@@ -0,0 +1,73 @@
+package com.programming.pankaj.youtubeclone.service;
+
+import com.programming.pankaj.youtubeclone.model.StoredObject;
+import com.programming.pankaj.youtubeclone.repository.StoredObjectRepository;
+import lombok.RequiredArgsConstructor;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Component;
+
+import java.time.Instant;
+import java.util.Optional;
+
+import static org.springframework.data.mongodb.core.query.Criteria.where;
+import static org.springframework.data.mongodb.core.query.Query.query;
+
+/**
+ * Content hash to stored object index with reference counts. Every change is a single atomic
+ * update, so concurrent uploads of the same bytes agree on one object. Lookups by hash are limited
+ * to users who uploaded the content, so a hash alone neither reveals nor grants access to a file.
+ */
+@Component
+@RequiredArgsConstructor
+public class StoredObjectIndex {
+
+    private final MongoTemplate mongoTemplate;
+    private final StoredObjectRepository storedObjectRepository;
+
+    // Method to register freshly stored content; returns the object every user of this content should share
+    public StoredObject register(String sha256, String key, String url, long size, String contentType, String uploaderSub) {
+        // The first writer's key wins, later ones only add a reference and must drop their copy
+        return mongoTemplate.findAndModify(query(where("_id").is(sha256)),
+                new Update().inc("referenceCount", 1)
+                        .addToSet("uploaderSubs", uploaderSub)
+                        .setOnInsert("key", key)
+                        .setOnInsert("url", url)
+                        .setOnInsert("size", size)
+                        .setOnInsert("contentType", contentType)
+                        .setOnInsert("createdAt", Instant.now()),
+                FindAndModifyOptions.options().upsert(true).returnNew(true), StoredObject.class);
+    }
+
+    // Method to take another reference on content the user has uploaded before
+    public Optional<StoredObject> acquire(String sha256, String uploaderSub) {
+        return Optional.ofNullable(mongoTemplate.findAndModify(
+                query(where("_id").is(sha256).and("referenceCount").gt(0).and("uploaderSubs").is(uploaderSub)),
+                new Update().inc("referenceCount", 1),
+                FindAndModifyOptions.options().returnNew(true), StoredObject.class));
+    }
+
+    // Method to look up content the user has uploaded before, without taking a reference
+    public Optional<StoredObject> find(String sha256, String uploaderSub) {
+        return storedObjectRepository.findById(sha256)
+                .filter(storedObject -> storedObject.getReferenceCount() > 0)
+                .filter(storedObject -> storedObject.getUploaderSubs() != null && storedObject.getUploaderSubs().contains(uploaderSub));
+    }
+
+    // Method to drop a reference by URL; returns the object once nothing uses it any more
+    public Optional<StoredObject> release(String url) {
+        StoredObject released = mongoTemplate.findAndModify(
+                query(where("url").is(url).and("referenceCount").gt(0)),
+                new Update().inc("referenceCount", -1),
+                FindAndModifyOptions.options().returnNew(true), StoredObject.class);
+        if (released == null || released.getReferenceCount() > 0) {
+            return Optional.empty();
+        }
+
+        // Only remove the entry if no upload re-registered the content in the meantime
+        StoredObject removed = mongoTemplate.findAndRemove(
+                query(where("_id").is(released.getSha256()).and("referenceCount").lte(0)), StoredObject.class);
+        return Optional.ofNullable(removed);
+    }
+}
@@ -0,0 +1,160 @@
+package com.programming.pankaj.youtubeclone.service;
+
+import com.programming.pankaj.youtubeclone.model.Video;
+import com.programming.pankaj.youtubeclone.model.ViewerSketch;
+import com.programming.pankaj.youtubeclone.repository.ViewerSketchRepository;
+import com.programming.pankaj.youtubeclone.util.HyperLogLog;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.http.HttpStatus;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.springframework.data.mongodb.core.query.Criteria.where;
+import static org.springframework.data.mongodb.core.query.Query.query;
+
+/**
+ * Counts approximate unique viewers per video with HyperLogLog sketches (see {@link HyperLogLog}
+ * for error bounds). Views are folded into in-memory sketches and periodically merged into the
+ * stored all-time and daily sketches, so every node can flush independently.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class UniqueViewerService {
+
+    private static final int MAX_FLUSH_ATTEMPTS = 5;
+    private static final int MAX_DAYS = 90;
+
+    private final ViewerSketchRepository viewerSketchRepository;
+    private final MongoTemplate mongoTemplate;
+    private final VideoFragmentCache videoFragmentCache;
+    private final Clock clock = Clock.systemUTC();
+
+    private final Map<SketchKey, HyperLogLog> pendingSketches = new ConcurrentHashMap<>();
+
+    private record SketchKey(String videoId, String day) {
+    }
+
+    // Method to record that a viewer watched a video
+    public void recordView(String videoId, String viewerId) {
+        addToPending(new SketchKey(videoId, null), viewerId);
+        addToPending(new SketchKey(videoId, today()), viewerId);
+    }
+
+    private void addToPending(SketchKey key, String viewerId) {
+        // The add runs under the map's lock for the key, so flush never takes a sketch that is still being written
+        pendingSketches.compute(key, (sketchKey, sketch) -> {
+            HyperLogLog pending = sketch == null ? new HyperLogLog() : sketch;
+            pending.add(viewerId);
+            return pending;
+        });
+    }
+
+    // Method to get the approximate number of unique viewers over the last given number of days
+    public long getUniqueViewers(String videoId, int days) {
+        if (days < 1 || days > MAX_DAYS) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Number of days must be between 1 and " + MAX_DAYS + " - " + days);
+        }
+        LocalDate today = LocalDate.now(clock);
+        List<String> window = new ArrayList<>();
+        for (int i = 0; i < days; i++) {
+            window.add(today.minusDays(i).toString());
+        }
+
+        // Daily sketches merge into an exact union sketch of the whole window
+        HyperLogLog union = new HyperLogLog();
+        viewerSketchRepository.findByVideoIdAndDayIn(videoId, window)
+                .forEach(sketch -> union.merge(HyperLogLog.fromBytes(sketch.getRegisters())));
+        window.forEach(day -> {
+            HyperLogLog pending = pendingSketches.get(new SketchKey(videoId, day));
+            if (pending != null) {
+                union.merge(pending);
+            }
+        });
+        return union.estimate();
+    }
+
+    @Scheduled(fixedDelayString = "${videos.unique-viewers.flush-interval-ms:10000}")
+    public void flush() {
+        for (SketchKey key : List.copyOf(pendingSketches.keySet())) {
+            // Views recorded after the removal go into a fresh sketch for the next flush
+            HyperLogLog pending = pendingSketches.remove(key);
+            if (pending == null) {
+                continue;
+            }
+            try {
+                HyperLogLog merged = mergeIntoStored(key, pending);
+                if (key.day() == null) {
+                    publishEstimate(key.videoId(), merged.estimate());
+                }
+            } catch (RuntimeException exception) {
+                log.warn("Could not flush viewer sketch of video {}", key.videoId(), exception);
+                pendingSketches.merge(key, pending, (current, failed) -> {
+                    current.merge(failed);
+                    return current;
+                });
+            }
+        }
+    }
+
+    private HyperLogLog mergeIntoStored(SketchKey key, HyperLogLog pending) {
+        String sketchId = key.day() == null ? key.videoId() : key.videoId() + ":" + key.day();
+
+        // Merging is idempotent, so a write lost to another node is simply retried on fresh data
+        for (int attempt = 1; ; attempt++) {
+            ViewerSketch stored = viewerSketchRepository.findById(sketchId)
+                    .orElseGet(() -> new ViewerSketch(sketchId, key.videoId(), key.day(), null, null, null));
+            // Set on every merge, so daily sketches written before the field existed get it too
+            stored.setExpiresAt(expiryOf(key.day()));
+
+            HyperLogLog merged = stored.getRegisters() == null
+                    ? new HyperLogLog()
+                    : HyperLogLog.fromBytes(stored.getRegisters());
+            merged.merge(pending);
+            stored.setRegisters(merged.toBytes());
+
+            try {
+                viewerSketchRepository.save(stored);
+                return merged;
+            } catch (OptimisticLockingFailureException | DuplicateKeyException exception) {
+                if (attempt == MAX_FLUSH_ATTEMPTS) {
+                    throw exception;
+                }
+            }
+        }
+    }
+
+    // Helper method to get when a daily sketch leaves the longest window, the day after its last one
+    private static Instant expiryOf(String day) {
+        if (day == null) {
+            return null;
+        }
+        return LocalDate.parse(day).plusDays(MAX_DAYS).atStartOfDay(ZoneOffset.UTC).toInstant();
+    }
+
+    private void publishEstimate(String videoId, long estimate) {
+        // Only the counter field is set so the rest of the video document is not rewritten
+        mongoTemplate.updateFirst(query(where("_id").is(videoId)),
+                new Update().set("uniqueViewerCount", estimate), Video.class);
+        videoFragmentCache.invalidate(videoId);
+    }
+
+    private String today() {
+        return LocalDate.now(clock).toString();
+    }
+}
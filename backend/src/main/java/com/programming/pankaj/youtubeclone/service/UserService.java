@@ -1,31 +1,46 @@
 package com.programming.pankaj.youtubeclone.service;
 
+import com.mongodb.client.result.UpdateResult;
+import com.programming.pankaj.youtubeclone.eventlog.EventType;
+import com.programming.pankaj.youtubeclone.eventlog.InteractionEvent;
+import com.programming.pankaj.youtubeclone.eventlog.InteractionEventLog;
 import com.programming.pankaj.youtubeclone.model.User;
 import com.programming.pankaj.youtubeclone.repository.UserRepository;
 import lombok.RequiredArgsConstructor;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Update;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.security.oauth2.jwt.Jwt;
 import org.springframework.stereotype.Service;
 
 import java.util.Set;
 
+import static org.springframework.data.mongodb.core.query.Criteria.where;
+import static org.springframework.data.mongodb.core.query.Query.query;
+
 @Service
 @RequiredArgsConstructor
 public class UserService {
 
     private final UserRepository userRepository;
+    private final MongoTemplate mongoTemplate;
+    private final ChannelStatsService channelStatsService;
+    private final InteractionEventLog interactionEventLog;
+
+    public String getCurrentUserSub() {
+        return ((Jwt) (SecurityContextHolder.getContext().getAuthentication().getPrincipal())).getClaim("sub");
+    }
 
     public User getCurrentUser() {
-        String sub = ((Jwt) (SecurityContextHolder.getContext().getAuthentication().getPrincipal())).getClaim("sub");
+        String sub = getCurrentUserSub();
 
         return userRepository.findBySub(sub)
                 .orElseThrow(() -> new IllegalArgumentException("Cannot find user with sub - " + sub));
     }
 
-    public void addToLikedVideos(String videoId) {
-        User currentUser = getCurrentUser();
-        currentUser.addToLikeVideos(videoId);
-        userRepository.save(currentUser);
+    // Returns whether the video was added, so callers count only the like this request made
+    public boolean addToLikedVideos(String videoId) {
+        return changeReaction(new Update().addToSet("likedVideos", videoId), EventType.LIKE_ADDED, videoId);
     }
 
     public boolean ifLikedVideo(String videoId) {
@@ -34,46 +49,55 @@ public class UserService {
 
 
 
-    public void removeFromLikedVideos(String videoId) {
-        User currentUser = getCurrentUser();
-        currentUser.removeFromLikedVideos(videoId);
-        userRepository.save(currentUser);
+    // Returns whether the video was removed, so callers count only the like this request took back
+    public boolean removeFromLikedVideos(String videoId) {
+        return changeReaction(new Update().pull("likedVideos", videoId), EventType.LIKE_REMOVED, videoId);
     }
 
-    public void removeFromDislikedVideos(String videoId) {
-        User currentUser = getCurrentUser();
-        currentUser.removeFromDislikedVideos(videoId);
-        userRepository.save(currentUser);
+    // Returns whether the video was removed, so callers count only the dislike this request took back
+    public boolean removeFromDislikedVideos(String videoId) {
+        return changeReaction(new Update().pull("disLikedVideos", videoId), EventType.DISLIKE_REMOVED, videoId);
     }
 
 
 
     public void addVideoToHistory(String videoId) {
         User currentUser = getCurrentUser();
-        currentUser.addToVideoHistory(videoId);
-        userRepository.save(currentUser);
+        updateUser(currentUser.getId(), new Update().addToSet("videoHistory", videoId));
     }
 
     public void subscribeUser(String userId) {
         User currentUser = getCurrentUser();
-        currentUser.addToSubscribedToUsers(userId);
 
-        User user = getUserById(userId);
-        user.addToSubscribers(currentUser.getId());
+        // Only the update that actually adds the subscriber counts it, so repeated or concurrent subscribes count once
+        UpdateResult added = mongoTemplate.updateFirst(query(where("_id").is(userId)),
+                new Update().addToSet("subscribers", currentUser.getId()), User.class);
+        if (added.getMatchedCount() == 0) {
+            throw new IllegalArgumentException("Cannot find user with userId " + userId);
+        }
+        updateUser(currentUser.getId(), new Update().addToSet("subscribedToUsers", userId));
 
-        userRepository.save(currentUser);
-        userRepository.save(user);
+        if (added.getModifiedCount() == 1) {
+            channelStatsService.recordSubscribers(userId, 1);
+            interactionEventLog.append(InteractionEvent.now(EventType.SUBSCRIBED, currentUser.getSub(), userId));
+        }
     }
 
     public void unSubscribeUser(String userId) {
         User currentUser = getCurrentUser();
-        currentUser.removeFromSubscribedToUsers(userId);
 
-        User user = getUserById(userId);
-        user.removeFromSubscribers(currentUser.getId());
+        // Only the update that actually removes the subscriber counts it
+        UpdateResult removed = mongoTemplate.updateFirst(query(where("_id").is(userId)),
+                new Update().pull("subscribers", currentUser.getId()), User.class);
+        if (removed.getMatchedCount() == 0) {
+            throw new IllegalArgumentException("Cannot find user with userId " + userId);
+        }
+        updateUser(currentUser.getId(), new Update().pull("subscribedToUsers", userId));
 
-        userRepository.save(currentUser);
-        userRepository.save(user);
+        if (removed.getModifiedCount() == 1) {
+            channelStatsService.recordSubscribers(userId, -1);
+            interactionEventLog.append(InteractionEvent.now(EventType.UNSUBSCRIBED, currentUser.getSub(), userId));
+        }
     }
 
     public Set<String> userHistory(String userId) {
@@ -86,17 +110,34 @@ public class UserService {
                 .orElseThrow(() -> new IllegalArgumentException("Cannot find user with userId " + userId));
     }
 
+    // Helper method to change one of a user's sets in place; saving the whole user would overwrite
+    // changes other requests made to its other sets in the meantime
+    private void updateUser(String userId, Update update) {
+        mongoTemplate.updateFirst(query(where("_id").is(userId)), update, User.class);
+    }
+
 
     public boolean ifDislikedVideos(String videoId) {
         return getCurrentUser().getDisLikedVideos().stream().anyMatch(likedVideo -> likedVideo.equals(videoId));
     }
 
 
-    public void addToDislikedVideos(String videoId) {
-            User currentUser = getCurrentUser();
-            currentUser.addToDislikedVideos(videoId);
-            userRepository.save(currentUser);
+    // Returns whether the video was added, so callers count only the dislike this request made
+    public boolean addToDislikedVideos(String videoId) {
+        return changeReaction(new Update().addToSet("disLikedVideos", videoId), EventType.DISLIKE_ADDED, videoId);
+    }
+
+    // Helper method to change one of the current user's reaction sets. Only the update that actually
+    // changed the set is recorded, so repeated or concurrent clicks record it once
+    private boolean changeReaction(Update update, EventType eventType, String videoId) {
+        User currentUser = getCurrentUser();
+        UpdateResult result = mongoTemplate.updateFirst(query(where("_id").is(currentUser.getId())), update, User.class);
+        if (result.getModifiedCount() == 0) {
+            return false;
         }
+        interactionEventLog.append(InteractionEvent.now(eventType, currentUser.getSub(), videoId));
+        return true;
+    }
 
     }
 
@@ -0,0 +1,226 @@
+package com.programming.pankaj.youtubeclone.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileGenerator;
+import com.programming.pankaj.youtubeclone.cache.InvalidationEvent;
+import com.programming.pankaj.youtubeclone.cache.InvalidationListener;
+import com.programming.pankaj.youtubeclone.dto.VideoDto;
+import com.programming.pankaj.youtubeclone.model.Video;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.mongodb.core.mapping.event.AbstractMongoEventListener;
+import org.springframework.data.mongodb.core.mapping.event.AfterSaveEvent;
+import org.springframework.http.InvalidMediaTypeException;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StringUtils;
+
+import java.io.ByteArrayOutputStream;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Keeps the serialized form of every {@link VideoDto} so list responses are built by
+ * concatenating cached bytes instead of running Jackson over each video again.
+ * Fragments are dropped whenever a {@link Video} document is saved here or, through the
+ * {@link InvalidationListener} callback, on another node. View counts are incremented in place
+ * without invalidating, so fragments are also re-rendered once they reach a maximum age. The
+ * cache holds at most a fixed number of fragments per encoding and starts over when full.
+ */
+@Component
+public class VideoFragmentCache extends AbstractMongoEventListener<Video> implements InvalidationListener {
+
+    public static final String APPLICATION_SMILE_VALUE = "application/x-jackson-smile";
+    public static final MediaType APPLICATION_SMILE = MediaType.valueOf(APPLICATION_SMILE_VALUE);
+
+    public enum Encoding {
+        JSON(MediaType.APPLICATION_JSON, new byte[]{','}),
+        // Smile values are self-delimiting, so array elements need no separator
+        SMILE(APPLICATION_SMILE, new byte[0]);
+
+        private final MediaType mediaType;
+        private final byte[] separator;
+
+        Encoding(MediaType mediaType, byte[] separator) {
+            this.mediaType = mediaType;
+            this.separator = separator;
+        }
+
+        public MediaType getMediaType() {
+            return mediaType;
+        }
+
+        // Method to pick the encoding preferred by an Accept header, falling back to JSON
+        public static Encoding negotiate(String accept) {
+            if (!StringUtils.hasText(accept)) {
+                return JSON;
+            }
+            List<MediaType> acceptedTypes;
+            try {
+                acceptedTypes = new ArrayList<>(MediaType.parseMediaTypes(accept));
+            } catch (InvalidMediaTypeException exception) {
+                return JSON;
+            }
+            acceptedTypes.sort(Comparator.comparingDouble(MediaType::getQualityValue).reversed());
+            for (MediaType acceptedType : acceptedTypes) {
+                if (acceptedType.getQualityValue() == 0 || acceptedType.isWildcardType()) {
+                    continue;
+                }
+                for (Encoding encoding : values()) {
+                    if (acceptedType.isCompatibleWith(encoding.mediaType)) {
+                        return encoding;
+                    }
+                }
+            }
+            return JSON;
+        }
+    }
+
+    // Power of two, so a stripe is picked by masking the hash
+    private static final int INVALIDATION_STRIPES = 4096;
+
+    private record Fragment(byte[] bytes, long renderedAt) {
+    }
+
+    private final Map<Encoding, Map<String, Fragment>> fragments = new ConcurrentHashMap<>();
+    private final Map<Encoding, ObjectWriter> elementWriters = new ConcurrentHashMap<>();
+    private final Map<Encoding, byte[]> arrayPrefixes = new ConcurrentHashMap<>();
+    private final Map<Encoding, byte[]> arraySuffixes = new ConcurrentHashMap<>();
+
+    // Every invalidation gets a stamp so a fragment rendered from an older read is never stored.
+    // Stamps are kept per stripe of video ids rather than per video, so they take fixed memory;
+    // a collision only means a fragment is not stored this time.
+    private final AtomicLong invalidationClock = new AtomicLong();
+    private final AtomicLongArray invalidationStamps = new AtomicLongArray(INVALIDATION_STRIPES);
+    private volatile long lastFullInvalidation;
+
+    private final int maxEntries;
+    private final long maxAgeNanos;
+
+    public VideoFragmentCache(ObjectMapper objectMapper,
+                              @Value("${videos.fragment-cache.max-entries:10000}") int maxEntries,
+                              @Value("${videos.fragment-cache.max-age:30s}") Duration maxAge) {
+        this.maxEntries = maxEntries;
+        this.maxAgeNanos = maxAge.toNanos();
+        ObjectMapper smileMapper = Jackson2ObjectMapperBuilder.smile().build();
+
+        // Fragments are spliced into one stream, so they must not start with the Smile header, and
+        // shared-name back references would point into bytes of other writes. The factory decides
+        // both when it creates a generator, so the fragments get a factory with them switched off
+        ObjectMapper smileFragmentMapper = Jackson2ObjectMapperBuilder.smile()
+                .factory(SmileFactory.builder()
+                        .disable(SmileGenerator.Feature.WRITE_HEADER)
+                        .disable(SmileGenerator.Feature.CHECK_SHARED_NAMES)
+                        .build())
+                .build();
+
+        register(Encoding.JSON, objectMapper.writer(), objectMapper.writer());
+        register(Encoding.SMILE, smileMapper.writer(), smileFragmentMapper.writer());
+    }
+
+    private void register(Encoding encoding, ObjectWriter envelopeWriter, ObjectWriter elementWriter) {
+        // Serialize an empty array once and split it around its closing token to get the envelope
+        byte[] emptyArray = write(envelopeWriter, List.of());
+        arrayPrefixes.put(encoding, Arrays.copyOf(emptyArray, emptyArray.length - 1));
+        arraySuffixes.put(encoding, new byte[]{emptyArray[emptyArray.length - 1]});
+        elementWriters.put(encoding, elementWriter);
+        fragments.put(encoding, new ConcurrentHashMap<>());
+    }
+
+    // Method to assemble a serialized array of videos from cached fragments
+    public byte[] writeList(Supplier<List<Video>> loader, Encoding encoding, Function<Video, VideoDto> mapper) {
+        // Read the clock before loading so saves racing with the query are detected
+        long readStamp = invalidationClock.get();
+        List<Video> videos = loader.get();
+        Map<String, Fragment> cache = fragments.get(encoding);
+
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        outputStream.writeBytes(arrayPrefixes.get(encoding));
+        for (int i = 0; i < videos.size(); i++) {
+            if (i > 0) {
+                outputStream.writeBytes(encoding.separator);
+            }
+            outputStream.writeBytes(fragmentFor(videos.get(i), encoding, cache, mapper, readStamp));
+        }
+        outputStream.writeBytes(arraySuffixes.get(encoding));
+        return outputStream.toByteArray();
+    }
+
+    private byte[] fragmentFor(Video video, Encoding encoding, Map<String, Fragment> cache,
+                               Function<Video, VideoDto> mapper, long readStamp) {
+        long now = System.nanoTime();
+        Fragment cached = cache.get(video.getId());
+        if (cached != null && now - cached.renderedAt() < maxAgeNanos) {
+            return cached.bytes();
+        }
+
+        byte[] fragment = write(elementWriters.get(encoding), mapper.apply(video));
+        if (!invalidatedSince(video.getId(), readStamp)) {
+            if (cached == null && cache.size() >= maxEntries) {
+                cache.clear();
+            }
+            cache.put(video.getId(), new Fragment(fragment, now));
+            if (invalidatedSince(video.getId(), readStamp)) {
+                cache.remove(video.getId());
+            }
+        }
+        return fragment;
+    }
+
+    private boolean invalidatedSince(String videoId, long readStamp) {
+        return lastFullInvalidation > readStamp || invalidationStamps.get(stripe(videoId)) > readStamp;
+    }
+
+    private static int stripe(String videoId) {
+        return videoId.hashCode() & (INVALIDATION_STRIPES - 1);
+    }
+
+    // Method to drop every cached fragment of a video
+    public void invalidate(String videoId) {
+        invalidationStamps.accumulateAndGet(stripe(videoId), invalidationClock.incrementAndGet(), Math::max);
+        fragments.values().forEach(cache -> cache.remove(videoId));
+    }
+
+    // Method to drop all cached fragments
+    public void invalidateAll() {
+        lastFullInvalidation = invalidationClock.incrementAndGet();
+        fragments.values().forEach(Map::clear);
+    }
+
+    @Override
+    public void onAfterSave(AfterSaveEvent<Video> event) {
+        invalidate(event.getSource().getId());
+    }
+
+    @Override
+    public void onInvalidation(InvalidationEvent event) {
+        if (!"Video".equals(event.collection())) {
+            return;
+        }
+        if (event.isCollectionWide()) {
+            invalidateAll();
+        } else {
+            invalidate(event.id());
+        }
+    }
+
+    private static byte[] write(ObjectWriter writer, Object value) {
+        try {
+            return writer.writeValueAsBytes(value);
+        } catch (JsonProcessingException exception) {
+            throw new IllegalStateException("Exception occurred while serializing videos", exception);
+        }
+    }
+}
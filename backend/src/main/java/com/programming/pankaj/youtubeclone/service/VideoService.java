@@ -1,36 +1,103 @@
 package com.programming.pankaj.youtubeclone.service;
 
+import com.programming.pankaj.youtubeclone.dto.ChannelDto;
 import com.programming.pankaj.youtubeclone.dto.CommentDto;
 import com.programming.pankaj.youtubeclone.dto.UploadVideoResponse;
 import com.programming.pankaj.youtubeclone.dto.VideoDto;
-import com.programming.pankaj.youtubeclone.model.Comment;
+import com.programming.pankaj.youtubeclone.eventlog.EventType;
+import com.programming.pankaj.youtubeclone.eventlog.InteractionEvent;
+import com.programming.pankaj.youtubeclone.eventlog.InteractionEventLog;
+import com.programming.pankaj.youtubeclone.model.ChannelStats;
+import com.programming.pankaj.youtubeclone.model.UploadState;
 import com.programming.pankaj.youtubeclone.model.Video;
 import com.programming.pankaj.youtubeclone.repository.VideoRepository;
 import lombok.RequiredArgsConstructor;
+import org.bson.types.ObjectId;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.http.HttpStatus;
 import org.springframework.stereotype.Service;
 import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.server.ResponseStatusException;
 
+import java.time.Instant;
+import java.util.ArrayList;
 import java.util.List;
 
+import static org.springframework.data.mongodb.core.query.Criteria.where;
+import static org.springframework.data.mongodb.core.query.Query.query;
+
 @Service
 @RequiredArgsConstructor
 public class VideoService {
 
+    private static final int MAX_PAGE_SIZE = 100;
+
     private final S3Service s3Service;
     private final VideoRepository videoRepository;
+    private final MongoTemplate mongoTemplate;
     private final UserService userService;
+    private final VideoFragmentCache videoFragmentCache;
+    private final UniqueViewerService uniqueViewerService;
+    private final CommentService commentService;
+    private final ChannelStatsService channelStatsService;
+    private final InteractionEventLog interactionEventLog;
 
     // Method to upload a video
     public UploadVideoResponse uploadVideo(MultipartFile multipartFile) {
         // Upload the video file to Amazon S3 and get the video URL
-        String videoUrl = s3Service.uploadFile(multipartFile);
+        String videoUrl = s3Service.uploadFile(multipartFile, userService.getCurrentUserSub());
+
+        return saveUploadedVideo(videoUrl);
+    }
+
+    // Method to create a video whose file is still being uploaded directly to storage
+    public String createPendingVideo() {
+        var video = new Video();
+        video.setUserId(userService.getCurrentUser().getId());
+        video.setCreatedAt(Instant.now());
+        video.setUploadState(UploadState.PENDING);
+        return videoRepository.save(video).getId();
+    }
+
+    // Method to attach the uploaded file to a pending video and make it visible
+    public UploadVideoResponse finishPendingVideo(String videoId, String videoUrl) {
+        var video = getVideoById(videoId);
+        updateVideo(videoId, new Update().set("videoUrl", videoUrl).set("uploadState", UploadState.READY));
+
+        channelStatsService.recordUpload(video.getUserId());
+        return new UploadVideoResponse(videoId, videoUrl);
+    }
+
+    // Method to remove a pending video whose upload was abandoned
+    public void deletePendingVideo(String videoId) {
+        videoRepository.findById(videoId)
+                .filter(video -> video.getUploadState() == UploadState.PENDING)
+                .ifPresent(videoRepository::delete);
+    }
+
+    // Method to create a video from content that is already stored, skipping the transfer
+    public UploadVideoResponse uploadVideoByHash(String sha256) {
+        // Take a reference on the stored file with this content hash, if this user uploaded it before
+        String videoUrl = s3Service.reuseFile(sha256, userService.getCurrentUserSub())
+                .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND, "Cannot find file by hash - " + sha256));
+
+        return saveUploadedVideo(videoUrl);
+    }
 
+    // Method to create the video record for a file that is already in storage
+    public UploadVideoResponse saveUploadedVideo(String videoUrl) {
         // Create a new Video object and set the video URL
         var video = new Video();
         video.setVideoUrl(videoUrl);
+        video.setUserId(userService.getCurrentUser().getId());
+        video.setCreatedAt(Instant.now());
+        video.setUploadState(UploadState.READY);
 
-        // Save the video object to the database
+        // Save the video object to the database and count it on the uploader's channel
         var savedVideo = videoRepository.save(video);
+        channelStatsService.recordUpload(savedVideo.getUserId());
 
         // Return the response containing the saved video's ID and URL
         return new UploadVideoResponse(savedVideo.getId(), savedVideo.getVideoUrl());
@@ -41,17 +108,16 @@ public class VideoService {
         // Find the video by ID
         var savedVideo = getVideoById(videoDto.getId());
 
-        // Update the video's fields with the values from videoDto
-        savedVideo.setTitle(videoDto.getTitle());
-        savedVideo.setDescription(videoDto.getDescription());
-        savedVideo.setTags(videoDto.getTags());
-        savedVideo.setThumbnailUrl(videoDto.getThumbnailUrl());
-        savedVideo.setVideoStatus(videoDto.getVideoStatus());
-
-        // Save the updated video to the database
-        videoRepository.save(savedVideo);
+        // Update the video's fields with the values from videoDto. The thumbnail is not taken from the
+        // client: it is a reference-counted stored file and only changes through the thumbnail uploads
+        updateVideo(savedVideo.getId(), new Update()
+                .set("title", videoDto.getTitle())
+                .set("description", videoDto.getDescription())
+                .set("tags", videoDto.getTags())
+                .set("videoStatus", videoDto.getVideoStatus()));
 
         // Return the updated videoDto
+        videoDto.setThumbnailUrl(savedVideo.getThumbnailUrl());
         return videoDto;
     }
 
@@ -61,32 +127,72 @@ public class VideoService {
         var savedVideo = getVideoById(videoId);
 
         // Upload the thumbnail image file to Amazon S3 and get the thumbnail URL
-        String thumbnailUrl = s3Service.uploadFile(file);
+        String thumbnailUrl = s3Service.uploadFile(file, userService.getCurrentUserSub());
+
+        return replaceThumbnail(savedVideo, thumbnailUrl);
+    }
+
+    // Method to set a thumbnail from content that is already stored, skipping the transfer
+    public String uploadThumbnailByHash(String sha256, String videoId) {
+        // Find the video by ID
+        var savedVideo = getVideoById(videoId);
+
+        // Take a reference on the stored file with this content hash, if this user uploaded it before
+        String thumbnailUrl = s3Service.reuseFile(sha256, userService.getCurrentUserSub())
+                .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND, "Cannot find file by hash - " + sha256));
+
+        return replaceThumbnail(savedVideo, thumbnailUrl);
+    }
+
+    // Helper method to switch a video to a new thumbnail and release the old one
+    private String replaceThumbnail(Video savedVideo, String thumbnailUrl) {
+        String previousThumbnailUrl = savedVideo.getThumbnailUrl();
 
         // Set the thumbnail URL for the video
-        savedVideo.setThumbnailUrl(thumbnailUrl);
+        updateVideo(savedVideo.getId(), new Update().set("thumbnailUrl", thumbnailUrl));
 
-        // Save the updated video to the database
-        videoRepository.save(savedVideo);
+        // Drop the reference to the previous thumbnail, which deletes it if nothing else uses it
+        if (previousThumbnailUrl != null && !previousThumbnailUrl.equals(thumbnailUrl)) {
+            s3Service.releaseFile(previousThumbnailUrl);
+        }
 
         // Return the thumbnail URL
         return thumbnailUrl;
     }
 
+    // Helper method to change some fields of a video. Only those fields are written, so counters
+    // incremented in place since the video was read are not overwritten
+    private void updateVideo(String videoId, Update update) {
+        mongoTemplate.updateFirst(query(where("_id").is(videoId)), update, Video.class);
+        videoFragmentCache.invalidate(videoId);
+    }
+
     // Helper method to get a Video object by its ID
     private Video getVideoById(String videoId) {
         return videoRepository.findById(videoId)
                 .orElseThrow(() -> new IllegalArgumentException("Cannot find video by ID - " + videoId));
     }
 
+    // Helper method to get a video viewers can see; one still waiting for its file does not exist for them yet
+    private Video getListedVideoById(String videoId) {
+        return videoRepository.findById(videoId)
+                .filter(video -> video.getUploadState() != UploadState.PENDING)
+                .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND, "Cannot find video by ID - " + videoId));
+    }
+
     // Method to get the details of a video
     public VideoDto getVideoDetails(String videoId) {
         // Get the video by ID
-        Video savedVideo = getVideoById(videoId);
+        Video savedVideo = getListedVideoById(videoId);
 
         // Increase the view count of the video
         increaseVideoCount(savedVideo);
 
+        // Count the viewer in the unique-viewer sketches and record the view in the event log
+        String viewerSub = userService.getCurrentUserSub();
+        uniqueViewerService.recordView(videoId, viewerSub);
+        interactionEventLog.append(InteractionEvent.now(EventType.VIEW, viewerSub, videoId));
+
         // Add the video to the user's watch history
         userService.addVideoToHistory(videoId);
 
@@ -96,36 +202,35 @@ public class VideoService {
 
     // Helper method to increase the view count of a video
     private void increaseVideoCount(Video savedVideo) {
+        // Increment in place: no save event, so cached list fragments pick the count up when they expire
+        mongoTemplate.updateFirst(query(where("_id").is(savedVideo.getId())), new Update().inc("viewCount", 1), Video.class);
         savedVideo.incrementViewCount();
-        videoRepository.save(savedVideo);
+        channelStatsService.recordView(savedVideo.getUserId());
+    }
+
+    // Method to get the approximate number of unique viewers of a video over the last given days
+    public long getUniqueViewers(String videoId, int days) {
+        return uniqueViewerService.getUniqueViewers(videoId, days);
     }
 
     // Method to like a video
     public VideoDto likeVideo(String videoId) {
         // Get the video by ID
-        Video videoById = getVideoById(videoId);
-
-        // Check if the user has already liked the video
-        if (userService.ifLikedVideo(videoId)) {
-            // If the user has already liked the video, decrement the likes count and remove it from the liked videos list
-            videoById.decrementLikes();
-            userService.removeFromLikedVideos(videoId);
-        } else if (userService.ifDislikedVideos(videoId))
-        {
-            // If the user has already disliked the video, decrement the dislikes count, remove it from the disliked videos list,
-            // increment the likes count, and add it to the liked videos list
-            videoById.decrementDislikes();
-            userService.removeFromDislikedVideos(videoId);
-            videoById.incrementLikes();
-            userService.addToLikedVideos(videoId);
+        Video videoById = getListedVideoById(videoId);
+
+        // The counters move only by what this request changed in the user's sets, so concurrent
+        // or repeated clicks count once
+        int likeDelta;
+        int disLikeDelta = 0;
+        if (userService.removeFromLikedVideos(videoId)) {
+            // The user had liked the video, so the like is taken back
+            likeDelta = -1;
         } else {
-            // If the user has not liked or disliked the video, increment the likes count and add it to the liked videos list
-            videoById.incrementLikes();
-            userService.addToLikedVideos(videoId);
+            // Otherwise the video is liked, replacing the user's dislike if there was one
+            likeDelta = userService.addToLikedVideos(videoId) ? 1 : 0;
+            disLikeDelta = userService.removeFromDislikedVideos(videoId) ? -1 : 0;
         }
-
-        // Save the updated video to the database
-        videoRepository.save(videoById);
+        applyReactionDeltas(videoById, likeDelta, disLikeDelta);
 
         // Map the Video object to VideoDto and return
         return mapToVideoDto(videoById);
@@ -134,35 +239,70 @@ public class VideoService {
     // Method to dislike a video
     public VideoDto disLikeVideo(String videoId) {
         // Get the video by ID
-        Video videoById = getVideoById(videoId);
-
-        // Check if the user has already disliked the video
-        if (userService.ifDislikedVideos(videoId)) {
-            // If the user has already disliked the video, decrement the dislikes count and remove it from the disliked videos list
-            videoById.decrementDislikes();
-            userService.removeFromDislikedVideos(videoId);
-        } else if (userService.ifLikedVideo(videoId)) {
-            // If the user has already liked the video, decrement the likes count, remove it from the liked videos list,
-            // increment the dislikes count, and add it to the disliked videos list
-            videoById.decrementLikes();
-            userService.removeFromLikedVideos(videoId);
-            videoById.incrementDislikes();
-            userService.addToDislikedVideos(videoId);
+        Video videoById = getListedVideoById(videoId);
+
+        // The counters move only by what this request changed in the user's sets, so concurrent
+        // or repeated clicks count once
+        int likeDelta = 0;
+        int disLikeDelta;
+        if (userService.removeFromDislikedVideos(videoId)) {
+            // The user had disliked the video, so the dislike is taken back
+            disLikeDelta = -1;
         } else {
-            // If the user has not liked or disliked the video, increment the dislikes count and add it to the disliked videos list
-            videoById.incrementDislikes();
-            userService.addToDislikedVideos(videoId);
+            // Otherwise the video is disliked, replacing the user's like if there was one
+            disLikeDelta = userService.addToDislikedVideos(videoId) ? 1 : 0;
+            likeDelta = userService.removeFromLikedVideos(videoId) ? -1 : 0;
         }
-
-        // Save the updated video to the database
-        videoRepository.save(videoById);
+        applyReactionDeltas(videoById, likeDelta, disLikeDelta);
 
         // Map the Video object to VideoDto and return
         return mapToVideoDto(videoById);
     }
 
-    // Helper method to map a Video object to VideoDto
-    private VideoDto mapToVideoDto(Video videoById) {
+    // Helper method to move the stored and returned counters of a video by a change of reactions
+    private void applyReactionDeltas(Video video, int likeDelta, int disLikeDelta) {
+        if (likeDelta == 0 && disLikeDelta == 0) {
+            return;
+        }
+        updateVideo(video.getId(), new Update().inc("likes", likeDelta).inc("disLikes", disLikeDelta));
+        video.getLikes().addAndGet(likeDelta);
+        video.getDisLikes().addAndGet(disLikeDelta);
+        if (likeDelta != 0) {
+            channelStatsService.recordLikes(video.getUserId(), likeDelta);
+        }
+    }
+
+    // Method to get a channel's totals and one page of its uploads, newest first
+    public ChannelDto getChannel(String userId, String cursor, int size) {
+        PageRequest page = PageRequest.of(0, Math.max(1, Math.min(size, MAX_PAGE_SIZE)));
+        List<Video> videos;
+        if (cursor == null) {
+            videos = videoRepository.findChannelVideos(userId, page);
+        } else {
+            // The cursor is "<createdAt epoch millis>:<id>" of the last video of the previous page
+            String[] position = cursor.split(":", 2);
+            try {
+                videos = videoRepository.findChannelVideosAfter(userId, Instant.ofEpochMilli(Long.parseLong(position[0])),
+                        new ObjectId(position[1]), page);
+            } catch (IllegalArgumentException | ArrayIndexOutOfBoundsException exception) {
+                throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Invalid cursor - " + cursor);
+            }
+        }
+
+        String nextCursor = null;
+        if (videos.size() == page.getPageSize()) {
+            Video last = videos.get(videos.size() - 1);
+            nextCursor = last.getCreatedAt().toEpochMilli() + ":" + last.getId();
+        }
+
+        ChannelStats channelStats = channelStatsService.getChannelStats(userId);
+        return new ChannelDto(userId, channelStats.getVideoCount(), channelStats.getTotalViews(),
+                channelStats.getLikeCount(), channelStats.getSubscriberCount(),
+                videos.stream().map(this::mapToVideoDto).toList(), nextCursor);
+    }
+
+    // Method to map a Video object to the VideoDto every video endpoint serves
+    public VideoDto mapToVideoDto(Video videoById) {
         VideoDto videoDto = new VideoDto();
         videoDto.setVideoUrl(videoById.getVideoUrl());
         videoDto.setThumbnailUrl(videoById.getThumbnailUrl());
@@ -174,50 +314,45 @@ public class VideoService {
         videoDto.setLikeCount(videoById.getLikes().get());
         videoDto.setDislikeCount(videoById.getDisLikes().get());
         videoDto.setViewCount(videoById.getViewCount().get());
+        videoDto.setUniqueViewerCount(videoById.getUniqueViewerCount());
         return videoDto;
     }
 
-    // Method to add a comment to a video
-    public void addComment(String videoId, CommentDto commentDto) {
-        // Get the video by ID
-        Video video = getVideoById(videoId);
-
-        // Create a new Comment object with the comment text and author ID
-        Comment comment = new Comment();
-        comment.setText(commentDto.getCommentText());
-        comment.setAuthorId(commentDto.getAuthorId());
-
-        // Add the comment to the video's comment list
-        video.addComment(comment);
+    // Method to add a comment or a reply to a video
+    public CommentDto addComment(String videoId, CommentDto commentDto) {
+        // Make sure the video exists and is listed before storing the comment in its own collection
+        getListedVideoById(videoId);
 
-        // Save the updated video to the database
-        videoRepository.save(video);
+        return commentService.addComment(videoId, commentDto);
     }
 
     // Method to get all comments for a video
     public List<CommentDto> getAllComments(String videoId) {
         // Get the video by ID
-        Video video = getVideoById(videoId);
+        Video video = getListedVideoById(videoId);
 
-        // Get the list of comments for the video
-        List<Comment> commentList = video.getCommentList();
-
-        // Map the list of comments to CommentDto objects and return
-        return commentList.stream().map(this::mapToCommentDto).toList();
-    }
-
-    // Helper method to map a Comment object to CommentDto
-    private CommentDto mapToCommentDto(Comment comment) {
-        CommentDto commentDto = new CommentDto();
-        commentDto.setCommentText(comment.getText());
-        commentDto.setAuthorId(comment.getAuthorId());
-        return commentDto;
+        // Comments posted before they moved to their own collection are still embedded in the video
+        List<CommentDto> commentList = new ArrayList<>();
+        video.getCommentList().stream().map(commentService::mapToCommentDto).forEach(commentList::add);
+        commentList.addAll(commentService.getComments(videoId));
+        return commentList;
     }
 
     // Method to get all videos
     public List<VideoDto> getAllVideos() {
         // Get all videos from the database
-        return videoRepository.findAll().stream().map(this::mapToVideoDto).toList();
+        return findListedVideos().stream().map(this::mapToVideoDto).toList();
+    }
+
+    // Method to get all videos already serialized in the requested encoding
+    public byte[] getAllVideos(VideoFragmentCache.Encoding encoding) {
+        // Assemble the response from cached per-video fragments
+        return videoFragmentCache.writeList(this::findListedVideos, encoding, this::mapToVideoDto);
+    }
+
+    // Helper method to get every video except those still waiting for their file
+    private List<Video> findListedVideos() {
+        return videoRepository.findListedVideos();
     }
 
 
@@ -0,0 +1,348 @@
+package com.programming.pankaj.youtubeclone.service;
+
+import com.programming.pankaj.youtubeclone.dto.CreateUploadRequest;
+import com.programming.pankaj.youtubeclone.dto.DirectUploadDto;
+import com.programming.pankaj.youtubeclone.dto.UploadSessionDto;
+import com.programming.pankaj.youtubeclone.dto.UploadVideoResponse;
+import com.programming.pankaj.youtubeclone.model.UploadSession;
+import com.programming.pankaj.youtubeclone.repository.UploadSessionRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.http.HttpStatus;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.util.StringUtils;
+import org.springframework.util.unit.DataSize;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.io.InputStream;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.stream.Collectors;
+
+import static org.springframework.data.mongodb.core.query.Criteria.where;
+import static org.springframework.data.mongodb.core.query.Query.query;
+
+/**
+ * Resumable uploads on top of the storage backend's multipart upload. A file is split into
+ * fixed-size chunks addressed by byte offset; chunks may arrive in any order, in parallel and on
+ * any node, and each one is streamed straight to storage. Direct uploads use the same sessions
+ * but hand the client presigned URLs, so the bytes never pass through this server. Sessions
+ * that are not finished in time expire and their stored parts are aborted.
+ * <p>
+ * Completing a session first claims it with an atomic update, so a retried complete cannot
+ * create a second video and expiry cannot abort an upload that is being completed.
+ */
+@Service
+@Slf4j
+public class VideoUploadService {
+
+    // Storage backends reject multipart parts below 5 MB, except the last one
+    private static final long MIN_CHUNK_SIZE = DataSize.ofMegabytes(5).toBytes();
+    private static final int MAX_CHUNKS = 10_000;
+    // Long enough for storage to assemble the largest upload
+    private static final Duration COMPLETION_LEASE = Duration.ofMinutes(10);
+
+    private final FileService fileService;
+    private final VideoService videoService;
+    private final UserService userService;
+    private final UploadSessionRepository uploadSessionRepository;
+    private final MongoTemplate mongoTemplate;
+    private final long chunkSize;
+    private final Duration sessionTtl;
+    private final Duration presignTtl;
+
+    public VideoUploadService(FileService fileService, VideoService videoService, UserService userService,
+                              UploadSessionRepository uploadSessionRepository, MongoTemplate mongoTemplate,
+                              @Value("${videos.upload.chunk-size:8MB}") DataSize chunkSize,
+                              @Value("${videos.upload.session-ttl:24h}") Duration sessionTtl,
+                              @Value("${videos.upload.presign-ttl:1h}") Duration presignTtl) {
+        if (chunkSize.toBytes() < MIN_CHUNK_SIZE) {
+            throw new IllegalArgumentException("Upload chunk size must be at least 5MB - " + chunkSize);
+        }
+        this.fileService = fileService;
+        this.videoService = videoService;
+        this.userService = userService;
+        this.uploadSessionRepository = uploadSessionRepository;
+        this.mongoTemplate = mongoTemplate;
+        this.chunkSize = chunkSize.toBytes();
+        this.sessionTtl = sessionTtl;
+        this.presignTtl = presignTtl;
+    }
+
+    // Method to open an upload session for a file of known size
+    public UploadSessionDto createSession(CreateUploadRequest createUploadRequest) {
+        var uploadSession = newSession(createUploadRequest);
+        uploadSession.setStorageUploadId(fileService.startUpload(uploadSession.getFileKey(), uploadSession.getContentType()));
+
+        return mapToUploadSessionDto(uploadSessionRepository.save(uploadSession));
+    }
+
+    // Method to open a direct upload: a pending video plus presigned URLs to send the file to storage
+    public DirectUploadDto createDirectSession(CreateUploadRequest createUploadRequest) {
+        var uploadSession = newSession(createUploadRequest);
+        uploadSession.setVideoId(videoService.createPendingVideo());
+
+        // One presigned PUT is enough for a single chunk, larger files go through multipart
+        if (uploadSession.getChunkCount() > 1) {
+            uploadSession.setStorageUploadId(fileService.startUpload(uploadSession.getFileKey(), uploadSession.getContentType()));
+        }
+
+        return mapToDirectUploadDto(uploadSessionRepository.save(uploadSession));
+    }
+
+    // Method to presign the URLs of a direct upload again, for clients still sending the file when the first ones expire
+    public DirectUploadDto renewDirectSession(String sessionId) {
+        // Whether a session is direct never changes, so it can be checked before the update
+        if (getOwnedSession(sessionId).getVideoId() == null) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Not a direct upload session - " + sessionId);
+        }
+
+        // A client that is still uploading keeps its session alive, like a received chunk does
+        UploadSession uploadSession = mongoTemplate.findAndModify(
+                query(where("_id").is(sessionId).and("ownerSub").is(userService.getCurrentUserSub()).andOperator(notCompleting())),
+                new Update().set("expiresAt", Instant.now().plus(sessionTtl)),
+                FindAndModifyOptions.options().returnNew(true), UploadSession.class);
+        if (uploadSession == null) {
+            getOwnedSession(sessionId);
+            throw new ResponseStatusException(HttpStatus.CONFLICT, "Upload is being completed - " + sessionId);
+        }
+        return mapToDirectUploadDto(uploadSession);
+    }
+
+    // Method to verify a directly uploaded file and finalize its video
+    public UploadVideoResponse completeDirectSession(String sessionId) {
+        // Whether a session is direct never changes, so it can be checked before claiming
+        if (getOwnedSession(sessionId).getVideoId() == null) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Not a direct upload session - " + sessionId);
+        }
+
+        UploadSession uploadSession = claimForCompletion(sessionId);
+        String videoUrl;
+        try {
+            videoUrl = fileService.completeDirectUpload(uploadSession.getFileKey(), uploadSession.getStorageUploadId(),
+                    uploadSession.getTotalSize());
+        } catch (ResponseStatusException exception) {
+            if (exception.getStatusCode().isSameCodeAs(HttpStatus.BAD_REQUEST)) {
+                // Storage deleted the rejected file and the multipart upload is used up, so the session cannot
+                // be completed anymore; the client starts a new one
+                uploadSessionRepository.delete(uploadSession);
+                videoService.deletePendingVideo(uploadSession.getVideoId());
+            } else {
+                releaseClaim(sessionId);
+            }
+            throw exception;
+        } catch (RuntimeException exception) {
+            releaseClaim(sessionId);
+            throw exception;
+        }
+
+        uploadSessionRepository.delete(uploadSession);
+        return videoService.finishPendingVideo(uploadSession.getVideoId(), videoUrl);
+    }
+
+    // Helper method to validate an upload request and prepare its session
+    private UploadSession newSession(CreateUploadRequest createUploadRequest) {
+        Long totalSize = createUploadRequest.getTotalSize();
+        if (totalSize == null || totalSize <= 0) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "totalSize must be positive");
+        }
+        if ((totalSize + chunkSize - 1) / chunkSize > MAX_CHUNKS) {
+            throw new ResponseStatusException(HttpStatus.PAYLOAD_TOO_LARGE, "File is too large - " + totalSize);
+        }
+
+        // Generate a unique key for the file using a UUID and the file extension, like single uploads
+        var key = UUID.randomUUID() + "." + StringUtils.getFilenameExtension(createUploadRequest.getFileName());
+
+        var uploadSession = new UploadSession();
+        uploadSession.setOwnerSub(userService.getCurrentUserSub());
+        uploadSession.setFileKey(key);
+        uploadSession.setContentType(createUploadRequest.getContentType());
+        uploadSession.setChunkSize(chunkSize);
+        uploadSession.setTotalSize(totalSize);
+        uploadSession.setExpiresAt(Instant.now().plus(sessionTtl));
+        return uploadSession;
+    }
+
+    // Method to store one chunk, streaming the body to storage without buffering it
+    public UploadSessionDto uploadChunk(String sessionId, long offset, long size, String md5Digest, InputStream body) {
+        UploadSession uploadSession = getOwnedSession(sessionId);
+        if (uploadSession.getVideoId() != null) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Direct upload chunks go to the presigned URLs");
+        }
+        // The complete assembles the parts it read when it took the session, so none may change meanwhile
+        if (isCompleting(uploadSession)) {
+            throw new ResponseStatusException(HttpStatus.CONFLICT, "Upload is being completed - " + sessionId);
+        }
+
+        if (offset < 0 || offset % uploadSession.getChunkSize() != 0 || offset >= uploadSession.getTotalSize()) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST,
+                    "Chunk offset must be a multiple of " + uploadSession.getChunkSize() + " within the file - " + offset);
+        }
+        long expectedSize = Math.min(uploadSession.getChunkSize(), uploadSession.getTotalSize() - offset);
+        if (size != expectedSize) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST,
+                    "Chunk at offset " + offset + " must be " + expectedSize + " bytes - " + size);
+        }
+
+        int partNumber = (int) (offset / uploadSession.getChunkSize()) + 1;
+        String eTag = fileService.uploadPart(uploadSession.getFileKey(), uploadSession.getStorageUploadId(),
+                partNumber, body, size, md5Digest);
+
+        // Record only this part so parallel chunks never overwrite each other's entries
+        UploadSession updatedSession = mongoTemplate.findAndModify(query(where("_id").is(sessionId).andOperator(notCompleting())),
+                new Update().set("partETags." + partNumber, eTag).set("expiresAt", Instant.now().plus(sessionTtl)),
+                FindAndModifyOptions.options().returnNew(true), UploadSession.class);
+        if (updatedSession == null) {
+            // A complete that started while the part was sent has not seen it
+            if (uploadSessionRepository.existsById(sessionId)) {
+                throw new ResponseStatusException(HttpStatus.CONFLICT, "Upload is being completed - " + sessionId);
+            }
+            throw new ResponseStatusException(HttpStatus.NOT_FOUND, "Upload session expired - " + sessionId);
+        }
+        return mapToUploadSessionDto(updatedSession);
+    }
+
+    // Method to get the progress of an upload session
+    public UploadSessionDto getSession(String sessionId) {
+        return mapToUploadSessionDto(getOwnedSession(sessionId));
+    }
+
+    // Method to assemble the uploaded chunks and create the video
+    public UploadVideoResponse completeSession(String sessionId) {
+        // Whether a session is direct never changes, so it can be checked before claiming
+        if (getOwnedSession(sessionId).getVideoId() != null) {
+            return completeDirectSession(sessionId);
+        }
+
+        UploadSession uploadSession = claimForCompletion(sessionId);
+        String videoUrl;
+        try {
+            if (uploadSession.getPartETags().size() != uploadSession.getChunkCount()) {
+                throw new ResponseStatusException(HttpStatus.CONFLICT, "Upload is incomplete, committed offset is "
+                        + committedOffset(uploadSession));
+            }
+
+            Map<Integer, String> partETags = uploadSession.getPartETags().entrySet().stream()
+                    .collect(Collectors.toMap(part -> Integer.parseInt(part.getKey()), Map.Entry::getValue));
+            videoUrl = fileService.completeUpload(uploadSession.getFileKey(), uploadSession.getStorageUploadId(), partETags);
+        } catch (RuntimeException exception) {
+            releaseClaim(sessionId);
+            throw exception;
+        }
+
+        uploadSessionRepository.delete(uploadSession);
+        return videoService.saveUploadedVideo(videoUrl);
+    }
+
+    // Method to abandon an upload session and free its stored chunks
+    public void abortSession(String sessionId) {
+        UploadSession uploadSession = mongoTemplate.findAndRemove(
+                query(where("_id").is(sessionId).and("ownerSub").is(userService.getCurrentUserSub()).andOperator(notCompleting())),
+                UploadSession.class);
+        if (uploadSession == null) {
+            getOwnedSession(sessionId);
+            throw new ResponseStatusException(HttpStatus.CONFLICT, "Upload is being completed - " + sessionId);
+        }
+        discardUpload(uploadSession);
+    }
+
+    @Scheduled(fixedDelayString = "${videos.upload.expiry-check-interval-ms:60000}")
+    public void expireAbandonedSessions() {
+        Instant now = Instant.now();
+        UploadSession expiredSession;
+        // Removing before aborting claims the session, so only one node aborts it, and never one being completed
+        while ((expiredSession = mongoTemplate.findAndRemove(query(where("expiresAt").lt(now).andOperator(notCompleting())),
+                UploadSession.class)) != null) {
+            try {
+                discardUpload(expiredSession);
+            } catch (RuntimeException exception) {
+                log.warn("Could not abort expired upload {}", expiredSession.getId(), exception);
+            }
+        }
+    }
+
+    // Helper method to free everything an unfinished session holds in storage and the database
+    private void discardUpload(UploadSession uploadSession) {
+        if (uploadSession.getVideoId() != null) {
+            videoService.deletePendingVideo(uploadSession.getVideoId());
+        }
+        if (uploadSession.getStorageUploadId() != null) {
+            fileService.abortUpload(uploadSession.getFileKey(), uploadSession.getStorageUploadId());
+        } else {
+            // A presigned single PUT may or may not have stored the file already
+            fileService.deleteFile(uploadSession.getFileKey());
+        }
+    }
+
+    // Helper method to take a session for completion; fails with 409 while another request holds it
+    private UploadSession claimForCompletion(String sessionId) {
+        UploadSession uploadSession = mongoTemplate.findAndModify(
+                query(where("_id").is(sessionId).and("ownerSub").is(userService.getCurrentUserSub()).andOperator(notCompleting())),
+                new Update().set("completingUntil", Instant.now().plus(COMPLETION_LEASE)),
+                FindAndModifyOptions.options().returnNew(true), UploadSession.class);
+        if (uploadSession == null) {
+            // Tell a missing session apart from one that is already being completed
+            getOwnedSession(sessionId);
+            throw new ResponseStatusException(HttpStatus.CONFLICT, "Upload is already being completed - " + sessionId);
+        }
+        return uploadSession;
+    }
+
+    // Helper method to let a failed complete be retried
+    private void releaseClaim(String sessionId) {
+        mongoTemplate.updateFirst(query(where("_id").is(sessionId)), new Update().unset("completingUntil"), UploadSession.class);
+    }
+
+    private static boolean isCompleting(UploadSession uploadSession) {
+        return uploadSession.getCompletingUntil() != null && uploadSession.getCompletingUntil().isAfter(Instant.now());
+    }
+
+    private static Criteria notCompleting() {
+        return new Criteria().orOperator(where("completingUntil").is(null), where("completingUntil").lt(Instant.now()));
+    }
+
+    private UploadSession getOwnedSession(String sessionId) {
+        return uploadSessionRepository.findById(sessionId)
+                .filter(uploadSession -> uploadSession.getOwnerSub().equals(userService.getCurrentUserSub()))
+                .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND, "Cannot find upload session - " + sessionId));
+    }
+
+    private long committedOffset(UploadSession uploadSession) {
+        // Count chunks present without a gap from the first one
+        int contiguousParts = 0;
+        while (uploadSession.getPartETags().containsKey(String.valueOf(contiguousParts + 1))) {
+            contiguousParts++;
+        }
+        return Math.min(contiguousParts * uploadSession.getChunkSize(), uploadSession.getTotalSize());
+    }
+
+    private DirectUploadDto mapToDirectUploadDto(UploadSession uploadSession) {
+        String uploadUrl = null;
+        List<String> partUrls = null;
+        if (uploadSession.getStorageUploadId() == null) {
+            uploadUrl = fileService.presignUpload(uploadSession.getFileKey(), uploadSession.getContentType(), presignTtl);
+        } else {
+            partUrls = fileService.presignUploadParts(uploadSession.getFileKey(), uploadSession.getStorageUploadId(),
+                    uploadSession.getChunkCount(), presignTtl);
+        }
+        return new DirectUploadDto(uploadSession.getId(), uploadSession.getVideoId(), uploadUrl, partUrls,
+                uploadSession.getChunkSize(), uploadSession.getExpiresAt());
+    }
+
+    private UploadSessionDto mapToUploadSessionDto(UploadSession uploadSession) {
+        List<Long> receivedOffsets = uploadSession.getPartETags().keySet().stream()
+                .map(partNumber -> (Long.parseLong(partNumber) - 1) * uploadSession.getChunkSize())
+                .sorted()
+                .toList();
+        return new UploadSessionDto(uploadSession.getId(), uploadSession.getChunkSize(), uploadSession.getTotalSize(),
+                committedOffset(uploadSession), receivedOffsets, uploadSession.getExpiresAt());
+    }
+}
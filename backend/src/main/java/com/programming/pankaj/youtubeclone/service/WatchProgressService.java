@@ -0,0 +1,165 @@
+package com.programming.pankaj.youtubeclone.service;
+
+import com.programming.pankaj.youtubeclone.dto.WatchProgressDto;
+import com.programming.pankaj.youtubeclone.model.UploadState;
+import com.programming.pankaj.youtubeclone.model.Video;
+import com.programming.pankaj.youtubeclone.model.WatchProgress;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.mongodb.BulkOperationException;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.http.HttpStatus;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.springframework.data.mongodb.core.query.Criteria.where;
+import static org.springframework.data.mongodb.core.query.Query.query;
+
+/**
+ * Tracks where users are in the videos they watch. Players send a heartbeat every few seconds,
+ * so heartbeats only replace the latest position per (user, video) in memory, last write wins,
+ * and a scheduled flush writes the coalesced positions in unordered bulk upserts. Each viewer
+ * costs at most one write per flush interval, however often the player reports. Reads check the
+ * buffer first, so a user sees their latest position before it is flushed. The buffer holds at
+ * most max-pending viewers: reaching it starts a flush early, and new viewers are turned away with
+ * 503 until there is room, while viewers already buffered keep updating their entry.
+ */
+@Service
+@Slf4j
+public class WatchProgressService {
+
+    private static final int BULK_SIZE = 1000;
+    private static final int DUPLICATE_KEY = 11000;
+
+    private final MongoTemplate mongoTemplate;
+    private final UserService userService;
+    private final int maxPending;
+    private final Map<String, WatchProgress> pendingProgress = new ConcurrentHashMap<>();
+    private final AtomicBoolean earlyFlushRunning = new AtomicBoolean();
+
+    public WatchProgressService(MongoTemplate mongoTemplate, UserService userService, MeterRegistry meterRegistry,
+                                @Value("${watch-progress.max-pending:200000}") int maxPending) {
+        this.mongoTemplate = mongoTemplate;
+        this.userService = userService;
+        this.maxPending = maxPending;
+        meterRegistry.gaugeMapSize("watchprogress.pending", Tags.empty(), pendingProgress);
+    }
+
+    // Method to record a heartbeat of the current user's player
+    public void recordProgress(String videoId, WatchProgressDto watchProgressDto) {
+        Double positionSeconds = watchProgressDto.getPositionSeconds();
+        if (positionSeconds == null || positionSeconds < 0 || positionSeconds.isInfinite() || positionSeconds.isNaN()) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "positionSeconds must be a non-negative number");
+        }
+
+        // Only the first heartbeat of a viewer per flush checks the video, later ones find it buffered
+        String userSub = userService.getCurrentUserSub();
+        if (!pendingProgress.containsKey(userSub + ":" + videoId) && !mongoTemplate.exists(
+                query(where("_id").is(videoId).and("uploadState").ne(UploadState.PENDING)), Video.class)) {
+            throw new ResponseStatusException(HttpStatus.NOT_FOUND, "Cannot find video by ID - " + videoId);
+        }
+        recordProgress(userSub, videoId, positionSeconds);
+    }
+
+    public void recordProgress(String userSub, String videoId, double positionSeconds) {
+        WatchProgress heartbeat = new WatchProgress(userSub + ":" + videoId, userSub, videoId, positionSeconds, Instant.now());
+        if (pendingProgress.size() >= maxPending && !pendingProgress.containsKey(heartbeat.getId())) {
+            // Full: write the buffer out now instead of waiting for the next flush, and shed new viewers until then
+            flushEarly();
+            throw new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE, "Too many pending watch positions, retry later");
+        }
+        pendingProgress.merge(heartbeat.getId(), heartbeat,
+                (buffered, latest) -> latest.getUpdatedAt().isBefore(buffered.getUpdatedAt()) ? buffered : latest);
+    }
+
+    // Helper method to start one flush off the request thread when the buffer fills up
+    private void flushEarly() {
+        if (earlyFlushRunning.compareAndSet(false, true)) {
+            CompletableFuture.runAsync(() -> {
+                try {
+                    flush();
+                } finally {
+                    earlyFlushRunning.set(false);
+                }
+            });
+        }
+    }
+
+    // Method to get where the current user left off in a video
+    public WatchProgressDto getProgress(String videoId) {
+        String userSub = userService.getCurrentUserSub();
+        String id = userSub + ":" + videoId;
+
+        WatchProgress watchProgress = pendingProgress.get(id);
+        if (watchProgress == null) {
+            watchProgress = mongoTemplate.findById(id, WatchProgress.class);
+        }
+        if (watchProgress == null) {
+            return new WatchProgressDto(videoId, 0.0, null);
+        }
+        return new WatchProgressDto(videoId, watchProgress.getPositionSeconds(), watchProgress.getUpdatedAt());
+    }
+
+    @Scheduled(fixedDelayString = "${watch-progress.flush-interval-ms:5000}")
+    @PreDestroy
+    public synchronized void flush() {
+        List<WatchProgress> batch = new ArrayList<>(BULK_SIZE);
+        for (WatchProgress watchProgress : pendingProgress.values()) {
+            batch.add(watchProgress);
+            if (batch.size() == BULK_SIZE) {
+                write(batch);
+                batch.clear();
+            }
+        }
+        if (!batch.isEmpty()) {
+            write(batch);
+        }
+    }
+
+    public int getPendingCount() {
+        return pendingProgress.size();
+    }
+
+    private void write(List<WatchProgress> batch) {
+        try {
+            BulkOperations bulkOperations = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, WatchProgress.class);
+            for (WatchProgress watchProgress : batch) {
+                // Only move forward in time: a stale position from another node must not overwrite a newer one
+                bulkOperations.upsert(
+                        query(where("_id").is(watchProgress.getId()).and("updatedAt").lt(watchProgress.getUpdatedAt())),
+                        new Update()
+                                .set("userSub", watchProgress.getUserSub())
+                                .set("videoId", watchProgress.getVideoId())
+                                .set("positionSeconds", watchProgress.getPositionSeconds())
+                                .set("updatedAt", watchProgress.getUpdatedAt()));
+            }
+            bulkOperations.execute();
+        } catch (BulkOperationException exception) {
+            // The upsert of a document that already has a newer position collides on _id, which is the intended no-op
+            if (exception.getErrors().stream().anyMatch(error -> error.getCode() != DUPLICATE_KEY)) {
+                log.warn("Could not flush {} watch positions, keeping them for the next flush", batch.size(), exception);
+                return;
+            }
+        } catch (RuntimeException exception) {
+            log.warn("Could not flush {} watch positions, keeping them for the next flush", batch.size(), exception);
+            return;
+        }
+
+        // Keep entries that received a newer heartbeat while this batch was being written
+        batch.forEach(watchProgress -> pendingProgress.remove(watchProgress.getId(), watchProgress));
+    }
+}
@@ -0,0 +1,213 @@
+package com.programming.pankaj.youtubeclone.util;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Lexicographic ordering keys that sort the same as strings in Mongo and Java. A key can always be
+ * generated strictly between two others, which lets an item move by rewriting only its own key.
+ * <p>
+ * A key is a variable-length integer followed by an optional base-62 fraction, with digits in ASCII
+ * order. The integer's first character gives its length: 'a' to 'z' start integers of 2 to 27
+ * characters counting up from "a0", 'Z' to 'A' start ones of 2 to 27 characters counting down. Adding
+ * to either end of a list only steps the integer, so its keys grow by one character every time the
+ * number of items multiplies by 62. Only inserts into the same gap extend the fraction, by about one
+ * character every five inserts. Fractions never end in the zero digit, so there is always room
+ * before a key too.
+ */
+public final class FractionalKey {
+
+    private static final String DIGITS = "0123456789ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz";
+    private static final int BASE = DIGITS.length();
+    private static final String FIRST = "a0";
+    // The lowest integer has nothing below it, so it is reserved and never used as a key
+    private static final String SMALLEST_INTEGER = "A" + "0".repeat(26);
+
+    private FractionalKey() {
+    }
+
+    /**
+     * Returns a key that sorts after {@code before} and before {@code after}. Either may be null
+     * for the start or the end of the list.
+     */
+    public static String between(String before, String after) {
+        if (before != null) {
+            validate(before);
+        }
+        if (after != null) {
+            validate(after);
+        }
+        if (before != null && after != null && before.compareTo(after) >= 0) {
+            throw new IllegalArgumentException("Keys are not in order - " + before + ", " + after);
+        }
+
+        if (before == null) {
+            if (after == null) {
+                return FIRST;
+            }
+            String afterInteger = integerPart(after);
+            String afterFraction = after.substring(afterInteger.length());
+            if (afterInteger.equals(SMALLEST_INTEGER)) {
+                return afterInteger + midpoint("", afterFraction);
+            }
+            // The integer alone sorts before the same integer with a fraction
+            if (!afterFraction.isEmpty()) {
+                return afterInteger;
+            }
+            String decremented = decrement(afterInteger);
+            if (decremented == null) {
+                throw new IllegalArgumentException("No key fits before " + after);
+            }
+            return decremented;
+        }
+
+        String beforeInteger = integerPart(before);
+        String beforeFraction = before.substring(beforeInteger.length());
+        if (after != null) {
+            String afterInteger = integerPart(after);
+            if (beforeInteger.equals(afterInteger)) {
+                return beforeInteger + midpoint(beforeFraction, after.substring(afterInteger.length()));
+            }
+        }
+        String incremented = increment(beforeInteger);
+        if (incremented != null && (after == null || incremented.compareTo(after) < 0)) {
+            return incremented;
+        }
+        return beforeInteger + midpoint(beforeFraction, null);
+    }
+
+    /**
+     * Returns {@code count} ascending keys of consecutive integers, the shortest keys there are for
+     * a list of that size. Used to rewrite a whole list once its keys get long.
+     */
+    public static List<String> sequence(int count) {
+        List<String> keys = new ArrayList<>(count);
+        String key = FIRST;
+        for (int i = 0; i < count; i++) {
+            keys.add(key);
+            key = increment(key);
+            if (key == null && i < count - 1) {
+                throw new IllegalArgumentException(count + " keys do not fit");
+            }
+        }
+        return keys;
+    }
+
+    // Whether a key can be passed to between, as opposed to one written in an older format
+    public static boolean isValid(String key) {
+        try {
+            validate(key);
+            return true;
+        } catch (IllegalArgumentException exception) {
+            return false;
+        }
+    }
+
+    private static String midpoint(String lower, String upper) {
+        if (upper != null) {
+            // Skip the common prefix, reading missing digits of the lower key as zero
+            int prefix = 0;
+            while (prefix < upper.length() && digitAt(lower, prefix) == upper.charAt(prefix)) {
+                prefix++;
+            }
+            if (prefix > 0) {
+                return upper.substring(0, prefix)
+                        + midpoint(lower.length() > prefix ? lower.substring(prefix) : "", upper.substring(prefix));
+            }
+        }
+
+        int lowerDigit = lower.isEmpty() ? 0 : DIGITS.indexOf(lower.charAt(0));
+        int upperDigit = upper == null ? BASE : DIGITS.indexOf(upper.charAt(0));
+        if (upperDigit - lowerDigit > 1) {
+            return String.valueOf(DIGITS.charAt((lowerDigit + upperDigit + 1) / 2));
+        }
+        // Adjacent first digits: the upper key's first digit alone is small enough if it has more digits
+        if (upper != null && upper.length() > 1) {
+            return upper.substring(0, 1);
+        }
+        return DIGITS.charAt(lowerDigit) + midpoint(lower.length() > 1 ? lower.substring(1) : "", null);
+    }
+
+    // Helper method to add one to an integer part, or null after the largest one
+    private static String increment(String integer) {
+        char head = integer.charAt(0);
+        char[] digits = integer.substring(1).toCharArray();
+        for (int i = digits.length - 1; i >= 0; i--) {
+            int digit = DIGITS.indexOf(digits[i]) + 1;
+            if (digit < BASE) {
+                digits[i] = DIGITS.charAt(digit);
+                return head + new String(digits);
+            }
+            digits[i] = DIGITS.charAt(0);
+        }
+        // Every digit carried over, so the integer moves to the next length
+        if (head == 'Z') {
+            return FIRST;
+        }
+        if (head == 'z') {
+            return null;
+        }
+        char nextHead = (char) (head + 1);
+        String rest = new String(digits);
+        return nextHead > 'a' ? nextHead + rest + DIGITS.charAt(0) : nextHead + rest.substring(1);
+    }
+
+    // Helper method to subtract one from an integer part, or null below the smallest one
+    private static String decrement(String integer) {
+        char head = integer.charAt(0);
+        char[] digits = integer.substring(1).toCharArray();
+        char largestDigit = DIGITS.charAt(BASE - 1);
+        for (int i = digits.length - 1; i >= 0; i--) {
+            int digit = DIGITS.indexOf(digits[i]) - 1;
+            if (digit >= 0) {
+                digits[i] = DIGITS.charAt(digit);
+                return head + new String(digits);
+            }
+            digits[i] = largestDigit;
+        }
+        if (head == 'a') {
+            return "Z" + largestDigit;
+        }
+        if (head == 'A') {
+            return null;
+        }
+        char previousHead = (char) (head - 1);
+        String rest = new String(digits);
+        return previousHead < 'Z' ? previousHead + rest + largestDigit : previousHead + rest.substring(1);
+    }
+
+    private static String integerPart(String key) {
+        char head = key.charAt(0);
+        int length;
+        if (head >= 'a' && head <= 'z') {
+            length = head - 'a' + 2;
+        } else if (head >= 'A' && head <= 'Z') {
+            length = 'Z' - head + 2;
+        } else {
+            throw new IllegalArgumentException("Not a fractional key - " + key);
+        }
+        if (key.length() < length) {
+            throw new IllegalArgumentException("Not a fractional key - " + key);
+        }
+        return key.substring(0, length);
+    }
+
+    private static char digitAt(String key, int index) {
+        return index < key.length() ? key.charAt(index) : DIGITS.charAt(0);
+    }
+
+    private static void validate(String key) {
+        if (key.isEmpty() || key.equals(SMALLEST_INTEGER)) {
+            throw new IllegalArgumentException("Not a fractional key - " + key);
+        }
+        for (int i = 1; i < key.length(); i++) {
+            if (DIGITS.indexOf(key.charAt(i)) < 0) {
+                throw new IllegalArgumentException("Not a fractional key - " + key);
+            }
+        }
+        int integerLength = integerPart(key).length();
+        if (key.length() > integerLength && key.charAt(key.length() - 1) == DIGITS.charAt(0)) {
+            throw new IllegalArgumentException("Fractional keys cannot end in 0 - " + key);
+        }
+    }
+}
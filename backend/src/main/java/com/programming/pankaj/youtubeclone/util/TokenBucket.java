@@ -0,0 +1,75 @@
+package com.programming.pankaj.youtubeclone.util;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Lock-free token bucket. The whole state is one "theoretical arrival time" (the generic cell
+ * rate algorithm), so a request costs a single compare-and-set and a full bucket is simply one
+ * whose arrival time lies in the past.
+ */
+public class TokenBucket {
+
+    // Returned by tryConsume once the bucket has been retired; the caller must use a fresh bucket
+    public static final long RETIRED = -1;
+    private static final long RETIRED_ARRIVAL_TIME = Long.MAX_VALUE;
+
+    private final long emissionIntervalNanos;
+    private final long burstToleranceNanos;
+    private final AtomicLong theoreticalArrivalTime;
+
+    public TokenBucket(int capacity, double refillPerSecond, long nowNanos) {
+        if (capacity < 1 || refillPerSecond <= 0) {
+            throw new IllegalArgumentException("Token bucket needs a positive capacity and refill rate");
+        }
+        this.emissionIntervalNanos = (long) (1_000_000_000L / refillPerSecond);
+        this.burstToleranceNanos = emissionIntervalNanos * (capacity - 1);
+        this.theoreticalArrivalTime = new AtomicLong(nowNanos);
+    }
+
+    /**
+     * Takes one token.
+     *
+     * @return 0 if the token was granted, {@link #RETIRED} if the bucket was retired, otherwise
+     * the nanoseconds until a token becomes available
+     */
+    public long tryConsume(long nowNanos) {
+        while (true) {
+            long current = theoreticalArrivalTime.get();
+            if (current == RETIRED_ARRIVAL_TIME) {
+                return RETIRED;
+            }
+            long arrival = Math.max(current, nowNanos);
+            long wait = arrival - nowNanos - burstToleranceNanos;
+            if (wait > 0) {
+                return wait;
+            }
+            if (theoreticalArrivalTime.compareAndSet(current, arrival + emissionIntervalNanos)) {
+                return 0;
+            }
+        }
+    }
+
+    public boolean isRetired() {
+        return theoreticalArrivalTime.get() == RETIRED_ARRIVAL_TIME;
+    }
+
+    /**
+     * Retires the bucket if it has been full for the given time, so it carries no state and can be
+     * dropped. The check and the retirement are one compare-and-set: a token taken concurrently
+     * either keeps the bucket alive or is refused with {@link #RETIRED}, never granted twice.
+     */
+    public boolean retireIfIdle(long nowNanos, long idleNanos) {
+        while (true) {
+            long current = theoreticalArrivalTime.get();
+            if (current == RETIRED_ARRIVAL_TIME) {
+                return true;
+            }
+            if (current > nowNanos - idleNanos) {
+                return false;
+            }
+            if (theoreticalArrivalTime.compareAndSet(current, RETIRED_ARRIVAL_TIME)) {
+                return true;
+            }
+        }
+    }
+}
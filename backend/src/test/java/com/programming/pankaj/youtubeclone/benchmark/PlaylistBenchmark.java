@@ -0,0 +1,136 @@
+package com.programming.pankaj.youtubeclone.benchmark;
+
+import com.mongodb.client.MongoClient;
+import com.mongodb.client.MongoClients;
+import com.mongodb.client.MongoCollection;
+import com.programming.pankaj.youtubeclone.dto.PlaylistDto;
+import com.programming.pankaj.youtubeclone.dto.PlaylistItemDto;
+import com.programming.pankaj.youtubeclone.dto.PlaylistItemPageDto;
+import com.programming.pankaj.youtubeclone.model.Playlist;
+import com.programming.pankaj.youtubeclone.model.PlaylistItem;
+import com.programming.pankaj.youtubeclone.repository.PlaylistItemRepository;
+import com.programming.pankaj.youtubeclone.repository.PlaylistRepository;
+import com.programming.pankaj.youtubeclone.service.PlaylistService;
+import com.programming.pankaj.youtubeclone.service.UserService;
+import org.bson.Document;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.index.MongoPersistentEntityIndexResolver;
+import org.springframework.data.mongodb.repository.support.MongoRepositoryFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static com.mongodb.client.model.Filters.eq;
+
+/**
+ * Reorder-heavy load on a 10k-item playlist. It measures adds, random moves, and the worst case
+ * of moving items into the same gap over and over. It also measures one rebalance and reading
+ * the whole playlist page by page. For comparison it times the same moves on a single document
+ * holding the playlist as an embedded array, which has to be rewritten on every move.
+ * Run the main method with a MongoDB URI (default mongodb://localhost:27017); it uses and drops
+ * the database playlist-benchmark.
+ */
+public class PlaylistBenchmark {
+
+    private static final int ITEMS = 10_000;
+    private static final int RANDOM_MOVES = 10_000;
+    private static final int SAME_GAP_MOVES = 2_000;
+    private static final int EMBEDDED_MOVES = 1_000;
+    private static final int PAGE_SIZE = 50;
+
+    public static void main(String[] args) {
+        String uri = args.length > 0 ? args[0] : "mongodb://localhost:27017";
+        try (MongoClient mongoClient = MongoClients.create(uri)) {
+            MongoTemplate mongoTemplate = new MongoTemplate(mongoClient, "playlist-benchmark");
+            mongoTemplate.getDb().drop();
+            new MongoPersistentEntityIndexResolver(mongoTemplate.getConverter().getMappingContext())
+                    .resolveIndexFor(PlaylistItem.class)
+                    .forEach(index -> mongoTemplate.indexOps(PlaylistItem.class).ensureIndex(index));
+
+            MongoRepositoryFactory repositoryFactory = new MongoRepositoryFactory(mongoTemplate);
+            UserService userService = new UserService(null, null, null, null) {
+                @Override
+                public String getCurrentUserSub() {
+                    return "auth0|bench";
+                }
+            };
+            PlaylistService playlistService = new PlaylistService(repositoryFactory.getRepository(PlaylistRepository.class),
+                    repositoryFactory.getRepository(PlaylistItemRepository.class), mongoTemplate, userService);
+            Random random = new Random(42);
+
+            String playlistId = playlistService.createPlaylist(new PlaylistDto(null, "benchmark", null)).getId();
+            List<String> itemIds = new ArrayList<>(ITEMS);
+            long start = System.nanoTime();
+            for (int i = 0; i < ITEMS; i++) {
+                itemIds.add(playlistService.addItem(playlistId, new PlaylistItemDto(null, "video-" + i, null, null)).getId());
+            }
+            report("add to end", ITEMS, start);
+
+            start = System.nanoTime();
+            for (int i = 0; i < RANDOM_MOVES; i++) {
+                String itemId = itemIds.get(random.nextInt(ITEMS));
+                String afterItemId = itemIds.get(random.nextInt(ITEMS));
+                if (!itemId.equals(afterItemId)) {
+                    playlistService.moveItem(playlistId, itemId, new PlaylistItemDto(null, null, afterItemId, null));
+                }
+            }
+            report("random move", RANDOM_MOVES, start);
+            System.out.printf("max key length             %d%n", maxKeyLength(mongoTemplate, playlistId));
+
+            // Worst case: every move lands right in front of the same item, halving one gap each time
+            String target = itemIds.get(ITEMS - 1);
+            start = System.nanoTime();
+            for (int i = 0; i < SAME_GAP_MOVES; i++) {
+                playlistService.moveItem(playlistId, itemIds.get(i), new PlaylistItemDto(null, null, null, target));
+            }
+            report("same-gap move", SAME_GAP_MOVES, start);
+            System.out.printf("max key length             %d (rebalance queued: %s)%n", maxKeyLength(mongoTemplate, playlistId),
+                    mongoTemplate.findById(playlistId, Playlist.class).getRebalanceRequested());
+
+            start = System.nanoTime();
+            playlistService.rebalance(playlistId);
+            System.out.printf("rebalance                  %,.0f ms for %,d items, max key length now %d%n",
+                    (System.nanoTime() - start) / 1e6, ITEMS, maxKeyLength(mongoTemplate, playlistId));
+
+            start = System.nanoTime();
+            int pages = 0;
+            String cursor = null;
+            do {
+                PlaylistItemPageDto page = playlistService.getItems(playlistId, cursor, PAGE_SIZE);
+                cursor = page.getNextCursor();
+                pages++;
+            } while (cursor != null);
+            report("page read (" + PAGE_SIZE + " items)", pages, start);
+
+            // Baseline: the playlist as one document with an embedded array, rewritten on every move
+            MongoCollection<Document> embedded = mongoTemplate.getCollection("EmbeddedPlaylist");
+            embedded.insertOne(new Document("_id", playlistId).append("videoIds", new ArrayList<>(itemIds)));
+            start = System.nanoTime();
+            for (int i = 0; i < EMBEDDED_MOVES; i++) {
+                Document document = embedded.find(eq("_id", playlistId)).first();
+                List<String> videoIds = new ArrayList<>(document.getList("videoIds", String.class));
+                String moved = videoIds.remove(random.nextInt(ITEMS));
+                videoIds.add(random.nextInt(ITEMS), moved);
+                embedded.replaceOne(eq("_id", playlistId), document.append("videoIds", videoIds));
+            }
+            report("embedded array move", EMBEDDED_MOVES, start);
+
+            mongoTemplate.getDb().drop();
+        }
+    }
+
+    private static int maxKeyLength(MongoTemplate mongoTemplate, String playlistId) {
+        // A rebalance switches the playlist between the two key fields
+        boolean usesRank = mongoTemplate.findById(playlistId, Playlist.class).getRankVersion() % 2 == 0;
+        return mongoTemplate.findAll(PlaylistItem.class).stream()
+                .filter(item -> item.getPlaylistId().equals(playlistId))
+                .mapToInt(item -> (usesRank ? item.getRank() : item.getAltRank()).length())
+                .max().orElse(0);
+    }
+
+    private static void report(String operation, int count, long start) {
+        double elapsedSeconds = (System.nanoTime() - start) / 1e9;
+        System.out.printf("%-26s %,.0f/s (%,.2f ms each)%n", operation, count / elapsedSeconds, elapsedSeconds * 1e3 / count);
+    }
+}
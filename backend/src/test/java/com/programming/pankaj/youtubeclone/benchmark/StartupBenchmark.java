@@ -0,0 +1,220 @@
+package com.programming.pankaj.youtubeclone.benchmark;
+
+import com.nimbusds.jose.JOSEException;
+import com.nimbusds.jose.JWSAlgorithm;
+import com.nimbusds.jose.JWSHeader;
+import com.nimbusds.jose.crypto.RSASSASigner;
+import com.nimbusds.jose.jwk.JWKSet;
+import com.nimbusds.jose.jwk.RSAKey;
+import com.nimbusds.jose.jwk.gen.RSAKeyGenerator;
+import com.nimbusds.jwt.JWTClaimsSet;
+import com.nimbusds.jwt.SignedJWT;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares startup time and time to the first served request of the backend started as a plain
+ * JVM app, with Spring AOT, and with Spring AOT plus the AppCDS archive. Build the jar with
+ * {@code mvn -Pstartup package} first, have MongoDB running, then run the main method with the
+ * jar path and the number of runs per mode. The first run of every mode only warms the OS file
+ * cache and is not counted; the medians of the remaining runs are reported.
+ *
+ * <p>The app is pointed at a stub OIDC issuer served by this process, and the first request carries
+ * a token signed with the stub's key. That request is only counted once it is accepted, so the time
+ * to the first request includes issuer discovery, fetching the JWK set and verifying a real JWT.
+ */
+public class StartupBenchmark {
+
+    private static final String STARTED_LOG_LINE = "Started YoutubeCloneApplication";
+    private static final Duration TIMEOUT = Duration.ofMinutes(2);
+    private static final String AUDIENCE = "http://localhost:8080/";
+
+    public static void main(String[] args) throws Exception {
+        Path jar = Path.of(args.length > 0 ? args[0] : "target/backend-0.0.1-SNAPSHOT.jar");
+        int runs = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+        Path archive = jar.resolveSibling("app.jsa");
+        if (!Files.exists(jar)) {
+            throw new IllegalStateException("Build the jar with mvn -Pstartup package first - " + jar);
+        }
+
+        RSAKey signingKey = new RSAKeyGenerator(2048).keyID("benchmark").generate();
+        HttpServer issuerServer = startIssuer(signingKey);
+        String issuer = "http://localhost:" + issuerServer.getAddress().getPort();
+        List<String> issuerOptions = List.of("-Dspring.security.oauth2.resourceserver.jwt.issuer-uri=" + issuer,
+                "-Dauth0.audience=" + AUDIENCE);
+        String token = signToken(signingKey, issuer);
+        try {
+            System.out.printf("%-10s %16s %22s%n", "mode", "startup ms", "first request ms");
+            report("jit", jar, runs, token, issuerOptions);
+            report("aot", jar, runs, token, concat(issuerOptions, List.of("-Dspring.aot.enabled=true")));
+            if (Files.exists(archive)) {
+                report("aot+cds", jar, runs, token, concat(issuerOptions, List.of("-XX:SharedArchiveFile=" + archive,
+                        "-Xlog:cds=off", "-Dspring.aot.enabled=true")));
+            } else {
+                System.out.println("No AppCDS archive at " + archive + ", skipping aot+cds");
+            }
+        } finally {
+            issuerServer.stop(0);
+        }
+    }
+
+    // Serves the OIDC discovery document and the JWK set the app fetches before it can verify a token
+    private static HttpServer startIssuer(RSAKey signingKey) throws IOException {
+        HttpServer server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        String issuer = "http://localhost:" + server.getAddress().getPort();
+        String configuration = "{\"issuer\":\"" + issuer + "\",\"jwks_uri\":\"" + issuer + "/jwks\","
+                + "\"subject_types_supported\":[\"public\"],\"response_types_supported\":[\"code\"],"
+                + "\"id_token_signing_alg_values_supported\":[\"RS256\"]}";
+        String jwkSet = new JWKSet(signingKey.toPublicJWK()).toString();
+        server.createContext("/.well-known/openid-configuration", exchange -> respond(exchange, configuration));
+        server.createContext("/jwks", exchange -> respond(exchange, jwkSet));
+        server.start();
+        return server;
+    }
+
+    private static void respond(HttpExchange exchange, String json) throws IOException {
+        byte[] body = json.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.sendResponseHeaders(200, body.length);
+        try (OutputStream outputStream = exchange.getResponseBody()) {
+            outputStream.write(body);
+        }
+    }
+
+    private static String signToken(RSAKey signingKey, String issuer) throws JOSEException {
+        JWTClaimsSet claims = new JWTClaimsSet.Builder()
+                .issuer(issuer)
+                .audience(AUDIENCE)
+                .subject("benchmark")
+                .issueTime(new Date())
+                .expirationTime(Date.from(Instant.now().plus(Duration.ofHours(1))))
+                .build();
+        SignedJWT jwt = new SignedJWT(new JWSHeader.Builder(JWSAlgorithm.RS256).keyID(signingKey.getKeyID()).build(), claims);
+        jwt.sign(new RSASSASigner(signingKey));
+        return jwt.serialize();
+    }
+
+    private static List<String> concat(List<String> first, List<String> second) {
+        List<String> options = new ArrayList<>(first);
+        options.addAll(second);
+        return options;
+    }
+
+    private static void report(String mode, Path jar, int runs, String token, List<String> jvmOptions) throws Exception {
+        List<Long> startupMillis = new ArrayList<>();
+        List<Long> firstRequestMillis = new ArrayList<>();
+        for (int run = 0; run <= runs; run++) {
+            long[] timings = launch(jar, token, jvmOptions);
+            if (run > 0) {
+                startupMillis.add(timings[0]);
+                firstRequestMillis.add(timings[1]);
+            }
+        }
+        System.out.printf("%-10s %16d %22d%n", mode, median(startupMillis), median(firstRequestMillis));
+    }
+
+    // Starts the app once and returns the milliseconds until it logged startup and until it answered a request
+    private static long[] launch(Path jar, String token, List<String> jvmOptions) throws Exception {
+        int port = freePort();
+        List<String> command = new ArrayList<>();
+        command.add(Path.of(System.getProperty("java.home"), "bin", "java").toString());
+        command.addAll(jvmOptions);
+        command.add("-Dserver.port=" + port);
+        command.add("-jar");
+        command.add(jar.toString());
+
+        long start = System.nanoTime();
+        Process process = new ProcessBuilder(command).redirectErrorStream(true).start();
+        try {
+            CompletableFuture<Long> started = CompletableFuture.supplyAsync(() -> awaitStartedLine(process, start));
+
+            // A signed bearer token makes the request go through issuer discovery and JWT verification
+            HttpClient httpClient = HttpClient.newBuilder().connectTimeout(Duration.ofMillis(200)).build();
+            HttpRequest request = HttpRequest.newBuilder(URI.create("http://localhost:" + port + "/api/videos"))
+                    .header("Authorization", "Bearer " + token)
+                    .timeout(TIMEOUT)
+                    .build();
+            long firstRequest = -1;
+            while (firstRequest < 0) {
+                if (System.nanoTime() - start > TIMEOUT.toNanos() || !process.isAlive()) {
+                    throw new IllegalStateException("The app did not answer within " + TIMEOUT);
+                }
+                try {
+                    int status = httpClient.send(request, HttpResponse.BodyHandlers.discarding()).statusCode();
+                    firstRequest = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+                    if (status == 401) {
+                        throw new IllegalStateException("The app rejected the benchmark token, so the timing skipped JWT verification");
+                    }
+                } catch (IOException notListeningYet) {
+                    Thread.sleep(10);
+                }
+            }
+            return new long[]{started.get(TIMEOUT.toMillis(), TimeUnit.MILLISECONDS), firstRequest};
+        } finally {
+            process.destroy();
+            if (!process.waitFor(30, TimeUnit.SECONDS)) {
+                process.destroyForcibly().waitFor();
+            }
+        }
+    }
+
+    private static long awaitStartedLine(Process process, long start) {
+        BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream()));
+        try {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.contains(STARTED_LOG_LINE)) {
+                    long startedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+                    // Keep draining the output so the app never blocks on a full pipe
+                    CompletableFuture.runAsync(() -> drain(reader));
+                    return startedMillis;
+                }
+            }
+            throw new IllegalStateException("The app exited before it finished starting");
+        } catch (IOException exception) {
+            throw new IllegalStateException(exception);
+        }
+    }
+
+    private static void drain(BufferedReader reader) {
+        try (reader) {
+            while (reader.readLine() != null) {
+                // Discard the rest of the log
+            }
+        } catch (IOException ignored) {
+            // The process was stopped
+        }
+    }
+
+    private static long median(List<Long> values) {
+        List<Long> sorted = values.stream().sorted().toList();
+        return sorted.get(sorted.size() / 2);
+    }
+
+    private static int freePort() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+}
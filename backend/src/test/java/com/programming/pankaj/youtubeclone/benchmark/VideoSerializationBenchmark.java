@@ -0,0 +1,93 @@
+package com.programming.pankaj.youtubeclone.benchmark;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.programming.pankaj.youtubeclone.dto.VideoDto;
+import com.programming.pankaj.youtubeclone.model.Video;
+import com.programming.pankaj.youtubeclone.model.VideoStatus;
+import com.programming.pankaj.youtubeclone.service.VideoFragmentCache;
+import com.programming.pankaj.youtubeclone.service.VideoService;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Compares payload size and serialization CPU time of the video list in JSON and Smile,
+ * with and without the pre-serialized fragment cache. Run the main method directly.
+ */
+public class VideoSerializationBenchmark {
+
+    private static final int VIDEO_COUNT = 5_000;
+    private static final int ROUNDS = 50;
+
+    public static void main(String[] args) throws Exception {
+        ObjectMapper jsonMapper = Jackson2ObjectMapperBuilder.json().build();
+        ObjectMapper smileMapper = Jackson2ObjectMapperBuilder.smile().build();
+        List<Video> videos = sampleVideos();
+        // The service's own mapping, so the payload matches what GET /api/videos serves
+        VideoService videoService = new VideoService(null, null, null, null, null, null, null, null, null);
+        List<VideoDto> dtos = videos.stream().map(videoService::mapToVideoDto).toList();
+
+        VideoFragmentCache cache = new VideoFragmentCache(jsonMapper, VIDEO_COUNT, Duration.ofHours(1));
+
+        System.out.printf("%-22s %12s %14s%n", "mode", "bytes", "cpu ms/round");
+        report("json", () -> write(jsonMapper, dtos));
+        report("smile", () -> write(smileMapper, dtos));
+        report("json fragments", () -> cache.writeList(() -> videos, VideoFragmentCache.Encoding.JSON,
+                videoService::mapToVideoDto));
+        report("smile fragments", () -> cache.writeList(() -> videos, VideoFragmentCache.Encoding.SMILE,
+                videoService::mapToVideoDto));
+    }
+
+    private static void report(String mode, Supplier<byte[]> serializer) {
+        ThreadMXBean threadMXBean = ManagementFactory.getThreadMXBean();
+
+        // Warm up the JIT (and the fragment cache) before measuring
+        byte[] payload = null;
+        for (int i = 0; i < ROUNDS; i++) {
+            payload = serializer.get();
+        }
+
+        long start = threadMXBean.getCurrentThreadCpuTime();
+        for (int i = 0; i < ROUNDS; i++) {
+            payload = serializer.get();
+        }
+        double cpuMillis = (threadMXBean.getCurrentThreadCpuTime() - start) / 1_000_000.0 / ROUNDS;
+
+        System.out.printf("%-22s %12d %14.3f%n", mode, payload.length, cpuMillis);
+    }
+
+    private static byte[] write(ObjectMapper mapper, Object value) {
+        try {
+            return mapper.writeValueAsBytes(value);
+        } catch (Exception exception) {
+            throw new IllegalStateException(exception);
+        }
+    }
+
+    private static List<Video> sampleVideos() {
+        List<Video> videos = new ArrayList<>();
+        for (int i = 0; i < VIDEO_COUNT; i++) {
+            Video video = new Video();
+            video.setId(String.format("64a1f0c2e4b0%012d", i));
+            video.setTitle("Sample video number " + i);
+            video.setDescription("A description long enough to look like a real one, for video " + i);
+            video.setTags(Set.of("spring", "java", "tag" + (i % 20)));
+            video.setVideoUrl("https://pankajspring.s3.ap-south-1.amazonaws.com/video-" + i + ".mp4");
+            video.setThumbnailUrl("https://pankajspring.s3.ap-south-1.amazonaws.com/thumb-" + i + ".png");
+            video.setVideoStatus(VideoStatus.PUBLIC);
+            video.setLikes(new AtomicInteger(i % 500));
+            video.setDisLikes(new AtomicInteger(i % 50));
+            video.setViewCount(new AtomicInteger(i * 7));
+            video.setUniqueViewerCount((long) i * 5);
+            videos.add(video);
+        }
+        return videos;
+    }
+}
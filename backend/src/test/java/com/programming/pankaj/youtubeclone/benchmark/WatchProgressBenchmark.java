@@ -0,0 +1,114 @@
+package com.programming.pankaj.youtubeclone.benchmark;
+
+import com.mongodb.client.MongoClient;
+import com.mongodb.client.MongoClients;
+import com.programming.pankaj.youtubeclone.model.WatchProgress;
+import com.programming.pankaj.youtubeclone.service.WatchProgressService;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.springframework.data.mongodb.core.MongoTemplate;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Load test of watch-progress heartbeats at 100k concurrent viewers. Every viewer reports once a
+ * second and the buffer is flushed every five heartbeats, as with the default 5s flush interval.
+ * The run reports heartbeat latency, the Mongo writes per flush and the flush time. It compares
+ * them with saving every heartbeat as its own document write.
+ * Run the main method with a MongoDB URI (default mongodb://localhost:27017); it uses and drops
+ * the database watch-progress-benchmark.
+ */
+public class WatchProgressBenchmark {
+
+    private static final int VIEWERS = 100_000;
+    private static final int HEARTBEATS_PER_FLUSH = 5;
+    private static final int FLUSHES = 6;
+    private static final int THREADS = 8;
+    private static final int NAIVE_SAMPLE = 20_000;
+
+    public static void main(String[] args) throws Exception {
+        String uri = args.length > 0 ? args[0] : "mongodb://localhost:27017";
+        try (MongoClient mongoClient = MongoClients.create(uri)) {
+            MongoTemplate mongoTemplate = new MongoTemplate(mongoClient, "watch-progress-benchmark");
+            mongoTemplate.getDb().drop();
+            WatchProgressService watchProgressService = new WatchProgressService(mongoTemplate, null, new SimpleMeterRegistry(),
+                    2 * VIEWERS);
+            ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+
+            long heartbeats = 0;
+            long flushNanos = 0;
+            long written = 0;
+            List<long[]> latencies = new ArrayList<>();
+            long start = System.nanoTime();
+            for (int flush = 0; flush < FLUSHES; flush++) {
+                for (int second = 0; second < HEARTBEATS_PER_FLUSH; second++) {
+                    double position = flush * HEARTBEATS_PER_FLUSH + second;
+                    latencies.addAll(heartbeatRound(executor, watchProgressService, position));
+                    heartbeats += VIEWERS;
+                }
+                written += watchProgressService.getPendingCount();
+                long flushStart = System.nanoTime();
+                watchProgressService.flush();
+                flushNanos += System.nanoTime() - flushStart;
+            }
+            double elapsedSeconds = (System.nanoTime() - start) / 1e9;
+            executor.shutdown();
+
+            long[] allLatencies = latencies.stream().flatMapToLong(Arrays::stream).sorted().toArray();
+            System.out.printf("viewers                    %,d%n", VIEWERS);
+            System.out.printf("heartbeats                 %,d (%,.0f/s, real load is %,d/s)%n",
+                    heartbeats, heartbeats / elapsedSeconds, VIEWERS);
+            System.out.printf("heartbeat p50/p99/p99.9    %,d / %,d / %,d ns%n", percentile(allLatencies, 0.5),
+                    percentile(allLatencies, 0.99), percentile(allLatencies, 0.999));
+            System.out.printf("documents written          %,d (%.1f heartbeats per write)%n", written, (double) heartbeats / written);
+            System.out.printf("flush time                 %,.0f ms per %ds flush interval%n",
+                    flushNanos / 1e6 / FLUSHES, HEARTBEATS_PER_FLUSH);
+            System.out.printf("stored positions           %,d%n", mongoTemplate.estimatedCount(WatchProgress.class));
+
+            // Baseline: one full-document save per heartbeat
+            long naiveStart = System.nanoTime();
+            for (int i = 0; i < NAIVE_SAMPLE; i++) {
+                String userSub = "auth0|viewer-" + (i % VIEWERS);
+                mongoTemplate.save(new WatchProgress(userSub + ":video-" + (i % 100), userSub, "video-" + (i % 100), i, Instant.now()));
+            }
+            double naivePerSecond = NAIVE_SAMPLE / ((System.nanoTime() - naiveStart) / 1e9);
+            System.out.printf("save per heartbeat         %,.0f writes/s on one thread, %,d/s needed%n", naivePerSecond, VIEWERS);
+
+            mongoTemplate.getDb().drop();
+        }
+    }
+
+    // One heartbeat from every viewer, spread over the worker threads; returns per-call latencies
+    private static List<long[]> heartbeatRound(ExecutorService executor, WatchProgressService watchProgressService,
+                                               double position) throws Exception {
+        List<Future<long[]>> futures = new ArrayList<>();
+        for (int thread = 0; thread < THREADS; thread++) {
+            int firstViewer = thread;
+            futures.add(executor.submit(() -> {
+                long[] latencies = new long[(VIEWERS - firstViewer + THREADS - 1) / THREADS];
+                int index = 0;
+                for (int viewer = firstViewer; viewer < VIEWERS; viewer += THREADS) {
+                    long callStart = System.nanoTime();
+                    watchProgressService.recordProgress("auth0|viewer-" + viewer, "video-" + (viewer % 100), position);
+                    latencies[index++] = System.nanoTime() - callStart;
+                }
+                return latencies;
+            }));
+        }
+        List<long[]> latencies = new ArrayList<>();
+        for (Future<long[]> future : futures) {
+            latencies.add(future.get(1, TimeUnit.MINUTES));
+        }
+        return latencies;
+    }
+
+    private static long percentile(long[] sorted, double percentile) {
+        return sorted[Math.min(sorted.length - 1, (int) (sorted.length * percentile))];
+    }
+}
@@ -0,0 +1,116 @@
+package com.programming.pankaj.youtubeclone.cache;
+
+import com.programming.pankaj.youtubeclone.model.ChannelStats;
+import com.programming.pankaj.youtubeclone.model.User;
+import com.programming.pankaj.youtubeclone.model.Video;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.data.mongo.DataMongoTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.boot.testcontainers.service.connection.ServiceConnection;
+import org.springframework.context.annotation.Import;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.testcontainers.containers.MongoDBContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.clearInvocations;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.springframework.data.mongodb.core.query.Criteria.where;
+import static org.springframework.data.mongodb.core.query.Query.query;
+
+@DataMongoTest
+@Import({InvalidationBus.class, LocalInvalidationFeed.class})
+@Testcontainers
+class LocalInvalidationFeedTest {
+
+	@Container
+	@ServiceConnection
+	static MongoDBContainer mongoDBContainer = new MongoDBContainer("mongo:6.0");
+
+	@Autowired
+	private InvalidationBus invalidationBus;
+
+	@Autowired
+	private MongoTemplate mongoTemplate;
+
+	@MockBean
+	private InvalidationListener listener;
+
+	@BeforeEach
+	void setUp() {
+		mongoTemplate.remove(new Query(), Video.class);
+		mongoTemplate.remove(new Query(), User.class);
+		// The removals above are published too
+		invalidationBus.dispatch();
+		clearInvocations(listener);
+	}
+
+	@Test
+	void burstOfWritesToOneDocumentIsDispatchedOnce() {
+		Video video = mongoTemplate.insert(video("video-1"));
+		for (int i = 0; i < 10; i++) {
+			video.setTitle("Title " + i);
+			mongoTemplate.save(video);
+		}
+		mongoTemplate.remove(query(where("_id").is("video-1")), Video.class);
+
+		invalidationBus.dispatch();
+		invalidationBus.dispatch();
+
+		verify(listener, times(1)).onInvalidation(new InvalidationEvent("Video", "video-1"));
+		verify(listener, times(1)).onInvalidation(any());
+	}
+
+	@Test
+	void collectionWideEventReplacesTheEventsOfItsCollection() {
+		mongoTemplate.insert(video("video-1"));
+		mongoTemplate.insert(video("video-2"));
+		User user = new User();
+		user.setId("user-1");
+		mongoTemplate.insert(user);
+		// A delete by criteria carries no single id
+		mongoTemplate.remove(query(where("title").is("missing")), Video.class);
+
+		invalidationBus.dispatch();
+
+		verify(listener).onInvalidation(InvalidationEvent.allOf("Video"));
+		verify(listener).onInvalidation(new InvalidationEvent("User", "user-1"));
+		verify(listener, times(2)).onInvalidation(any());
+		verify(listener, never()).onInvalidation(new InvalidationEvent("Video", "video-1"));
+	}
+
+	@Test
+	void writesToCollectionsNoCacheHoldsAreNotPublished() {
+		mongoTemplate.insert(new ChannelStats("channel-1", 0, 0, 0, 0));
+
+		invalidationBus.dispatch();
+
+		verifyNoInteractions(listener);
+	}
+
+	@Test
+	void failingListenerDoesNotStopTheBatch() {
+		doThrow(new IllegalStateException("cache is closed")).when(listener).onInvalidation(new InvalidationEvent("Video", "video-1"));
+		mongoTemplate.insert(video("video-1"));
+		mongoTemplate.insert(video("video-2"));
+
+		invalidationBus.dispatch();
+
+		verify(listener).onInvalidation(new InvalidationEvent("Video", "video-2"));
+	}
+
+	private static Video video(String id) {
+		Video video = new Video();
+		video.setId(id);
+		video.setTitle("Title");
+		return video;
+	}
+}
@@ -0,0 +1,155 @@
+package com.programming.pankaj.youtubeclone.cache;
+
+import org.bson.BsonDocument;
+import org.bson.BsonString;
+import org.bson.Document;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.data.mongo.DataMongoTest;
+import org.springframework.boot.testcontainers.service.connection.ServiceConnection;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.testcontainers.containers.MongoDBContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// The Mongo container runs as a single-node replica set, so it has change streams
+@DataMongoTest
+@Testcontainers
+class MongoChangeStreamFeedTest {
+
+	private static final String RESUME_TOKEN_COLLECTION = "InvalidationResumeToken";
+
+	@Container
+	@ServiceConnection
+	static MongoDBContainer mongoDBContainer = new MongoDBContainer("mongo:6.0");
+
+	@Autowired
+	private MongoTemplate mongoTemplate;
+
+	private final List<InvalidationEvent> received = new CopyOnWriteArrayList<>();
+	private final List<MongoChangeStreamFeed> feeds = new ArrayList<>();
+	private InvalidationBus invalidationBus;
+	private String nodeId;
+
+	@BeforeEach
+	void setUp() {
+		mongoTemplate.dropCollection("Video");
+		mongoTemplate.dropCollection("User");
+		InvalidationListener recorder = received::add;
+		invalidationBus = new InvalidationBus(List.of(recorder));
+		nodeId = "node-" + UUID.randomUUID();
+	}
+
+	@AfterEach
+	void stopFeeds() {
+		feeds.forEach(MongoChangeStreamFeed::stop);
+	}
+
+	@Test
+	void restartedFeedContinuesFromItsResumeToken() {
+		MongoChangeStreamFeed feed = startFeed();
+		insertVideo("video-1");
+		awaitEvent(new InvalidationEvent("Video", "video-1"));
+		feed.stop();
+
+		// Written while no feed is running
+		insertVideo("video-2");
+		received.clear();
+		startFeed();
+
+		awaitEvent(new InvalidationEvent("Video", "video-2"));
+		assertFalse(received.contains(new InvalidationEvent("Video", "video-1")));
+	}
+
+	@Test
+	void lostHistoryInvalidatesEverythingAndStartsOver() {
+		startFeed().stop();
+		// A token from long before the oldest oplog entry, as after a node was down past the oplog window
+		BsonDocument token = storedToken().clone();
+		String data = token.getString("_data").getValue();
+		String lostToken = data.substring(0, 2) + "0000000100000001" + data.substring(18);
+		token.put("_data", new BsonString(lostToken));
+		mongoTemplate.getCollection(RESUME_TOKEN_COLLECTION)
+				.replaceOne(new Document("_id", nodeId), new Document("_id", nodeId).append("token", token));
+
+		// Returns once the feed has dropped the lost token and stored one of a new stream
+		startFeed();
+
+		awaitEvent(InvalidationEvent.allOf("Video"));
+		awaitEvent(InvalidationEvent.allOf("User"));
+		insertVideo("video-1");
+		awaitEvent(new InvalidationEvent("Video", "video-1"));
+	}
+
+	@Test
+	void updatesOfUnwatchedFieldsAloneAreNotPublished() {
+		startFeed();
+		insertVideo("video-counters");
+		insertVideo("video-title");
+		awaitEvent(new InvalidationEvent("Video", "video-title"));
+		received.clear();
+
+		mongoTemplate.getCollection("Video").updateOne(new Document("_id", "video-counters"),
+				new Document("$inc", new Document("viewCount", 1)));
+		mongoTemplate.getCollection("Video").updateOne(new Document("_id", "video-counters"),
+				new Document("$set", new Document("uniqueViewerCount", 42L)));
+		mongoTemplate.getCollection("Video").updateOne(new Document("_id", "video-title"),
+				new Document("$set", new Document("title", "Renamed")));
+
+		// Changes arrive in order, so the counter updates were seen before this one
+		awaitEvent(new InvalidationEvent("Video", "video-title"));
+		assertFalse(received.contains(new InvalidationEvent("Video", "video-counters")));
+	}
+
+	// Starts a feed and waits until its change stream is open, which it shows by storing a token
+	private MongoChangeStreamFeed startFeed() {
+		BsonDocument before = storedToken();
+		MongoChangeStreamFeed feed = new MongoChangeStreamFeed(mongoTemplate, invalidationBus, nodeId);
+		feeds.add(feed);
+		feed.start();
+		assertTrue(feed.isRunning());
+		await(() -> storedToken() != null && !storedToken().equals(before), "the change stream to open");
+		return feed;
+	}
+
+	private void insertVideo(String id) {
+		mongoTemplate.getCollection("Video").insertOne(new Document("_id", id).append("title", "Title").append("viewCount", 0));
+	}
+
+	private BsonDocument storedToken() {
+		BsonDocument stored = mongoTemplate.getDb().getCollection(RESUME_TOKEN_COLLECTION, BsonDocument.class)
+				.find(new BsonDocument("_id", new BsonString(nodeId))).first();
+		return stored == null ? null : stored.getDocument("token", null);
+	}
+
+	private void awaitEvent(InvalidationEvent expected) {
+		await(() -> {
+			invalidationBus.dispatch();
+			return received.contains(expected);
+		}, expected + " in " + received);
+	}
+
+	private static void await(Supplier<Boolean> condition, String description) {
+		long deadline = System.currentTimeMillis() + 20_000;
+		while (!condition.get()) {
+			assertTrue(System.currentTimeMillis() < deadline, "Timed out waiting for " + description);
+			try {
+				Thread.sleep(100);
+			} catch (InterruptedException exception) {
+				Thread.currentThread().interrupt();
+				throw new IllegalStateException(exception);
+			}
+		}
+	}
+}
@@ -0,0 +1,129 @@
+package com.programming.pankaj.youtubeclone.config;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.web.method.HandlerMethod;
+
+import java.time.Duration;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RateLimitInterceptorTest {
+
+	private RateLimitProperties rateLimitProperties;
+	private SimpleMeterRegistry meterRegistry;
+	private RateLimitInterceptor rateLimitInterceptor;
+
+	@BeforeEach
+	void setUp() {
+		rateLimitProperties = new RateLimitProperties();
+		rateLimitProperties.setLimits(Map.of(
+				"reaction", limit(2, 0.001),
+				"fast", limit(1, 1000)));
+		meterRegistry = new SimpleMeterRegistry();
+		rateLimitInterceptor = new RateLimitInterceptor(rateLimitProperties, meterRegistry);
+	}
+
+	@Test
+	void emptyBucketIsAnsweredWith429AndRetryAfter() throws Exception {
+		assertTrue(call("react", "10.0.0.1").allowed());
+		assertTrue(call("react", "10.0.0.1").allowed());
+
+		Result rejected = call("react", "10.0.0.1");
+		assertFalse(rejected.allowed());
+		assertEquals(429, rejected.response().getStatus());
+		// One token per 1000s, rounded up to whole seconds
+		assertEquals("1000", rejected.response().getHeader(HttpHeaders.RETRY_AFTER));
+		assertEquals(1, meterRegistry.get("ratelimit.rejections").tag("endpoint", "reaction").counter().count());
+	}
+
+	@Test
+	void usersAndUnannotatedMethodsAreNotLimitedTogether() throws Exception {
+		call("react", "10.0.0.1");
+		call("react", "10.0.0.1");
+
+		assertTrue(call("react", "10.0.0.2").allowed());
+		assertTrue(call("open", "10.0.0.1").allowed());
+	}
+
+	@Test
+	void refilledBucketsAreEvicted() throws Exception {
+		rateLimitProperties.setIdleTimeout(Duration.ZERO);
+		call("fast", "10.0.0.1");
+		call("react", "10.0.0.2");
+		assertEquals(2, bucketCount());
+
+		// The fast bucket refills after 1ms; the reaction bucket is still drained
+		Thread.sleep(10);
+		rateLimitInterceptor.evictIdleBuckets();
+
+		assertEquals(1, bucketCount());
+		assertTrue(call("fast", "10.0.0.1").allowed());
+	}
+
+	@Test
+	void floodingOverflowUserDoesNotLockOutOtherNewcomers() throws Exception {
+		rateLimitProperties.setMaxBuckets(1);
+		call("react", "10.0.0.1");
+
+		// The map is full, so the flooder lands in an overflow bucket and drains it
+		for (int i = 0; i < 10; i++) {
+			call("react", "10.0.0.2");
+		}
+		assertFalse(call("react", "10.0.0.2").allowed());
+
+		int allowed = 0;
+		for (int i = 0; i < 20; i++) {
+			if (call("react", "10.0.1." + i).allowed()) {
+				allowed++;
+			}
+		}
+		// Only newcomers hashed onto the flooder's overflow bucket are refused
+		assertTrue(allowed >= 18, allowed + " of 20 newcomers allowed");
+		assertTrue(bucketCount() <= 1 + 64);
+	}
+
+	private Result call(String method, String remoteAddr) throws Exception {
+		MockHttpServletRequest request = new MockHttpServletRequest();
+		request.setRemoteAddr(remoteAddr);
+		MockHttpServletResponse response = new MockHttpServletResponse();
+		HandlerMethod handler = new HandlerMethod(new Endpoints(), Endpoints.class.getMethod(method));
+		return new Result(rateLimitInterceptor.preHandle(request, response, handler), response);
+	}
+
+	private double bucketCount() {
+		return meterRegistry.get("ratelimit.buckets").gauge().value();
+	}
+
+	private static RateLimitProperties.Limit limit(int capacity, double refillPerSecond) {
+		RateLimitProperties.Limit limit = new RateLimitProperties.Limit();
+		limit.setCapacity(capacity);
+		limit.setRefillPerSecond(refillPerSecond);
+		return limit;
+	}
+
+	private record Result(boolean allowed, MockHttpServletResponse response) {
+	}
+
+	static class Endpoints {
+
+		@RateLimited("reaction")
+		public void react() {
+		}
+
+		@RateLimited("fast")
+		public void fast() {
+		}
+
+		public void open() {
+		}
+	}
+
+}
@@ -0,0 +1,156 @@
+package com.programming.pankaj.youtubeclone.eventlog;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.util.unit.DataSize;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class InteractionEventLogTest {
+
+	@TempDir
+	Path directory;
+
+	@Test
+	void replaysConcurrentAppendsAcrossSegments() throws Exception {
+		InteractionEventLog eventLog = open(true);
+		eventLog.start();
+
+		List<Thread> appenders = new ArrayList<>();
+		for (int thread = 0; thread < 4; thread++) {
+			String actor = "auth0|user-" + thread;
+			Thread appender = new Thread(() -> {
+				for (int i = 0; i < 500; i++) {
+					eventLog.append(InteractionEvent.now(EventType.VIEW, actor, "video-" + i));
+				}
+			});
+			appender.start();
+			appenders.add(appender);
+		}
+		for (Thread appender : appenders) {
+			appender.join();
+		}
+
+		List<InteractionEvent> replayed = new ArrayList<>();
+		long next = eventLog.replay(0, (event, position) -> replayed.add(event));
+		eventLog.stop();
+
+		assertEquals(2000, replayed.size());
+		assertEquals(eventLog.getWritePosition(), next);
+		assertEquals(eventLog.getWritePosition(), eventLog.getDurablePosition());
+		assertTrue(segmentFiles().size() > 1, "expected the log to roll");
+	}
+
+	@Test
+	void replayResumesFromAPosition() throws Exception {
+		InteractionEventLog eventLog = open(false);
+		eventLog.append(InteractionEvent.now(EventType.LIKE_ADDED, "auth0|a", "video-1"));
+		long second = eventLog.append(InteractionEvent.now(EventType.SUBSCRIBED, "auth0|a", "user-2"));
+
+		List<InteractionEvent> replayed = new ArrayList<>();
+		eventLog.replay(second, (event, position) -> replayed.add(event));
+
+		assertEquals(1, replayed.size());
+		assertEquals(EventType.SUBSCRIBED, replayed.get(0).type());
+		assertEquals("user-2", replayed.get(0).targetId());
+	}
+
+	@Test
+	void reopeningCutsOffATornRecordAndKeepsAppending() throws Exception {
+		InteractionEventLog eventLog = open(false);
+		for (int i = 0; i < 100; i++) {
+			eventLog.append(InteractionEvent.now(EventType.COMMENT_ADDED, "auth0|a", "video-" + i));
+		}
+		eventLog.stop();
+		long end = eventLog.getWritePosition();
+
+		// Simulate a crash half way through writing the next record
+		Path lastSegment = segmentFiles().get(segmentFiles().size() - 1);
+		long segmentBase = Long.parseLong(lastSegment.getFileName().toString().replaceAll("\\D", ""));
+		try (RandomAccessFile file = new RandomAccessFile(lastSegment.toFile(), "rw")) {
+			file.seek(end - segmentBase);
+			file.writeInt(40);
+			file.writeInt(12345);
+			file.write(new byte[]{1, 2, 3});
+		}
+
+		InteractionEventLog reopened = open(false);
+		assertEquals(end, reopened.getWritePosition());
+		reopened.append(InteractionEvent.now(EventType.VIEW, "auth0|b", "video-0"));
+
+		List<InteractionEvent> replayed = new ArrayList<>();
+		reopened.replay(0, (event, position) -> replayed.add(event));
+		assertEquals(101, replayed.size());
+		assertEquals("auth0|b", replayed.get(100).actorId());
+	}
+
+	@Test
+	void truncationDeletesOnlyWholeSegmentsBeforeThePosition() throws Exception {
+		InteractionEventLog eventLog = open(false);
+		List<Long> positions = new ArrayList<>();
+		for (int i = 0; i < 300; i++) {
+			positions.add(eventLog.append(InteractionEvent.now(EventType.VIEW, "auth0|a", "video-" + i)));
+		}
+		int segmentCount = segmentFiles().size();
+		long keepFrom = positions.get(150);
+
+		long start = eventLog.truncateBefore(keepFrom);
+
+		assertTrue(start > 0 && start <= keepFrom, "log starts at " + start);
+		assertTrue(segmentFiles().size() < segmentCount);
+		assertEquals(positions.subList(positions.indexOf(start), positions.size()), replayedPositions(eventLog));
+
+		// The active segment is never deleted
+		eventLog.truncateBefore(Long.MAX_VALUE);
+		assertEquals(1, segmentFiles().size());
+		assertEquals(positions.get(positions.size() - 1), replayedPositions(eventLog).get(replayedPositions(eventLog).size() - 1));
+	}
+
+	@Test
+	void retentionDeletesSegmentsOfOnlyOlderEvents() throws Exception {
+		InteractionEventLog eventLog = open(false, Duration.ofDays(1));
+		Instant old = Instant.now().minus(Duration.ofDays(2));
+		for (int i = 0; i < 300; i++) {
+			eventLog.append(new InteractionEvent(EventType.VIEW, old, "auth0|a", "video-" + i));
+		}
+		long firstRecent = eventLog.append(InteractionEvent.now(EventType.VIEW, "auth0|a", "video-recent"));
+
+		eventLog.deleteExpiredSegments();
+
+		// The segment holding the recent event may still start with older ones
+		long start = eventLog.truncateBefore(0);
+		assertTrue(start > 0 && start <= firstRecent, "log starts at " + start);
+		assertTrue(replayedPositions(eventLog).contains(firstRecent));
+	}
+
+	private static List<Long> replayedPositions(InteractionEventLog eventLog) {
+		List<Long> positions = new ArrayList<>();
+		eventLog.replay(0, (event, position) -> positions.add(position));
+		return positions;
+	}
+
+	private InteractionEventLog open(boolean syncOnAppend) throws IOException {
+		return open(syncOnAppend, Duration.ZERO);
+	}
+
+	private InteractionEventLog open(boolean syncOnAppend, Duration retention) throws IOException {
+		return new InteractionEventLog(directory.toString(), DataSize.ofKilobytes(4), Duration.ofMillis(5), syncOnAppend, retention);
+	}
+
+	private List<Path> segmentFiles() throws IOException {
+		try (Stream<Path> files = Files.list(directory)) {
+			return files.sorted().toList();
+		}
+	}
+}
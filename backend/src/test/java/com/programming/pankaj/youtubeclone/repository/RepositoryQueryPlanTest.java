@@ -0,0 +1,330 @@
+package com.programming.pankaj.youtubeclone.repository;
+
+import com.mongodb.event.CommandListener;
+import com.mongodb.event.CommandStartedEvent;
+import com.programming.pankaj.youtubeclone.config.MongoIndexConfig;
+import com.programming.pankaj.youtubeclone.dto.PlaylistItemDto;
+import com.programming.pankaj.youtubeclone.dto.PlaylistItemPageDto;
+import com.programming.pankaj.youtubeclone.model.Comment;
+import com.programming.pankaj.youtubeclone.model.Playlist;
+import com.programming.pankaj.youtubeclone.model.PlaylistItem;
+import com.programming.pankaj.youtubeclone.model.StoredObject;
+import com.programming.pankaj.youtubeclone.model.User;
+import com.programming.pankaj.youtubeclone.model.Video;
+import com.programming.pankaj.youtubeclone.model.VideoStatus;
+import com.programming.pankaj.youtubeclone.model.ViewerSketch;
+import com.programming.pankaj.youtubeclone.service.PlaylistService;
+import com.programming.pankaj.youtubeclone.service.UserService;
+import com.programming.pankaj.youtubeclone.util.FractionalKey;
+import org.bson.BsonDocument;
+import org.bson.BsonString;
+import org.bson.Document;
+import org.bson.types.ObjectId;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.aop.framework.AopProxyUtils;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.mongo.MongoClientSettingsBuilderCustomizer;
+import org.springframework.boot.test.autoconfigure.data.mongo.DataMongoTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.boot.testcontainers.service.connection.ServiceConnection;
+import org.springframework.context.ApplicationContext;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Import;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.data.repository.Repository;
+import org.springframework.util.ReflectionUtils;
+import org.testcontainers.containers.MongoDBContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.when;
+import static org.springframework.data.mongodb.core.query.Criteria.where;
+import static org.springframework.data.mongodb.core.query.Query.query;
+
+/**
+ * Runs every query method declared on our repositories against a real mongod, explains the
+ * commands it sends and fails when a plan scans the collection or examines far more documents
+ * than it returns. New repository methods are picked up automatically.
+ * <p>
+ * Every string argument is {@link #SAMPLE_VALUE}, and a slice of the seeded documents carries it
+ * in each queried field, so queries return real matches and the examined-to-returned ratio means
+ * something. The test needs Docker and fails without it rather than skipping the guard.
+ * <p>
+ * Playlist items are queried through MongoTemplate on a field chosen per playlist, so those
+ * queries are checked by running the service instead.
+ */
+@DataMongoTest
+@Import({MongoIndexConfig.class, PlaylistService.class, RepositoryQueryPlanTest.CommandCapture.class})
+@Testcontainers
+class RepositoryQueryPlanTest {
+
+	private static final int SEED_DOCUMENTS = 500;
+	// One in this many seeded documents matches the sample arguments
+	private static final int SAMPLE_EVERY = 20;
+	private static final double MAX_DOCS_EXAMINED_PER_RETURNED = 2.0;
+	private static final String SAMPLE_VALUE = "sample";
+	private static final Set<String> EXPLAINABLE_COMMANDS =
+			Set.of("find", "aggregate", "count", "distinct", "delete", "update", "findAndModify");
+	private static final List<BsonDocument> capturedCommands = new CopyOnWriteArrayList<>();
+
+	@Container
+	@ServiceConnection
+	static MongoDBContainer mongoDBContainer = new MongoDBContainer("mongo:6.0");
+
+	@Autowired
+	private ApplicationContext applicationContext;
+
+	@Autowired
+	private MongoTemplate mongoTemplate;
+
+	@Autowired
+	private PlaylistService playlistService;
+
+	@MockBean
+	private UserService userService;
+
+	@TestConfiguration
+	static class CommandCapture {
+
+		@Bean
+		MongoClientSettingsBuilderCustomizer commandCaptureCustomizer() {
+			return builder -> builder.addCommandListener(new CommandListener() {
+				@Override
+				public void commandStarted(CommandStartedEvent event) {
+					if (EXPLAINABLE_COMMANDS.contains(event.getCommandName())) {
+						capturedCommands.add(event.getCommand().clone());
+					}
+				}
+			});
+		}
+	}
+
+	@BeforeEach
+	void seedCollections() {
+		if (mongoTemplate.estimatedCount(Video.class) > 0) {
+			return;
+		}
+		List<User> users = new ArrayList<>();
+		List<Video> videos = new ArrayList<>();
+		List<ViewerSketch> sketches = new ArrayList<>();
+		List<Comment> comments = new ArrayList<>();
+		List<Playlist> playlists = new ArrayList<>();
+		List<PlaylistItem> playlistItems = new ArrayList<>();
+		List<StoredObject> storedObjects = new ArrayList<>();
+		List<String> ranks = FractionalKey.sequence(SEED_DOCUMENTS);
+		for (int i = 0; i < SEED_DOCUMENTS; i++) {
+			boolean sample = i % SAMPLE_EVERY == 0;
+
+			User user = new User();
+			user.setSub(i == 0 ? SAMPLE_VALUE : "auth0|user-" + i);
+			users.add(user);
+
+			Video video = new Video();
+			video.setUserId(sample ? SAMPLE_VALUE : "user-" + (i % SAMPLE_EVERY));
+			video.setTags(Set.of("tag-" + (i % 10)));
+			video.setVideoStatus(VideoStatus.values()[i % VideoStatus.values().length]);
+			video.setCreatedAt(Instant.now().minusSeconds(i));
+			videos.add(video);
+
+			sketches.add(new ViewerSketch("video-" + i, sample ? SAMPLE_VALUE : "video-" + i,
+					sample ? SAMPLE_VALUE : "day-" + i, null, new byte[16], null));
+
+			// Top-level comments and replies both get a slice on the sample video or parent
+			Comment comment = new Comment();
+			comment.setVideoId(sample ? SAMPLE_VALUE : "video-" + (i % SAMPLE_EVERY));
+			comment.setParentId(i % 2 == 0 ? null : (i % SAMPLE_EVERY == 1 ? SAMPLE_VALUE : "comment-" + (i % 10)));
+			comment.setScore((long) (i % 7));
+			comments.add(comment);
+
+			playlistItems.add(new PlaylistItem(null, sample ? SAMPLE_VALUE : "playlist-" + (i % SAMPLE_EVERY),
+					"video-" + i, ranks.get(i), ranks.get(i), 0, Instant.now()));
+
+			if (sample) {
+				Playlist playlist = new Playlist();
+				playlist.setId(i == 0 ? SAMPLE_VALUE : null);
+				playlist.setTitle("playlist-" + i);
+				playlist.setOwnerSub("auth0|user-" + i);
+				playlist.setRebalanceRequested(i == 0 ? true : null);
+				playlists.add(playlist);
+			}
+
+			storedObjects.add(new StoredObject("sha-" + i, "key-" + i, i == 0 ? SAMPLE_VALUE : "url-" + i,
+					i, "video/mp4", 1, Instant.now(), Set.of("auth0|user-" + i)));
+		}
+		mongoTemplate.insertAll(users);
+		mongoTemplate.insertAll(videos);
+		mongoTemplate.insertAll(sketches);
+		mongoTemplate.insertAll(comments);
+		mongoTemplate.insertAll(playlists);
+		mongoTemplate.insertAll(playlistItems);
+		mongoTemplate.insertAll(storedObjects);
+	}
+
+	@Test
+	void repositoryQueriesAreServedByIndexes() {
+		List<String> violations = new ArrayList<>();
+		int checkedQueries = 0;
+
+		for (Object repository : applicationContext.getBeansOfType(Repository.class).values()) {
+			for (Class<?> repositoryInterface : AopProxyUtils.proxiedUserInterfaces(repository)) {
+				if (!repositoryInterface.getPackageName().equals(UserRepository.class.getPackageName())) {
+					continue;
+				}
+				for (Method method : repositoryInterface.getDeclaredMethods()) {
+					if (method.isDefault() || Modifier.isStatic(method.getModifiers())) {
+						continue;
+					}
+					capturedCommands.clear();
+					Object result = ReflectionUtils.invokeMethod(method, repository, sampleArguments(method));
+					if (result instanceof Stream<?> stream) {
+						stream.close();
+					}
+					for (BsonDocument command : capturedCommands) {
+						violations.addAll(checkPlan(repositoryInterface.getSimpleName() + "." + method.getName(), command));
+						checkedQueries++;
+					}
+				}
+			}
+		}
+
+		assertFalse(checkedQueries == 0, "No repository queries were captured");
+		assertTrue(violations.isEmpty(), String.join("\n", violations));
+	}
+
+	@Test
+	void playlistItemQueriesAreServedByIndexes() {
+		when(userService.getCurrentUserSub()).thenReturn("auth0|user-0");
+		List<String> violations = new ArrayList<>();
+
+		// Items are ordered by rank or altRank depending on the playlist, so check both
+		for (long rankVersion = 0; rankVersion < 2; rankVersion++) {
+			mongoTemplate.updateFirst(query(where("_id").is(SAMPLE_VALUE)), new Update().set("rankVersion", rankVersion),
+					Playlist.class);
+			capturedCommands.clear();
+			PlaylistItemPageDto page = playlistService.getItems(SAMPLE_VALUE, null, 10);
+			playlistService.getItems(SAMPLE_VALUE, page.getNextCursor(), 10);
+			playlistService.moveItem(SAMPLE_VALUE, page.getItems().get(0).getId(),
+					new PlaylistItemDto(null, null, null, page.getItems().get(5).getId()));
+			for (BsonDocument command : capturedCommands) {
+				violations.addAll(checkPlan("PlaylistService with rankVersion " + rankVersion, command));
+			}
+		}
+
+		assertTrue(violations.isEmpty(), String.join("\n", violations));
+	}
+
+	private List<String> checkPlan(String queryName, BsonDocument command) {
+		BsonDocument explainable = new BsonDocument();
+		command.forEach((key, value) -> {
+			// Drop driver-added session and routing fields, which explain rejects
+			if (!key.startsWith("$") && !key.equals("lsid") && !key.equals("txnNumber")) {
+				explainable.put(key, value);
+			}
+		});
+		Document explain = mongoTemplate.getDb().runCommand(
+				new BsonDocument("explain", explainable).append("verbosity", new BsonString("executionStats")));
+
+		List<String> violations = new ArrayList<>();
+		if (containsStage(explain, "COLLSCAN")) {
+			violations.add(queryName + " uses a collection scan: " + explainable.toJson());
+		}
+		Document executionStats = findDocument(explain, "executionStats");
+		if (executionStats != null) {
+			double examined = ((Number) executionStats.get("totalDocsExamined")).doubleValue();
+			double returned = Math.max(1, ((Number) executionStats.get("nReturned")).doubleValue());
+			if (examined / returned > MAX_DOCS_EXAMINED_PER_RETURNED) {
+				violations.add(String.format("%s examined %.0f documents to return %.0f: %s",
+						queryName, examined, returned, explainable.toJson()));
+			}
+		}
+		return violations;
+	}
+
+	private static boolean containsStage(Object node, String stage) {
+		if (node instanceof Map<?, ?> map) {
+			return stage.equals(map.get("stage")) || map.values().stream().anyMatch(value -> containsStage(value, stage));
+		}
+		if (node instanceof Collection<?> collection) {
+			return collection.stream().anyMatch(value -> containsStage(value, stage));
+		}
+		return false;
+	}
+
+	private static Document findDocument(Object node, String key) {
+		if (node instanceof Document document) {
+			if (document.get(key) instanceof Document found) {
+				return found;
+			}
+			node = document.values();
+		}
+		if (node instanceof Collection<?> collection) {
+			for (Object value : collection) {
+				Document found = findDocument(value, key);
+				if (found != null) {
+					return found;
+				}
+			}
+		}
+		return null;
+	}
+
+	private static Object[] sampleArguments(Method method) {
+		return Stream.of(method.getParameterTypes()).map(type -> sampleValue(method, type)).toArray();
+	}
+
+	private static Object sampleValue(Method method, Class<?> type) {
+		if (type == String.class) {
+			return SAMPLE_VALUE;
+		}
+		if (Collection.class.isAssignableFrom(type)) {
+			return type.isAssignableFrom(List.class) ? List.of(SAMPLE_VALUE) : Set.of(SAMPLE_VALUE);
+		}
+		if (type == Pageable.class) {
+			return PageRequest.of(0, 10);
+		}
+		if (type == Sort.class) {
+			return Sort.unsorted();
+		}
+		if (type == int.class || type == Integer.class) {
+			return 10;
+		}
+		if (type == long.class || type == Long.class) {
+			return 10L;
+		}
+		if (type == double.class || type == Double.class) {
+			return 10.0;
+		}
+		if (type == boolean.class || type == Boolean.class) {
+			return true;
+		}
+		if (type == ObjectId.class) {
+			return new ObjectId();
+		}
+		if (type == Instant.class) {
+			return Instant.now();
+		}
+		if (type.isEnum()) {
+			return type.getEnumConstants()[0];
+		}
+		throw new IllegalStateException("Add a sample value for " + type.getName() + " used by " + method);
+	}
+}
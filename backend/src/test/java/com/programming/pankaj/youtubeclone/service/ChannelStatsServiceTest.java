@@ -0,0 +1,179 @@
+package com.programming.pankaj.youtubeclone.service;
+
+import com.programming.pankaj.youtubeclone.eventlog.InteractionEventLog;
+import com.programming.pankaj.youtubeclone.model.ChannelStats;
+import com.programming.pankaj.youtubeclone.model.User;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.data.mongo.DataMongoTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.boot.testcontainers.service.connection.ServiceConnection;
+import org.springframework.context.annotation.Import;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.security.oauth2.jwt.Jwt;
+import org.springframework.security.oauth2.server.resource.authentication.JwtAuthenticationToken;
+import org.testcontainers.containers.MongoDBContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+@DataMongoTest
+@Import({ChannelStatsService.class, UserService.class})
+@Testcontainers
+class ChannelStatsServiceTest {
+
+	private static final String CHANNEL = "channel-1";
+	private static final String VIEWER = "viewer-1";
+
+	@Container
+	@ServiceConnection
+	static MongoDBContainer mongoDBContainer = new MongoDBContainer("mongo:6.0");
+
+	@Autowired
+	private ChannelStatsService channelStatsService;
+
+	@Autowired
+	private UserService userService;
+
+	@Autowired
+	private MongoTemplate mongoTemplate;
+
+	@MockBean
+	private InteractionEventLog interactionEventLog;
+
+	@BeforeEach
+	void setUp() {
+		mongoTemplate.dropCollection(ChannelStats.class);
+		mongoTemplate.dropCollection(User.class);
+		mongoTemplate.insert(user(CHANNEL));
+		mongoTemplate.insert(user(VIEWER));
+		signIn(VIEWER);
+	}
+
+	@AfterEach
+	void signOut() {
+		SecurityContextHolder.clearContext();
+	}
+
+	@Test
+	void countersStartAtZeroAndMoveByTheirDeltas() {
+		assertEquals(new ChannelStats(CHANNEL, 0, 0, 0, 0), channelStatsService.getChannelStats(CHANNEL));
+
+		channelStatsService.recordUpload(CHANNEL);
+		channelStatsService.recordView(CHANNEL);
+		channelStatsService.recordView(CHANNEL);
+		channelStatsService.recordLikes(CHANNEL, 3);
+		channelStatsService.recordLikes(CHANNEL, -1);
+
+		assertEquals(new ChannelStats(CHANNEL, 1, 2, 2, 0), channelStatsService.getChannelStats(CHANNEL));
+	}
+
+	@Test
+	void videosWithoutAnUploaderAreNotCounted() {
+		channelStatsService.recordView(null);
+
+		assertEquals(List.of(), mongoTemplate.findAll(ChannelStats.class));
+	}
+
+	@Test
+	void repeatedSubscribesAndUnsubscribesCountOnce() {
+		userService.subscribeUser(CHANNEL);
+		userService.subscribeUser(CHANNEL);
+		assertEquals(1, channelStatsService.getChannelStats(CHANNEL).getSubscriberCount());
+		assertEquals(Set.of(VIEWER), mongoTemplate.findById(CHANNEL, User.class).getSubscribers());
+		assertEquals(Set.of(CHANNEL), mongoTemplate.findById(VIEWER, User.class).getSubscribedToUsers());
+
+		userService.unSubscribeUser(CHANNEL);
+		userService.unSubscribeUser(CHANNEL);
+		assertEquals(0, channelStatsService.getChannelStats(CHANNEL).getSubscriberCount());
+		assertEquals(Set.of(), mongoTemplate.findById(CHANNEL, User.class).getSubscribers());
+	}
+
+	@Test
+	void concurrentSubscribesOfOneUserCountOnce() throws Exception {
+		ExecutorService executor = Executors.newFixedThreadPool(8);
+		try {
+			List<Future<?>> subscribes = new ArrayList<>();
+			for (int i = 0; i < 50; i++) {
+				subscribes.add(executor.submit(() -> {
+					signIn(VIEWER);
+					userService.subscribeUser(CHANNEL);
+				}));
+			}
+			for (Future<?> subscribe : subscribes) {
+				subscribe.get(30, TimeUnit.SECONDS);
+			}
+		} finally {
+			executor.shutdownNow();
+		}
+
+		assertEquals(1, channelStatsService.getChannelStats(CHANNEL).getSubscriberCount());
+	}
+
+	@Test
+	void subscriberCountMatchesTheSubscribersOfManyUsers() throws Exception {
+		List<String> viewers = new ArrayList<>();
+		for (int i = 0; i < 20; i++) {
+			viewers.add("viewer-" + (i + 2));
+			mongoTemplate.insert(user("viewer-" + (i + 2)));
+		}
+
+		ExecutorService executor = Executors.newFixedThreadPool(8);
+		try {
+			List<Future<?>> changes = new ArrayList<>();
+			// Meanwhile the channel owner keeps writing their own user, which must not drop new subscribers
+			changes.add(executor.submit(() -> {
+				signIn(CHANNEL);
+				for (int i = 0; i < 50; i++) {
+					userService.addVideoToHistory("video-" + i);
+				}
+			}));
+			for (String viewer : viewers) {
+				changes.add(executor.submit(() -> {
+					signIn(viewer);
+					userService.subscribeUser(CHANNEL);
+					userService.subscribeUser(CHANNEL);
+				}));
+			}
+			for (Future<?> change : changes) {
+				change.get(30, TimeUnit.SECONDS);
+			}
+		} finally {
+			executor.shutdownNow();
+		}
+
+		assertEquals(viewers.size(), mongoTemplate.findById(CHANNEL, User.class).getSubscribers().size());
+		assertEquals(viewers.size(), channelStatsService.getChannelStats(CHANNEL).getSubscriberCount());
+	}
+
+	@Test
+	void subscribingToAMissingUserFails() {
+		assertThrows(IllegalArgumentException.class, () -> userService.subscribeUser("missing"));
+		assertEquals(0, channelStatsService.getChannelStats("missing").getSubscriberCount());
+	}
+
+	private static User user(String id) {
+		User user = new User();
+		user.setId(id);
+		user.setSub("auth0|" + id);
+		return user;
+	}
+
+	private static void signIn(String userId) {
+		Jwt jwt = Jwt.withTokenValue("token").header("alg", "none").claim("sub", "auth0|" + userId).build();
+		SecurityContextHolder.getContext().setAuthentication(new JwtAuthenticationToken(jwt));
+	}
+}
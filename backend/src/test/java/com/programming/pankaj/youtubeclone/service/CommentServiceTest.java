@@ -0,0 +1,200 @@
+package com.programming.pankaj.youtubeclone.service;
+
+import com.programming.pankaj.youtubeclone.dto.CommentDto;
+import com.programming.pankaj.youtubeclone.dto.CommentPageDto;
+import com.programming.pankaj.youtubeclone.eventlog.InteractionEventLog;
+import com.programming.pankaj.youtubeclone.model.Comment;
+import com.programming.pankaj.youtubeclone.model.CommentReaction;
+import com.programming.pankaj.youtubeclone.model.Reaction;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.data.mongo.DataMongoTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.boot.testcontainers.service.connection.ServiceConnection;
+import org.springframework.context.annotation.Import;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.web.server.ResponseStatusException;
+import org.testcontainers.containers.MongoDBContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.Mockito.when;
+import static org.springframework.data.mongodb.core.query.Criteria.where;
+import static org.springframework.data.mongodb.core.query.Query.query;
+
+@DataMongoTest
+@Import(CommentService.class)
+@Testcontainers
+class CommentServiceTest {
+
+	private static final String VIDEO = "video-1";
+	private static final String VIEWER = "auth0|viewer";
+
+	@Container
+	@ServiceConnection
+	static MongoDBContainer mongoDBContainer = new MongoDBContainer("mongo:6.0");
+
+	@Autowired
+	private CommentService commentService;
+
+	@Autowired
+	private MongoTemplate mongoTemplate;
+
+	@MockBean
+	private UserService userService;
+
+	@MockBean
+	private InteractionEventLog interactionEventLog;
+
+	@BeforeEach
+	void setUp() {
+		mongoTemplate.dropCollection(Comment.class);
+		mongoTemplate.dropCollection(CommentReaction.class);
+		when(userService.getCurrentUserSub()).thenReturn(VIEWER);
+	}
+
+	@Test
+	void topCommentsArePagedByScoreThenNewestFirst() {
+		List<String> ids = new ArrayList<>();
+		for (int i = 0; i < 7; i++) {
+			ids.add(add("comment " + i, null).getId());
+		}
+		// Scores 2, 2, 2, 1, 0, 0, 0 with ties broken by the newest id
+		setScore(ids.get(1), 2);
+		setScore(ids.get(3), 2);
+		setScore(ids.get(5), 2);
+		setScore(ids.get(6), 1);
+		List<String> expected = List.of(ids.get(5), ids.get(3), ids.get(1), ids.get(6), ids.get(4), ids.get(2), ids.get(0));
+
+		List<String> seen = new ArrayList<>();
+		String cursor = null;
+		do {
+			CommentPageDto page = commentService.getTopComments(VIDEO, cursor, 3);
+			page.getComments().forEach(comment -> seen.add(comment.getId()));
+			cursor = page.getNextCursor();
+		} while (cursor != null);
+
+		assertEquals(expected, seen);
+	}
+
+	@Test
+	void repliesArePagedOldestFirstAndCounted() {
+		String parentId = add("parent", null).getId();
+		List<String> replyIds = new ArrayList<>();
+		for (int i = 0; i < 5; i++) {
+			replyIds.add(add("reply " + i, parentId).getId());
+		}
+
+		List<String> seen = new ArrayList<>();
+		String cursor = null;
+		do {
+			CommentPageDto page = commentService.getReplies(VIDEO, parentId, cursor, 2);
+			page.getComments().forEach(comment -> seen.add(comment.getId()));
+			cursor = page.getNextCursor();
+		} while (cursor != null);
+
+		assertEquals(replyIds, seen);
+		assertEquals(5, mongoTemplate.findById(parentId, Comment.class).getReplyCount());
+		assertEquals(1, commentService.getTopComments(VIDEO, null, 10).getComments().size());
+	}
+
+	@Test
+	void repliesOfACommentOfAnotherVideoAreNotFound() {
+		String parentId = add("parent", null).getId();
+		add("reply", parentId);
+
+		ResponseStatusException exception = assertThrows(ResponseStatusException.class,
+				() -> commentService.getReplies("video-2", parentId, null, 10));
+		assertEquals(404, exception.getStatusCode().value());
+	}
+
+	@Test
+	void replyToACommentOfAnotherVideoIsRejected() {
+		String parentId = add("parent", null).getId();
+		CommentDto reply = new CommentDto();
+		reply.setCommentText("reply");
+		reply.setParentId(parentId);
+
+		ResponseStatusException exception = assertThrows(ResponseStatusException.class,
+				() -> commentService.addComment("video-2", reply));
+		assertEquals(404, exception.getStatusCode().value());
+		assertEquals(0, mongoTemplate.findById(parentId, Comment.class).getReplyCount());
+		assertEquals(1, mongoTemplate.count(query(where("text").exists(true)), Comment.class));
+	}
+
+	@Test
+	void repeatingAReactionTakesItBackAndSwitchingMovesIt() {
+		String commentId = add("comment", null).getId();
+
+		CommentDto liked = commentService.reactToComment(VIDEO, commentId, Reaction.LIKE);
+		assertEquals(1, liked.getLikeCount());
+
+		CommentDto switched = commentService.reactToComment(VIDEO, commentId, Reaction.DISLIKE);
+		assertEquals(0, switched.getLikeCount());
+		assertEquals(1, switched.getDisLikeCount());
+		assertEquals(-1L, mongoTemplate.findById(commentId, Comment.class).getScore());
+
+		CommentDto undone = commentService.reactToComment(VIDEO, commentId, Reaction.DISLIKE);
+		assertEquals(0, undone.getDisLikeCount());
+		assertEquals(0L, mongoTemplate.findById(commentId, Comment.class).getScore());
+		assertNull(mongoTemplate.findById(commentId + ":" + VIEWER, CommentReaction.class));
+	}
+
+	@Test
+	void concurrentReactionsOfOneUserKeepCountersInStepWithTheStoredReaction() throws Exception {
+		String commentId = add("comment", null).getId();
+
+		ExecutorService executor = Executors.newFixedThreadPool(8);
+		try {
+			List<Future<CommentDto>> reactions = new ArrayList<>();
+			for (int i = 0; i < 200; i++) {
+				Reaction reaction = i % 3 == 0 ? Reaction.DISLIKE : Reaction.LIKE;
+				reactions.add(executor.submit(() -> commentService.reactToComment(VIDEO, commentId, reaction)));
+			}
+			for (Future<CommentDto> reaction : reactions) {
+				reaction.get(30, TimeUnit.SECONDS);
+			}
+		} finally {
+			executor.shutdownNow();
+		}
+
+		CommentReaction stored = mongoTemplate.findById(commentId + ":" + VIEWER, CommentReaction.class);
+		Comment comment = mongoTemplate.findById(commentId, Comment.class);
+		assertEquals(stored != null && stored.getReaction() == Reaction.LIKE ? 1 : 0, comment.getLikeCount());
+		assertEquals(stored != null && stored.getReaction() == Reaction.DISLIKE ? 1 : 0, comment.getDisLikeCount());
+		assertEquals((long) comment.getLikeCount() - comment.getDisLikeCount(), comment.getScore());
+	}
+
+	@Test
+	void reactingToACommentOfAnotherVideoIsRejected() {
+		String commentId = add("comment", null).getId();
+
+		ResponseStatusException exception = assertThrows(ResponseStatusException.class,
+				() -> commentService.reactToComment("video-2", commentId, Reaction.LIKE));
+		assertEquals(404, exception.getStatusCode().value());
+	}
+
+	private CommentDto add(String text, String parentId) {
+		CommentDto commentDto = new CommentDto();
+		commentDto.setCommentText(text);
+		commentDto.setAuthorId("author");
+		commentDto.setParentId(parentId);
+		return commentService.addComment(VIDEO, commentDto);
+	}
+
+	private void setScore(String commentId, long score) {
+		mongoTemplate.updateFirst(query(where("_id").is(commentId)), new Update().set("score", score), Comment.class);
+	}
+}
@@ -0,0 +1,269 @@
+package com.programming.pankaj.youtubeclone.service;
+
+import com.programming.pankaj.youtubeclone.config.MongoIndexConfig;
+import com.programming.pankaj.youtubeclone.dto.PlaylistDto;
+import com.programming.pankaj.youtubeclone.dto.PlaylistItemDto;
+import com.programming.pankaj.youtubeclone.dto.PlaylistItemPageDto;
+import com.programming.pankaj.youtubeclone.model.Playlist;
+import com.programming.pankaj.youtubeclone.model.PlaylistItem;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.data.mongo.DataMongoTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.boot.test.mock.mockito.SpyBean;
+import org.springframework.boot.testcontainers.service.connection.ServiceConnection;
+import org.springframework.context.annotation.Import;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.web.server.ResponseStatusException;
+import org.testcontainers.containers.MongoDBContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doCallRealMethod;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.when;
+import static org.springframework.data.mongodb.core.query.Criteria.where;
+import static org.springframework.data.mongodb.core.query.Query.query;
+
+@DataMongoTest
+@Import({PlaylistService.class, MongoIndexConfig.class})
+@Testcontainers
+class PlaylistServiceTest {
+
+	private static final String OWNER = "auth0|owner";
+
+	@Container
+	@ServiceConnection
+	static MongoDBContainer mongoDBContainer = new MongoDBContainer("mongo:6.0");
+
+	@Autowired
+	private PlaylistService playlistService;
+
+	@SpyBean
+	private MongoTemplate mongoTemplate;
+
+	@MockBean
+	private UserService userService;
+
+	private String playlistId;
+
+	@BeforeEach
+	void setUp() {
+		// Removes the documents but keeps the unique key indexes
+		mongoTemplate.remove(new Query(), Playlist.class);
+		mongoTemplate.remove(new Query(), PlaylistItem.class);
+		when(userService.getCurrentUserSub()).thenReturn(OWNER);
+		playlistId = playlistService.createPlaylist(new PlaylistDto(null, "playlist", null)).getId();
+	}
+
+	@Test
+	void rebalanceKeepsTheOrderAndShortensKeys() {
+		List<String> added = addItems(20);
+		// Moving items in front of the same one over and over halves one gap each time
+		for (int i = 0; i < 200; i++) {
+			playlistService.moveItem(playlistId, added.get(i % 19), new PlaylistItemDto(null, null, null, added.get(19)));
+		}
+		List<String> order = readAll(7);
+		assertTrue(maxKeyLength() > 24);
+		assertTrue(playlist().getRebalanceRequested());
+
+		assertTrue(playlistService.rebalance(playlistId));
+
+		assertEquals(order, readAll(7));
+		assertEquals(1, playlist().getRankVersion());
+		assertNull(playlist().getRebalanceRequested());
+		assertNull(playlist().getRebalanceLeaseUntil());
+		assertTrue(maxKeyLength() <= 2, "key length was " + maxKeyLength());
+
+		// Items keep moving on the new keys
+		playlistService.moveItem(playlistId, order.get(0), new PlaylistItemDto(null, null, null, null));
+		List<String> expected = new ArrayList<>(order.subList(1, order.size()));
+		expected.add(order.get(0));
+		assertEquals(expected, readAll(7));
+	}
+
+	@Test
+	void failedRebalanceLeavesTheOrderAsItWas() {
+		addItems(10);
+		List<String> order = readAll(4);
+		// The staged keys are half written when the second batch fails
+		doCallRealMethod().doThrow(new DataAccessResourceFailureException("Mongo is down"))
+				.when(mongoTemplate).bulkOps(eq(BulkOperations.BulkMode.UNORDERED), eq(PlaylistItem.class));
+
+		assertThrows(DataAccessResourceFailureException.class, () -> playlistService.rebalance(playlistId));
+
+		doCallRealMethod().when(mongoTemplate).bulkOps(eq(BulkOperations.BulkMode.UNORDERED), eq(PlaylistItem.class));
+		assertEquals(order, readAll(4));
+		assertEquals(0, playlist().getRankVersion());
+		assertNull(playlist().getRebalanceLeaseUntil());
+		String added = playlistService.addItem(playlistId, new PlaylistItemDto(null, "video-new", null, null)).getId();
+		assertEquals(added, readAll(4).get(10));
+
+		assertTrue(playlistService.rebalance(playlistId));
+		assertEquals(readAll(100).subList(0, 10), order);
+	}
+
+	@Test
+	void concurrentInsertOfTheSameKeyIsRetried() {
+		List<String> added = addItems(2);
+		// Another request takes the key this insert picked just before it lands
+		List<String> competitors = new ArrayList<>();
+		doAnswer(invocation -> {
+			PlaylistItem playlistItem = invocation.getArgument(0);
+			PlaylistItem competitor = new PlaylistItem(null, playlistId, "video-competitor", playlistItem.getRank(),
+					"~competitor", 0, Instant.now());
+			competitors.add(mongoTemplate.insert(competitor).getId());
+			return invocation.callRealMethod();
+		}).doCallRealMethod().when(mongoTemplate).insert(any(PlaylistItem.class));
+
+		String inserted = playlistService.addItem(playlistId,
+				new PlaylistItemDto(null, "video-new", added.get(0), added.get(1))).getId();
+
+		assertEquals(List.of(added.get(0), inserted, competitors.get(0), added.get(1)), readAll(10));
+	}
+
+	@Test
+	void insertThatRacedARebalanceIsWithdrawn() {
+		addItems(3);
+		// A rebalance takes the lease between this insert's read of the playlist and its write
+		doAnswer(invocation -> {
+			Object inserted = invocation.callRealMethod();
+			mongoTemplate.updateFirst(query(where("_id").is(playlistId)), new Update().inc("writeEpoch", 1), Playlist.class);
+			return inserted;
+		}).when(mongoTemplate).insert(any(PlaylistItem.class));
+
+		assertStatus(409, () -> playlistService.addItem(playlistId, new PlaylistItemDto(null, "video-new", null, null)));
+		assertEquals(3, readAll(10).size());
+		assertEquals(3, playlist().getItemCount());
+	}
+
+	@Test
+	void moveOfAnItemARebalanceHasStampedIsRefused() {
+		List<String> added = addItems(3);
+		// The rebalance has stamped the items but this request read the playlist before its lease
+		mongoTemplate.updateMulti(query(where("playlistId").is(playlistId)), new Update().set("writeEpoch", 1), PlaylistItem.class);
+
+		assertStatus(409, () -> playlistService.moveItem(playlistId, added.get(0), new PlaylistItemDto(null, null, null, null)));
+		assertStatus(404, () -> playlistService.moveItem(playlistId, "missing", new PlaylistItemDto(null, null, null, null)));
+		assertEquals(added, readAll(10));
+	}
+
+	@Test
+	void changesAreRefusedWhileTheLeaseIsHeld() {
+		List<String> added = addItems(2);
+		mongoTemplate.updateFirst(query(where("_id").is(playlistId)),
+				new Update().set("rebalanceLeaseUntil", Instant.now().plus(1, ChronoUnit.MINUTES)), Playlist.class);
+
+		assertStatus(409, () -> playlistService.addItem(playlistId, new PlaylistItemDto(null, "video-new", null, null)));
+		assertStatus(409, () -> playlistService.moveItem(playlistId, added.get(0), new PlaylistItemDto(null, null, null, null)));
+		assertStatus(409, () -> playlistService.removeItem(playlistId, added.get(0)));
+		assertFalse(playlistService.rebalance(playlistId));
+		assertEquals(added, readAll(10));
+	}
+
+	@Test
+	void onlyTheOwnerCanChangeAPlaylist() {
+		List<String> added = addItems(2);
+		when(userService.getCurrentUserSub()).thenReturn("auth0|someone-else");
+
+		assertStatus(404, () -> playlistService.addItem(playlistId, new PlaylistItemDto(null, "video-new", null, null)));
+		assertStatus(404, () -> playlistService.moveItem(playlistId, added.get(0), new PlaylistItemDto(null, null, null, null)));
+		assertStatus(404, () -> playlistService.removeItem(playlistId, added.get(0)));
+		assertEquals(added, readAll(10));
+	}
+
+	@Test
+	void cursorSurvivesRemovingTheLastItemOfAPage() {
+		List<String> added = addItems(6);
+		PlaylistItemPageDto first = playlistService.getItems(playlistId, null, 3);
+
+		playlistService.removeItem(playlistId, added.get(2));
+		PlaylistItemPageDto second = playlistService.getItems(playlistId, first.getNextCursor(), 3);
+
+		assertEquals(added.subList(3, 6), second.getItems().stream().map(PlaylistItemDto::getId).toList());
+	}
+
+	@Test
+	void cursorFromBeforeARebalanceIsRefused() {
+		addItems(6);
+		PlaylistItemPageDto first = playlistService.getItems(playlistId, null, 3);
+
+		assertTrue(playlistService.rebalance(playlistId));
+
+		assertStatus(409, () -> playlistService.getItems(playlistId, first.getNextCursor(), 3));
+		assertStatus(400, () -> playlistService.getItems(playlistId, "not-a-cursor", 3));
+	}
+
+	@Test
+	void keysOfTheOlderFormatAreRewrittenBeforeTheNextChange() {
+		List<String> legacy = new ArrayList<>();
+		for (String rank : List.of("1", "V", "k")) {
+			PlaylistItem playlistItem = new PlaylistItem();
+			playlistItem.setPlaylistId(playlistId);
+			playlistItem.setVideoId("video-" + rank);
+			playlistItem.setRank(rank);
+			legacy.add(mongoTemplate.insert(playlistItem).getId());
+		}
+
+		assertStatus(409, () -> playlistService.addItem(playlistId, new PlaylistItemDto(null, "video-new", null, null)));
+
+		assertEquals(1, playlist().getRankVersion());
+		String added = playlistService.addItem(playlistId, new PlaylistItemDto(null, "video-new", null, null)).getId();
+		List<String> expected = new ArrayList<>(legacy);
+		expected.add(added);
+		assertEquals(expected, readAll(10));
+	}
+
+	private List<String> addItems(int count) {
+		List<String> ids = new ArrayList<>();
+		for (int i = 0; i < count; i++) {
+			ids.add(playlistService.addItem(playlistId, new PlaylistItemDto(null, "video-" + i, null, null)).getId());
+		}
+		return ids;
+	}
+
+	private List<String> readAll(int pageSize) {
+		List<String> ids = new ArrayList<>();
+		String cursor = null;
+		do {
+			PlaylistItemPageDto page = playlistService.getItems(playlistId, cursor, pageSize);
+			page.getItems().forEach(item -> ids.add(item.getId()));
+			cursor = page.getNextCursor();
+		} while (cursor != null);
+		return ids;
+	}
+
+	private int maxKeyLength() {
+		boolean usesRank = playlist().getRankVersion() % 2 == 0;
+		return mongoTemplate.find(query(where("playlistId").is(playlistId)), PlaylistItem.class).stream()
+				.mapToInt(item -> (usesRank ? item.getRank() : item.getAltRank()).length())
+				.max().orElse(0);
+	}
+
+	private Playlist playlist() {
+		return mongoTemplate.findById(playlistId, Playlist.class);
+	}
+
+	private static void assertStatus(int status, Runnable call) {
+		ResponseStatusException exception = assertThrows(ResponseStatusException.class, call::run);
+		assertEquals(status, exception.getStatusCode().value());
+	}
+}
@@ -0,0 +1,91 @@
+package com.programming.pankaj.youtubeclone.service;
+
+import com.amazonaws.services.s3.AmazonS3Client;
+import com.programming.pankaj.youtubeclone.config.S3Config;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.web.server.ResponseStatusException;
+import org.testcontainers.containers.localstack.LocalStackContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+import org.testcontainers.utility.DockerImageName;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+@Testcontainers(disabledWithoutDocker = true)
+class S3ServiceDirectUploadTest {
+
+	private static final int PART_SIZE = 5 * 1024 * 1024;
+
+	@Container
+	static LocalStackContainer localStack = new LocalStackContainer(DockerImageName.parse("localstack/localstack:2.2"))
+			.withServices(LocalStackContainer.Service.S3);
+
+	private static AmazonS3Client amazonS3Client;
+	private static S3Service s3Service;
+	private final HttpClient httpClient = HttpClient.newHttpClient();
+
+	@BeforeAll
+	static void createBucket() {
+		amazonS3Client = new S3Config().amazonS3(localStack.getEndpointOverride(LocalStackContainer.Service.S3).toString(),
+				localStack.getRegion(), localStack.getAccessKey(), localStack.getSecretKey());
+		amazonS3Client.createBucket(S3Service.BUCKET_NAME);
+		s3Service = new S3Service(amazonS3Client, null);
+	}
+
+	@Test
+	void singlePresignedPutIsVerifiedAndPublished() throws Exception {
+		byte[] file = new byte[1024];
+		String url = s3Service.presignUpload("single.mp4", "video/mp4", Duration.ofMinutes(5));
+
+		assertEquals(200, put(url, file, "video/mp4"));
+		s3Service.completeDirectUpload("single.mp4", null, file.length);
+
+		assertEquals(file.length, amazonS3Client.getObjectMetadata(S3Service.BUCKET_NAME, "single.mp4").getContentLength());
+	}
+
+	@Test
+	void presignedPartsAreAssembledFromWhatStorageReceived() throws Exception {
+		byte[] file = new byte[PART_SIZE + 1024];
+		Arrays.fill(file, (byte) 7);
+		String uploadId = s3Service.startUpload("multi.mp4", "video/mp4");
+		List<String> partUrls = s3Service.presignUploadParts("multi.mp4", uploadId, 2, Duration.ofMinutes(5));
+
+		// Parts may arrive in any order
+		assertEquals(200, put(partUrls.get(1), Arrays.copyOfRange(file, PART_SIZE, file.length), null));
+		assertEquals(200, put(partUrls.get(0), Arrays.copyOfRange(file, 0, PART_SIZE), null));
+		s3Service.completeDirectUpload("multi.mp4", uploadId, file.length);
+
+		assertEquals(file.length, amazonS3Client.getObjectMetadata(S3Service.BUCKET_NAME, "multi.mp4").getContentLength());
+	}
+
+	@Test
+	void sizeMismatchIsRejected() throws Exception {
+		String url = s3Service.presignUpload("short.mp4", "video/mp4", Duration.ofMinutes(5));
+		put(url, new byte[10], "video/mp4");
+
+		assertThrows(ResponseStatusException.class, () -> s3Service.completeDirectUpload("short.mp4", null, 20));
+	}
+
+	@Test
+	void missingFileIsRejected() {
+		assertThrows(ResponseStatusException.class, () -> s3Service.completeDirectUpload("missing.mp4", null, 20));
+	}
+
+	private int put(String url, byte[] body, String contentType) throws Exception {
+		HttpRequest.Builder request = HttpRequest.newBuilder(URI.create(url)).PUT(HttpRequest.BodyPublishers.ofByteArray(body));
+		if (contentType != null) {
+			request.header("Content-Type", contentType);
+		}
+		return httpClient.send(request.build(), HttpResponse.BodyHandlers.discarding()).statusCode();
+	}
+}
@@ -0,0 +1,103 @@
+package com.programming.pankaj.youtubeclone.service;
+
+import com.programming.pankaj.youtubeclone.model.StoredObject;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.data.mongo.DataMongoTest;
+import org.springframework.boot.testcontainers.service.connection.ServiceConnection;
+import org.springframework.context.annotation.Import;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.testcontainers.containers.MongoDBContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@DataMongoTest
+@Import(StoredObjectIndex.class)
+@Testcontainers
+class StoredObjectIndexTest {
+
+	private static final String SHA = "9f86d081884c7d659a2feaa0c55ad015a3bf4f1b2b0b822cd15d6c15b0f00a08";
+	private static final String UPLOADER = "auth0|uploader";
+	private static final String OTHER = "auth0|other";
+
+	@Container
+	@ServiceConnection
+	static MongoDBContainer mongoDBContainer = new MongoDBContainer("mongo:6.0");
+
+	@Autowired
+	private StoredObjectIndex storedObjectIndex;
+
+	@Autowired
+	private MongoTemplate mongoTemplate;
+
+	@BeforeEach
+	void clean() {
+		mongoTemplate.dropCollection(StoredObject.class);
+	}
+
+	@Test
+	void firstRegistrationStoresOneReference() {
+		StoredObject storedObject = storedObjectIndex.register(SHA, "first.mp4", "https://storage/first.mp4", 10, "video/mp4", UPLOADER);
+
+		assertEquals("first.mp4", storedObject.getKey());
+		assertEquals(1, storedObject.getReferenceCount());
+		assertEquals(Set.of(UPLOADER), storedObject.getUploaderSubs());
+	}
+
+	@Test
+	void duplicateRegistrationSharesTheFirstObject() {
+		storedObjectIndex.register(SHA, "first.mp4", "https://storage/first.mp4", 10, "video/mp4", UPLOADER);
+		StoredObject duplicate = storedObjectIndex.register(SHA, "second.mp4", "https://storage/second.mp4", 10, "video/mp4", OTHER);
+
+		assertEquals("first.mp4", duplicate.getKey());
+		assertEquals("https://storage/first.mp4", duplicate.getUrl());
+		assertEquals(2, duplicate.getReferenceCount());
+		assertEquals(Set.of(UPLOADER, OTHER), duplicate.getUploaderSubs());
+	}
+
+	@Test
+	void acquireAddsAReferenceForTheUploader() {
+		storedObjectIndex.register(SHA, "first.mp4", "https://storage/first.mp4", 10, "video/mp4", UPLOADER);
+
+		StoredObject acquired = storedObjectIndex.acquire(SHA, UPLOADER).orElseThrow();
+
+		assertEquals(2, acquired.getReferenceCount());
+	}
+
+	@Test
+	void otherUsersCannotFindOrAcquireByHash() {
+		storedObjectIndex.register(SHA, "first.mp4", "https://storage/first.mp4", 10, "video/mp4", UPLOADER);
+
+		assertTrue(storedObjectIndex.find(SHA, OTHER).isEmpty());
+		assertTrue(storedObjectIndex.acquire(SHA, OTHER).isEmpty());
+		assertEquals(1, mongoTemplate.findById(SHA, StoredObject.class).getReferenceCount());
+		assertTrue(storedObjectIndex.find(SHA, UPLOADER).isPresent());
+	}
+
+	@Test
+	void releaseDeletesTheObjectOnlyAtZero() {
+		storedObjectIndex.register(SHA, "first.mp4", "https://storage/first.mp4", 10, "video/mp4", UPLOADER);
+		storedObjectIndex.acquire(SHA, UPLOADER);
+
+		assertFalse(storedObjectIndex.release("https://storage/first.mp4").isPresent());
+		assertEquals(1, mongoTemplate.findById(SHA, StoredObject.class).getReferenceCount());
+
+		StoredObject removed = storedObjectIndex.release("https://storage/first.mp4").orElseThrow();
+		assertEquals("first.mp4", removed.getKey());
+		assertNull(mongoTemplate.findById(SHA, StoredObject.class));
+		assertTrue(storedObjectIndex.acquire(SHA, UPLOADER).isEmpty());
+	}
+
+	@Test
+	void releasingAnUnknownUrlDoesNothing() {
+		assertTrue(storedObjectIndex.release("https://storage/unknown.mp4").isEmpty());
+	}
+}
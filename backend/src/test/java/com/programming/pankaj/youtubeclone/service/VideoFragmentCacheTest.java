@@ -0,0 +1,82 @@
+package com.programming.pankaj.youtubeclone.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.programming.pankaj.youtubeclone.dto.VideoDto;
+import com.programming.pankaj.youtubeclone.model.Video;
+import com.programming.pankaj.youtubeclone.model.VideoStatus;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class VideoFragmentCacheTest {
+
+	private final ObjectMapper jsonMapper = Jackson2ObjectMapperBuilder.json().build();
+	private final ObjectMapper smileMapper = Jackson2ObjectMapperBuilder.smile().build();
+	private final VideoService videoService = new VideoService(null, null, null, null, null, null, null, null, null);
+
+	@ParameterizedTest
+	@EnumSource(VideoFragmentCache.Encoding.class)
+	void splicedListsDecodeLikeAListWrittenInOneGo(VideoFragmentCache.Encoding encoding) throws Exception {
+		VideoFragmentCache cache = new VideoFragmentCache(jsonMapper, 100, Duration.ofHours(1));
+
+		for (int count : new int[]{0, 1, 5}) {
+			List<Video> videos = videos(count);
+			JsonNode expected = expected(videos);
+
+			// The first write renders every fragment, the second reads them all from the cache
+			assertEquals(expected, decode(encoding, cache.writeList(() -> videos, encoding, videoService::mapToVideoDto)));
+			assertEquals(expected, decode(encoding, cache.writeList(() -> videos, encoding, videoService::mapToVideoDto)));
+		}
+	}
+
+	@ParameterizedTest
+	@EnumSource(VideoFragmentCache.Encoding.class)
+	void listsMixingCachedAndFreshFragmentsDecode(VideoFragmentCache.Encoding encoding) throws Exception {
+		VideoFragmentCache cache = new VideoFragmentCache(jsonMapper, 100, Duration.ofHours(1));
+		List<Video> videos = videos(4);
+		cache.writeList(() -> videos.subList(0, 2), encoding, videoService::mapToVideoDto);
+		videos.get(1).setTitle("Renamed");
+		cache.invalidate(videos.get(1).getId());
+
+		byte[] list = cache.writeList(() -> videos, encoding, videoService::mapToVideoDto);
+
+		assertEquals(expected(videos), decode(encoding, list));
+	}
+
+	// The list as Jackson writes it in one go, read back the same way the spliced one is
+	private JsonNode expected(List<Video> videos) throws Exception {
+		List<VideoDto> dtos = videos.stream().map(videoService::mapToVideoDto).toList();
+		return jsonMapper.readTree(jsonMapper.writeValueAsBytes(dtos));
+	}
+
+	private JsonNode decode(VideoFragmentCache.Encoding encoding, byte[] list) throws Exception {
+		return (encoding == VideoFragmentCache.Encoding.SMILE ? smileMapper : jsonMapper).readTree(list);
+	}
+
+	private static List<Video> videos(int count) {
+		List<Video> videos = new ArrayList<>();
+		for (int i = 0; i < count; i++) {
+			Video video = new Video();
+			video.setId("video-" + i);
+			video.setTitle("Video " + i);
+			video.setDescription("Description " + i);
+			video.setTags(Set.of("tag-" + i));
+			video.setVideoStatus(VideoStatus.PUBLIC);
+			video.setLikes(new AtomicInteger(i));
+			video.setDisLikes(new AtomicInteger(i * 2));
+			video.setViewCount(new AtomicInteger(i * 3));
+			video.setUniqueViewerCount((long) i);
+			videos.add(video);
+		}
+		return videos;
+	}
+}
@@ -0,0 +1,151 @@
+package com.programming.pankaj.youtubeclone.service;
+
+import com.programming.pankaj.youtubeclone.eventlog.InteractionEventLog;
+import com.programming.pankaj.youtubeclone.model.ChannelStats;
+import com.programming.pankaj.youtubeclone.model.User;
+import com.programming.pankaj.youtubeclone.model.Video;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.data.mongo.DataMongoTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.boot.testcontainers.service.connection.ServiceConnection;
+import org.springframework.context.annotation.Import;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.security.oauth2.jwt.Jwt;
+import org.springframework.security.oauth2.server.resource.authentication.JwtAuthenticationToken;
+import org.testcontainers.containers.MongoDBContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+@DataMongoTest
+@Import({VideoService.class, UserService.class, ChannelStatsService.class})
+@Testcontainers
+class VideoServiceTest {
+
+	private static final String CHANNEL = "channel-1";
+	private static final String VIEWER = "viewer-1";
+	private static final String VIDEO = "video-1";
+
+	@Container
+	@ServiceConnection
+	static MongoDBContainer mongoDBContainer = new MongoDBContainer("mongo:6.0");
+
+	@Autowired
+	private VideoService videoService;
+
+	@Autowired
+	private ChannelStatsService channelStatsService;
+
+	@Autowired
+	private MongoTemplate mongoTemplate;
+
+	@MockBean
+	private S3Service s3Service;
+
+	@MockBean
+	private VideoFragmentCache videoFragmentCache;
+
+	@MockBean
+	private UniqueViewerService uniqueViewerService;
+
+	@MockBean
+	private CommentService commentService;
+
+	@MockBean
+	private InteractionEventLog interactionEventLog;
+
+	@BeforeEach
+	void setUp() {
+		mongoTemplate.dropCollection(ChannelStats.class);
+		mongoTemplate.dropCollection(User.class);
+		mongoTemplate.dropCollection(Video.class);
+		mongoTemplate.insert(user(CHANNEL));
+		mongoTemplate.insert(user(VIEWER));
+		Video video = new Video();
+		video.setId(VIDEO);
+		video.setUserId(CHANNEL);
+		mongoTemplate.insert(video);
+		signIn(VIEWER);
+	}
+
+	@AfterEach
+	void signOut() {
+		SecurityContextHolder.clearContext();
+	}
+
+	@Test
+	void likesAndDislikesToggleAndReplaceEachOther() {
+		assertEquals(1, videoService.likeVideo(VIDEO).getLikeCount());
+		assertCounts(1, 0);
+		assertEquals(1, videoService.disLikeVideo(VIDEO).getDislikeCount());
+		assertCounts(0, 1);
+		assertEquals(Set.of(VIDEO), viewer().getDisLikedVideos());
+		assertEquals(Set.of(), viewer().getLikedVideos());
+
+		videoService.disLikeVideo(VIDEO);
+		assertCounts(0, 0);
+		videoService.likeVideo(VIDEO);
+		videoService.likeVideo(VIDEO);
+		assertCounts(0, 0);
+		assertEquals(0, channelStatsService.getChannelStats(CHANNEL).getLikeCount());
+	}
+
+	@Test
+	void concurrentLikesOfOneUserCountOnce() throws Exception {
+		ExecutorService executor = Executors.newFixedThreadPool(8);
+		try {
+			List<Future<?>> likes = new ArrayList<>();
+			for (int i = 0; i < 8; i++) {
+				likes.add(executor.submit(() -> {
+					signIn(VIEWER);
+					videoService.likeVideo(VIDEO);
+				}));
+			}
+			for (Future<?> like : likes) {
+				like.get(30, TimeUnit.SECONDS);
+			}
+		} finally {
+			executor.shutdownNow();
+		}
+
+		// However the toggles interleave, the counters match the set they left behind
+		int liked = viewer().getLikedVideos().size();
+		assertCounts(liked, 0);
+		assertEquals(liked, channelStatsService.getChannelStats(CHANNEL).getLikeCount());
+	}
+
+	private void assertCounts(int likes, int disLikes) {
+		Video video = mongoTemplate.findById(VIDEO, Video.class);
+		assertEquals(likes, video.getLikes().get());
+		assertEquals(disLikes, video.getDisLikes().get());
+	}
+
+	private User viewer() {
+		return mongoTemplate.findById(VIEWER, User.class);
+	}
+
+	private static User user(String id) {
+		User user = new User();
+		user.setId(id);
+		user.setSub("auth0|" + id);
+		return user;
+	}
+
+	private static void signIn(String userId) {
+		Jwt jwt = Jwt.withTokenValue("token").header("alg", "none").claim("sub", "auth0|" + userId).build();
+		SecurityContextHolder.getContext().setAuthentication(new JwtAuthenticationToken(jwt));
+	}
+}
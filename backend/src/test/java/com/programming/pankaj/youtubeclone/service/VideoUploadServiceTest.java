@@ -0,0 +1,337 @@
+package com.programming.pankaj.youtubeclone.service;
+
+import com.programming.pankaj.youtubeclone.dto.CreateUploadRequest;
+import com.programming.pankaj.youtubeclone.dto.UploadSessionDto;
+import com.programming.pankaj.youtubeclone.dto.UploadVideoResponse;
+import com.programming.pankaj.youtubeclone.model.UploadSession;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.data.mongo.DataMongoTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.boot.testcontainers.service.connection.ServiceConnection;
+import org.springframework.context.annotation.Import;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.http.HttpStatus;
+import org.springframework.util.unit.DataSize;
+import org.springframework.web.server.ResponseStatusException;
+import org.testcontainers.containers.MongoDBContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import java.io.InputStream;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyMap;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.springframework.data.mongodb.core.query.Criteria.where;
+import static org.springframework.data.mongodb.core.query.Query.query;
+
+@DataMongoTest
+@Import(VideoUploadService.class)
+@Testcontainers
+class VideoUploadServiceTest {
+
+	private static final long CHUNK = DataSize.ofMegabytes(8).toBytes();
+	private static final long TOTAL = 2 * CHUNK + DataSize.ofMegabytes(4).toBytes();
+	private static final String OWNER = "auth0|owner";
+
+	@Container
+	@ServiceConnection
+	static MongoDBContainer mongoDBContainer = new MongoDBContainer("mongo:6.0");
+
+	@Autowired
+	private VideoUploadService videoUploadService;
+
+	@Autowired
+	private MongoTemplate mongoTemplate;
+
+	@MockBean
+	private FileService fileService;
+
+	@MockBean
+	private VideoService videoService;
+
+	@MockBean
+	private UserService userService;
+
+	@BeforeEach
+	void setUp() {
+		mongoTemplate.dropCollection(UploadSession.class);
+		when(userService.getCurrentUserSub()).thenReturn(OWNER);
+		when(fileService.startUpload(anyString(), anyString())).thenReturn("upload-1");
+		when(fileService.uploadPart(anyString(), anyString(), anyInt(), any(), anyLong(), anyString()))
+				.thenAnswer(invocation -> "etag-" + invocation.getArgument(2));
+		when(fileService.completeUpload(anyString(), anyString(), anyMap())).thenReturn("https://storage/video.mp4");
+		when(videoService.saveUploadedVideo(anyString()))
+				.thenAnswer(invocation -> new UploadVideoResponse("video-1", invocation.getArgument(0)));
+	}
+
+	@Test
+	void chunksArriveOutOfOrderAndCommittedOffsetStopsAtTheFirstGap() {
+		String sessionId = createSession();
+
+		upload(sessionId, 2 * CHUNK, TOTAL - 2 * CHUNK);
+		UploadSessionDto afterFirst = upload(sessionId, 0, CHUNK);
+		assertEquals(CHUNK, afterFirst.getCommittedOffset());
+		assertEquals(List.of(0L, 2 * CHUNK), afterFirst.getReceivedOffsets());
+
+		UploadSessionDto afterAll = upload(sessionId, CHUNK, CHUNK);
+		assertEquals(TOTAL, afterAll.getCommittedOffset());
+
+		videoUploadService.completeSession(sessionId);
+		verify(fileService).completeUpload(anyString(), eq("upload-1"), eq(Map.of(1, "etag-1", 2, "etag-2", 3, "etag-3")));
+		verify(videoService).saveUploadedVideo("https://storage/video.mp4");
+		assertNull(mongoTemplate.findById(sessionId, UploadSession.class));
+	}
+
+	@Test
+	void resumedUploadSeesStoredChunksAndMayResendOne() {
+		String sessionId = createSession();
+		upload(sessionId, 0, CHUNK);
+
+		// A client that lost its connection asks where to continue, then resends the last chunk
+		UploadSessionDto progress = videoUploadService.getSession(sessionId);
+		assertEquals(CHUNK, progress.getCommittedOffset());
+		UploadSessionDto resent = upload(sessionId, 0, CHUNK);
+		assertEquals(List.of(0L), resent.getReceivedOffsets());
+	}
+
+	@Test
+	void chunksOutsideTheGridAreRejected() {
+		String sessionId = createSession();
+
+		assertStatus(400, () -> upload(sessionId, 1, CHUNK));
+		assertStatus(400, () -> upload(sessionId, 3 * CHUNK, CHUNK));
+		assertStatus(400, () -> upload(sessionId, 2 * CHUNK, CHUNK));
+		verify(fileService, never()).uploadPart(anyString(), anyString(), anyInt(), any(), anyLong(), anyString());
+	}
+
+	@Test
+	void incompleteUploadCannotBeCompletedButCanBeRetriedLater() {
+		String sessionId = createSession();
+		upload(sessionId, 0, CHUNK);
+
+		assertStatus(409, () -> videoUploadService.completeSession(sessionId));
+
+		upload(sessionId, CHUNK, CHUNK);
+		upload(sessionId, 2 * CHUNK, TOTAL - 2 * CHUNK);
+		assertEquals("video-1", videoUploadService.completeSession(sessionId).getVideoId());
+	}
+
+	@Test
+	void concurrentCompletesCreateOneVideo() throws Exception {
+		String sessionId = uploadedSession();
+		CountDownLatch storageCalled = new CountDownLatch(1);
+		CountDownLatch releaseStorage = new CountDownLatch(1);
+		when(fileService.completeUpload(anyString(), anyString(), anyMap())).thenAnswer(invocation -> {
+			storageCalled.countDown();
+			releaseStorage.await(10, TimeUnit.SECONDS);
+			return "https://storage/video.mp4";
+		});
+
+		ExecutorService executor = Executors.newFixedThreadPool(2);
+		try {
+			Future<UploadVideoResponse> first = executor.submit(() -> videoUploadService.completeSession(sessionId));
+			assertTrue(storageCalled.await(10, TimeUnit.SECONDS));
+
+			// The retry arrives while the first complete is still assembling the file
+			Future<UploadVideoResponse> retry = executor.submit(() -> videoUploadService.completeSession(sessionId));
+			List<Integer> statuses = new ArrayList<>();
+			try {
+				retry.get(10, TimeUnit.SECONDS);
+			} catch (ExecutionException exception) {
+				statuses.add(((ResponseStatusException) exception.getCause()).getStatusCode().value());
+			}
+			releaseStorage.countDown();
+			first.get(10, TimeUnit.SECONDS);
+
+			assertEquals(List.of(409), statuses);
+			verify(videoService, times(1)).saveUploadedVideo(anyString());
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	@Test
+	void chunksAreRefusedWhileACompleteHoldsTheSession() {
+		String sessionId = createSession();
+		upload(sessionId, 0, CHUNK);
+		mongoTemplate.updateFirst(query(where("_id").is(sessionId)),
+				new Update().set("completingUntil", Instant.now().plusSeconds(600)), UploadSession.class);
+
+		assertStatus(409, () -> upload(sessionId, CHUNK, CHUNK));
+		verify(fileService, times(1)).uploadPart(anyString(), anyString(), anyInt(), any(), anyLong(), anyString());
+
+		// An expired claim no longer blocks the upload
+		mongoTemplate.updateFirst(query(where("_id").is(sessionId)),
+				new Update().set("completingUntil", Instant.now().minusSeconds(1)), UploadSession.class);
+		assertEquals(2 * CHUNK, upload(sessionId, CHUNK, CHUNK).getCommittedOffset());
+	}
+
+	@Test
+	void chunkSentWhileACompleteStartsIsNotRecorded() {
+		String sessionId = createSession();
+		// The complete takes the session while this part is on its way to storage
+		when(fileService.uploadPart(anyString(), anyString(), anyInt(), any(), anyLong(), anyString())).thenAnswer(invocation -> {
+			mongoTemplate.updateFirst(query(where("_id").is(sessionId)),
+					new Update().set("completingUntil", Instant.now().plusSeconds(600)), UploadSession.class);
+			return "etag-1";
+		});
+
+		assertStatus(409, () -> upload(sessionId, 0, CHUNK));
+		assertTrue(mongoTemplate.findById(sessionId, UploadSession.class).getPartETags().isEmpty());
+	}
+
+	@Test
+	void concurrentDirectCompletesFinishOneVideo() throws Exception {
+		when(videoService.createPendingVideo()).thenReturn("video-1");
+		when(videoService.finishPendingVideo(anyString(), anyString()))
+				.thenAnswer(invocation -> new UploadVideoResponse(invocation.getArgument(0), invocation.getArgument(1)));
+		String sessionId = videoUploadService.createDirectSession(new CreateUploadRequest("video.mp4", "video/mp4", TOTAL))
+				.getSessionId();
+		CountDownLatch storageCalled = new CountDownLatch(1);
+		CountDownLatch releaseStorage = new CountDownLatch(1);
+		when(fileService.completeDirectUpload(anyString(), anyString(), anyLong())).thenAnswer(invocation -> {
+			storageCalled.countDown();
+			releaseStorage.await(10, TimeUnit.SECONDS);
+			return "https://storage/video.mp4";
+		});
+
+		ExecutorService executor = Executors.newFixedThreadPool(2);
+		try {
+			Future<UploadVideoResponse> first = executor.submit(() -> videoUploadService.completeSession(sessionId));
+			assertTrue(storageCalled.await(10, TimeUnit.SECONDS));
+
+			// Neither a retry nor an abort may touch the session while storage is verifying the file
+			assertStatus(409, () -> videoUploadService.completeSession(sessionId));
+			assertStatus(409, () -> videoUploadService.abortSession(sessionId));
+			releaseStorage.countDown();
+			assertEquals("video-1", first.get(10, TimeUnit.SECONDS).getVideoId());
+
+			verify(videoService, times(1)).finishPendingVideo(anyString(), anyString());
+			verify(videoService, never()).deletePendingVideo(anyString());
+			assertNull(mongoTemplate.findById(sessionId, UploadSession.class));
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	@Test
+	void failedDirectCompleteReleasesTheClaim() {
+		when(videoService.createPendingVideo()).thenReturn("video-1");
+		String sessionId = videoUploadService.createDirectSession(new CreateUploadRequest("video.mp4", "video/mp4", TOTAL))
+				.getSessionId();
+		when(fileService.completeDirectUpload(anyString(), anyString(), anyLong()))
+				.thenThrow(new ResponseStatusException(HttpStatus.CONFLICT, "Upload is incomplete"));
+
+		assertStatus(409, () -> videoUploadService.completeSession(sessionId));
+
+		assertNull(mongoTemplate.findById(sessionId, UploadSession.class).getCompletingUntil());
+	}
+
+	@Test
+	void directUploadWithTheWrongSizeIsDiscarded() {
+		String sessionId = directSession();
+		when(fileService.completeDirectUpload(anyString(), anyString(), anyLong()))
+				.thenThrow(new ResponseStatusException(HttpStatus.BAD_REQUEST, "Uploaded file has 1 bytes"));
+
+		assertStatus(400, () -> videoUploadService.completeSession(sessionId));
+
+		// Storage has used up the multipart upload, so a retry could only ever fail
+		assertNull(mongoTemplate.findById(sessionId, UploadSession.class));
+		verify(videoService).deletePendingVideo("video-1");
+		assertStatus(404, () -> videoUploadService.completeSession(sessionId));
+	}
+
+	@Test
+	void directUploadUrlsAreRenewedUntilTheCompleteStarts() {
+		String sessionId = directSession();
+		Instant soon = Instant.now().plusSeconds(60);
+		mongoTemplate.updateFirst(query(where("_id").is(sessionId)), new Update().set("expiresAt", soon), UploadSession.class);
+
+		assertTrue(videoUploadService.renewDirectSession(sessionId).getExpiresAt().isAfter(soon));
+		verify(fileService, times(2)).presignUploadParts(anyString(), eq("upload-1"), eq(3), any());
+
+		mongoTemplate.updateFirst(query(where("_id").is(sessionId)),
+				new Update().set("completingUntil", Instant.now().plusSeconds(600)), UploadSession.class);
+		assertStatus(409, () -> videoUploadService.renewDirectSession(sessionId));
+		assertStatus(400, () -> videoUploadService.renewDirectSession(createSession()));
+	}
+
+	@Test
+	void expiredSessionsAreAbortedUnlessBeingCompleted() {
+		String abandoned = createSession();
+		String completing = createSession();
+		Instant past = Instant.now().minusSeconds(60);
+		mongoTemplate.updateFirst(query(where("_id").is(abandoned)), new Update().set("expiresAt", past), UploadSession.class);
+		mongoTemplate.updateFirst(query(where("_id").is(completing)),
+				new Update().set("expiresAt", past).set("completingUntil", Instant.now().plusSeconds(600)), UploadSession.class);
+
+		videoUploadService.expireAbandonedSessions();
+
+		assertNull(mongoTemplate.findById(abandoned, UploadSession.class));
+		assertNotNull(mongoTemplate.findById(completing, UploadSession.class));
+		verify(fileService, times(1)).abortUpload(anyString(), eq("upload-1"));
+	}
+
+	@Test
+	void sessionsOfOtherUsersAreNotFound() {
+		String sessionId = createSession();
+		when(userService.getCurrentUserSub()).thenReturn("auth0|someone-else");
+
+		assertStatus(404, () -> videoUploadService.getSession(sessionId));
+		assertStatus(404, () -> videoUploadService.completeSession(sessionId));
+		assertStatus(404, () -> videoUploadService.abortSession(sessionId));
+	}
+
+	private String createSession() {
+		return videoUploadService.createSession(new CreateUploadRequest("video.mp4", "video/mp4", TOTAL)).getSessionId();
+	}
+
+	private String directSession() {
+		when(videoService.createPendingVideo()).thenReturn("video-1");
+		return videoUploadService.createDirectSession(new CreateUploadRequest("video.mp4", "video/mp4", TOTAL)).getSessionId();
+	}
+
+	private String uploadedSession() {
+		String sessionId = createSession();
+		upload(sessionId, 0, CHUNK);
+		upload(sessionId, CHUNK, CHUNK);
+		upload(sessionId, 2 * CHUNK, TOTAL - 2 * CHUNK);
+		return sessionId;
+	}
+
+	private UploadSessionDto upload(String sessionId, long offset, long size) {
+		return videoUploadService.uploadChunk(sessionId, offset, size, "md5", InputStream.nullInputStream());
+	}
+
+	private static void assertStatus(int status, Runnable call) {
+		ResponseStatusException exception = assertThrows(ResponseStatusException.class, call::run);
+		assertEquals(status, exception.getStatusCode().value());
+	}
+
+}
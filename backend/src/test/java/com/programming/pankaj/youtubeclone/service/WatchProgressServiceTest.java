@@ -0,0 +1,160 @@
+package com.programming.pankaj.youtubeclone.service;
+
+import com.programming.pankaj.youtubeclone.dto.WatchProgressDto;
+import com.programming.pankaj.youtubeclone.model.UploadState;
+import com.programming.pankaj.youtubeclone.model.Video;
+import com.programming.pankaj.youtubeclone.model.WatchProgress;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.bson.types.ObjectId;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.data.mongo.DataMongoTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.boot.test.mock.mockito.SpyBean;
+import org.springframework.boot.testcontainers.service.connection.ServiceConnection;
+import org.springframework.context.annotation.Import;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.web.server.ResponseStatusException;
+import org.testcontainers.containers.MongoDBContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doCallRealMethod;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.when;
+
+@DataMongoTest(properties = "watch-progress.max-pending=3")
+@Import({WatchProgressService.class, SimpleMeterRegistry.class})
+@Testcontainers
+class WatchProgressServiceTest {
+
+	private static final String VIEWER = "auth0|viewer";
+
+	@Container
+	@ServiceConnection
+	static MongoDBContainer mongoDBContainer = new MongoDBContainer("mongo:6.0");
+
+	@Autowired
+	private WatchProgressService watchProgressService;
+
+	@SpyBean
+	private MongoTemplate mongoTemplate;
+
+	@MockBean
+	private UserService userService;
+
+	private String videoId;
+
+	@BeforeEach
+	void setUp() {
+		watchProgressService.flush();
+		mongoTemplate.dropCollection(WatchProgress.class);
+		mongoTemplate.dropCollection(Video.class);
+		videoId = video(UploadState.READY);
+		when(userService.getCurrentUserSub()).thenReturn(VIEWER);
+	}
+
+	@Test
+	void heartbeatsOfOneViewerAreCoalescedIntoOneWrite() {
+		heartbeat(videoId, 10.0);
+		heartbeat(videoId, 15.0);
+		heartbeat(videoId, 20.0);
+
+		assertEquals(1, watchProgressService.getPendingCount());
+		assertEquals(20.0, watchProgressService.getProgress(videoId).getPositionSeconds());
+
+		watchProgressService.flush();
+
+		assertEquals(0, watchProgressService.getPendingCount());
+		assertEquals(20.0, stored(videoId).getPositionSeconds());
+		assertEquals(20.0, watchProgressService.getProgress(videoId).getPositionSeconds());
+	}
+
+	@Test
+	void stalePositionDoesNotOverwriteANewerOne() {
+		// Another node already stored a later position for the same viewer and video
+		Instant later = Instant.now().plus(1, ChronoUnit.HOURS).truncatedTo(ChronoUnit.MILLIS);
+		mongoTemplate.save(new WatchProgress(VIEWER + ":" + videoId, VIEWER, videoId, 500.0, later));
+
+		heartbeat(videoId, 10.0);
+		watchProgressService.flush();
+
+		assertEquals(0, watchProgressService.getPendingCount());
+		assertEquals(500.0, stored(videoId).getPositionSeconds());
+		assertEquals(later, stored(videoId).getUpdatedAt());
+	}
+
+	@Test
+	void failedFlushKeepsPositionsForTheNextOne() {
+		doThrow(new DataAccessResourceFailureException("Mongo is down")).doCallRealMethod()
+				.when(mongoTemplate).bulkOps(eq(BulkOperations.BulkMode.UNORDERED), eq(WatchProgress.class));
+		heartbeat(videoId, 42.0);
+
+		watchProgressService.flush();
+		assertEquals(1, watchProgressService.getPendingCount());
+		assertNull(stored(videoId));
+
+		watchProgressService.flush();
+		assertEquals(0, watchProgressService.getPendingCount());
+		assertEquals(42.0, stored(videoId).getPositionSeconds());
+	}
+
+	@Test
+	void heartbeatsForMissingOrPendingVideosAreRejected() {
+		String pendingVideoId = video(UploadState.PENDING);
+
+		assertStatus(404, () -> heartbeat(new ObjectId().toHexString(), 1.0));
+		assertStatus(404, () -> heartbeat(pendingVideoId, 1.0));
+		assertStatus(404, () -> heartbeat("not-a-video", 1.0));
+		assertStatus(400, () -> heartbeat(videoId, -1.0));
+		assertEquals(0, watchProgressService.getPendingCount());
+	}
+
+	@Test
+	void fullBufferShedsNewViewersButKeepsUpdatingBufferedOnes() {
+		doThrow(new DataAccessResourceFailureException("Mongo is down"))
+				.when(mongoTemplate).bulkOps(eq(BulkOperations.BulkMode.UNORDERED), eq(WatchProgress.class));
+		watchProgressService.recordProgress("auth0|viewer-1", videoId, 1.0);
+		watchProgressService.recordProgress("auth0|viewer-2", videoId, 1.0);
+		watchProgressService.recordProgress("auth0|viewer-3", videoId, 1.0);
+
+		assertStatus(503, () -> watchProgressService.recordProgress("auth0|viewer-4", videoId, 1.0));
+		watchProgressService.recordProgress("auth0|viewer-1", videoId, 2.0);
+		assertEquals(3, watchProgressService.getPendingCount());
+
+		doCallRealMethod().when(mongoTemplate).bulkOps(eq(BulkOperations.BulkMode.UNORDERED), eq(WatchProgress.class));
+		watchProgressService.flush();
+		watchProgressService.recordProgress("auth0|viewer-4", videoId, 4.0);
+		when(userService.getCurrentUserSub()).thenReturn("auth0|viewer-4");
+		assertEquals(4.0, watchProgressService.getProgress(videoId).getPositionSeconds());
+	}
+
+	private void heartbeat(String videoId, double positionSeconds) {
+		watchProgressService.recordProgress(videoId, new WatchProgressDto(videoId, positionSeconds, null));
+	}
+
+	private WatchProgress stored(String videoId) {
+		return mongoTemplate.findById(VIEWER + ":" + videoId, WatchProgress.class);
+	}
+
+	private String video(UploadState uploadState) {
+		Video video = new Video();
+		video.setUploadState(uploadState);
+		return mongoTemplate.insert(video).getId();
+	}
+
+	private static void assertStatus(int status, Runnable call) {
+		ResponseStatusException exception = assertThrows(ResponseStatusException.class, call::run);
+		assertEquals(status, exception.getStatusCode().value());
+	}
+}
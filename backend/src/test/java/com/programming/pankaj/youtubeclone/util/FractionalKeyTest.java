@@ -0,0 +1,97 @@
+package com.programming.pankaj.youtubeclone.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class FractionalKeyTest {
+
+	@Test
+	void randomInsertsStayInOrder() {
+		Random random = new Random(42);
+		List<String> keys = new ArrayList<>();
+		for (int i = 0; i < 20_000; i++) {
+			int position = random.nextInt(keys.size() + 1);
+			String before = position == 0 ? null : keys.get(position - 1);
+			String after = position == keys.size() ? null : keys.get(position);
+			keys.add(position, FractionalKey.between(before, after));
+		}
+
+		for (int i = 1; i < keys.size(); i++) {
+			assertTrue(keys.get(i - 1).compareTo(keys.get(i)) < 0, keys.get(i - 1) + " !< " + keys.get(i));
+		}
+	}
+
+	@Test
+	void insertsIntoTheSameGapGrowSlowly() {
+		String first = FractionalKey.between(null, null);
+		String last = FractionalKey.between(first, null);
+		String lower = first;
+		for (int i = 0; i < 1_000; i++) {
+			String key = FractionalKey.between(lower, last);
+			assertTrue(lower.compareTo(key) < 0 && key.compareTo(last) < 0);
+			lower = key;
+		}
+
+		// Each insert halves the gap, so a base-62 digit lasts about five inserts
+		assertTrue(lower.length() <= 1_000 / 4, "key length was " + lower.length());
+	}
+
+	@Test
+	void repeatedAppendsAndPrependsStayShort() {
+		String last = null;
+		String first = null;
+		for (int i = 0; i < 10_000; i++) {
+			String appended = FractionalKey.between(last, null);
+			assertTrue(last == null || last.compareTo(appended) < 0, last + " !< " + appended);
+			last = appended;
+			String prepended = FractionalKey.between(null, first);
+			assertTrue(first == null || prepended.compareTo(first) < 0, prepended + " !< " + first);
+			first = prepended;
+		}
+
+		// Both ends step the integer part, which gains a character every factor of 62
+		assertTrue(last.length() <= 4, "last key was " + last);
+		assertTrue(first.length() <= 4, "first key was " + first);
+	}
+
+	@Test
+	void sequenceKeysAreOrderedAndValid() {
+		int count = 10_000;
+		List<String> keys = FractionalKey.sequence(count);
+
+		assertEquals(count, keys.size());
+		for (int i = 0; i < keys.size(); i++) {
+			assertTrue(FractionalKey.isValid(keys.get(i)), keys.get(i));
+			assertTrue(keys.get(i).length() <= 4, keys.get(i));
+			if (i > 0) {
+				assertTrue(keys.get(i - 1).compareTo(keys.get(i)) < 0);
+				// There is room for a new key in every gap
+				FractionalKey.between(keys.get(i - 1), keys.get(i));
+			}
+		}
+	}
+
+	@Test
+	void keysOfTheOlderFormatAreNotValid() {
+		assertFalse(FractionalKey.isValid("V"));
+		assertFalse(FractionalKey.isValid("a"));
+		assertFalse(FractionalKey.isValid("a0V0"));
+		assertTrue(FractionalKey.isValid("a0V"));
+		assertThrows(IllegalArgumentException.class, () -> FractionalKey.between("V", null));
+	}
+
+	@Test
+	void rejectsKeysOutOfOrder() {
+		assertThrows(IllegalArgumentException.class, () -> FractionalKey.between("a1", "a0"));
+		assertThrows(IllegalArgumentException.class, () -> FractionalKey.between("a0", "a0"));
+	}
+
+}
@@ -0,0 +1,40 @@
+package com.programming.pankaj.youtubeclone.util;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class HyperLogLogTest {
+
+	@Test
+	void estimatesDistinctCountWithinErrorBound() {
+		HyperLogLog sketch = new HyperLogLog();
+		for (int i = 0; i < 100_000; i++) {
+			sketch.add("auth0|user-" + i);
+			// Repeat views must not change the estimate
+			sketch.add("auth0|user-" + i);
+		}
+
+		// Four standard errors of a precision-12 sketch
+		assertTrue(Math.abs(sketch.estimate() - 100_000) < 100_000 * 0.065, "estimate was " + sketch.estimate());
+	}
+
+	@Test
+	void mergeEqualsSketchOfUnion() {
+		HyperLogLog left = new HyperLogLog();
+		HyperLogLog right = new HyperLogLog();
+		HyperLogLog union = new HyperLogLog();
+		for (int i = 0; i < 20_000; i++) {
+			(i % 2 == 0 ? left : right).add("viewer-" + i);
+			union.add("viewer-" + i);
+		}
+
+		left.merge(right);
+
+		assertArrayEquals(union.toBytes(), left.toBytes());
+		assertEquals(union.estimate(), HyperLogLog.fromBytes(left.toBytes()).estimate());
+	}
+
+}
@@ -0,0 +1,103 @@
+package com.programming.pankaj.youtubeclone.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TokenBucketTest {
+
+	private static final long SECOND = 1_000_000_000L;
+
+	@Test
+	void grantsBurstUpToCapacityThenReportsWait() {
+		TokenBucket bucket = new TokenBucket(5, 1, 0);
+		for (int i = 0; i < 5; i++) {
+			assertEquals(0, bucket.tryConsume(0));
+		}
+
+		// The next token is one emission interval away
+		assertEquals(SECOND, bucket.tryConsume(0));
+		assertEquals(SECOND / 2, bucket.tryConsume(SECOND / 2));
+	}
+
+	@Test
+	void refillsOneTokenPerEmissionInterval() {
+		TokenBucket bucket = new TokenBucket(2, 0.2, 0);
+		bucket.tryConsume(0);
+		bucket.tryConsume(0);
+
+		assertEquals(5 * SECOND, bucket.tryConsume(0));
+		assertEquals(0, bucket.tryConsume(5 * SECOND));
+		assertEquals(5 * SECOND, bucket.tryConsume(5 * SECOND));
+	}
+
+	@Test
+	void idleTimeDoesNotAccumulateBeyondCapacity() {
+		TokenBucket bucket = new TokenBucket(3, 1, 0);
+		long later = 1_000 * SECOND;
+		for (int i = 0; i < 3; i++) {
+			assertEquals(0, bucket.tryConsume(later));
+		}
+		assertTrue(bucket.tryConsume(later) > 0);
+	}
+
+	@Test
+	void onlyBucketsFullForTheIdleTimeAreRetired() {
+		TokenBucket bucket = new TokenBucket(2, 1, 0);
+		bucket.tryConsume(0);
+
+		// Refilled at 1s, idle for 10s only at 11s
+		assertFalse(bucket.retireIfIdle(5 * SECOND, 10 * SECOND));
+		assertTrue(bucket.retireIfIdle(11 * SECOND, 10 * SECOND));
+		assertTrue(bucket.isRetired());
+		assertEquals(TokenBucket.RETIRED, bucket.tryConsume(11 * SECOND));
+	}
+
+	@Test
+	void retiringRacingWithConsumersNeverGrantsExtraTokens() throws Exception {
+		for (int round = 0; round < 200; round++) {
+			TokenBucket bucket = new TokenBucket(10, 0.001, 0);
+			AtomicInteger granted = new AtomicInteger();
+			CountDownLatch start = new CountDownLatch(1);
+			List<Thread> threads = new ArrayList<>();
+			for (int i = 0; i < 4; i++) {
+				threads.add(new Thread(() -> {
+					awaitQuietly(start);
+					for (int attempt = 0; attempt < 20; attempt++) {
+						if (bucket.tryConsume(0) == 0) {
+							granted.incrementAndGet();
+						}
+					}
+				}));
+			}
+			threads.add(new Thread(() -> {
+				awaitQuietly(start);
+				bucket.retireIfIdle(0, 0);
+			}));
+			threads.forEach(Thread::start);
+			start.countDown();
+			for (Thread thread : threads) {
+				thread.join();
+			}
+
+			// Either the bucket was retired while still full and granted nothing, or it kept serving
+			assertEquals(bucket.isRetired() ? 0 : 10, granted.get());
+		}
+	}
+
+	private static void awaitQuietly(CountDownLatch latch) {
+		try {
+			latch.await();
+		} catch (InterruptedException exception) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+}